@@ -11,13 +11,26 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.springframework.util.Assert;
 import org.springframework.util.CustomizableThreadCreator;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class AsyncSpider extends SyncSpider {
 
     private final ExecutorService threadPool;
     private final int threadNumber;
+    //每个线程一次取出的请求数
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    //已经取出但还没有处理完成的请求数，调度器不记录时用于判断抓取是否结束
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile boolean stopped;
+
+    public final static int DEFAULT_BATCH_SIZE = 4;
+    //等待请求的最长时间，超时后重新检查是否已经停止
+    private final static long POLL_MILLIS = 200;
 
 
     public AsyncSpider(Downloader downloader,
@@ -47,6 +60,17 @@ public class AsyncSpider extends SyncSpider {
     }
 
 
+    /**
+     * 设置每个线程一次从调度器中取出的请求数，新提取的链接也会在一批请求处理完后一起放入调度器。
+     * 设置为1时与逐个取值相同。
+     *
+     * @param batchSize 一次取出的请求数。
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize <1");
+        this.batchSize = batchSize;
+    }
+
     @Override
     public void start() {
 
@@ -54,19 +78,46 @@ public class AsyncSpider extends SyncSpider {
         //进行下载
         for (int i = 0; i < threadNumber; i++) {
             threadPool.execute(() -> {
-                while (true) {
-                    try {
-                        HttpUriRequest httpUriRequest = scheduler.take();
-                        if (httpUriRequest == null) {
-                            break;
+                //新提取的链接，每批处理完后一起放入调度器
+                List<HttpUriRequest> newHttpUriRequests = new ArrayList<>();
+                try {
+                    while (!stopped) {
+                        List<HttpUriRequest> httpUriRequests;
+                        try {
+                            httpUriRequests = scheduler.takeBatch(batchSize, POLL_MILLIS);
+                        } catch (TakeTimeoutException e) {
+                            //其他线程还在处理请求，之后可能提取出新的请求
+                            continue;
+                        }
+                        if (httpUriRequests.isEmpty()) {
+                            //新的请求在标记完成之前已经放入调度器，没有正在处理的请求时再确认一次
+                            if (inFlight.get() == 0 && scheduler.isEmpty()) {
+                                break;
+                            }
+                            continue;
+                        }
+                        inFlight.addAndGet(httpUriRequests.size());
+                        int started = 0;
+                        try {
+                            for (HttpUriRequest httpUriRequest : httpUriRequests) {
+                                //停止后不再下载，剩余的请求不标记完成，快照中依然是待处理的请求
+                                if (stopped) {
+                                    break;
+                                }
+                                started++;
+                                handleStringResponseResult(downloader.download(httpUriRequest), newHttpUriRequests);
+                            }
+                        } finally {
+                            //先放入新的请求再标记完成，避免其他线程误判为抓取结束
+                            scheduler.drainFrom(newHttpUriRequests);
+                            httpUriRequests.subList(0, started).forEach(scheduler::complete);
+                            inFlight.addAndGet(-httpUriRequests.size());
                         }
-                        handleStringResponseResult(downloader.download(httpUriRequest));
-                    } catch (TakeTimeoutException e) {
-                        break;
                     }
+                } finally {
+                    //完成标识
+                    completed.countDown();
                 }
-                //完成标识
-                completed.countDown();
             });
         }
 
@@ -83,8 +134,12 @@ public class AsyncSpider extends SyncSpider {
     }
 
 
+    /**
+     * 不再取出新的请求，正在下载的请求会继续处理完成，同一批中还没有开始下载的请求不再处理。
+     */
     @Override
     public void stop() {
+        stopped = true;
         threadPool.shutdown();
     }
 
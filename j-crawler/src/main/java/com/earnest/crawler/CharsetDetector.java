@@ -0,0 +1,131 @@
+package com.earnest.crawler;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 根据BOM、响应头和页面开头的<code>meta</code>确定内容的字符集，只扫描一次开头的字节，不需要先解码。
+ * <p>
+ * 优先级与浏览器相同：BOM、响应头声明的字符集、<code>&lt;meta charset&gt;</code>或
+ * <code>&lt;meta http-equiv="Content-Type"&gt;</code>、XML声明，都没有时使用<code>UTF-8</code>。
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class CharsetDetector {
+
+    /**
+     * 扫描<code>meta</code>的字节数。
+     */
+    public static final int PRESCAN_LENGTH = 4096;
+
+    private static final Pattern META_CHARSET = Pattern.compile(
+            "<meta[^>]*?charset\\s*=\\s*[\"']?\\s*([a-z0-9_.:+-]+)|<\\?xml[^>]*?encoding\\s*=\\s*[\"']([a-z0-9_.:+-]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * @param declaredCharset 响应头声明的字符集，可以为空。
+     */
+    public static Charset detect(byte[] bytes, int offset, int length, String declaredCharset) {
+        Charset charset = bomCharset(bytes, offset, length);
+        if (charset != null) {
+            return charset;
+        }
+        charset = forName(declaredCharset);
+        if (charset != null) {
+            return charset;
+        }
+        //按ISO-8859-1转换，字节与字符一一对应，只用于查找ASCII的标签
+        String prefix = new String(bytes, offset, Math.min(length, PRESCAN_LENGTH), StandardCharsets.ISO_8859_1);
+        Matcher matcher = META_CHARSET.matcher(prefix);
+        while (matcher.find()) {
+            charset = forName(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            if (charset != null) {
+                //按字节解析的页面不会是UTF-16，与浏览器一样改为UTF-8
+                return charset.name().startsWith("UTF-16") ? StandardCharsets.UTF_8 : charset;
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * 确定字符集并解码，BOM不会出现在结果中。
+     */
+    public static String decode(byte[] bytes, String declaredCharset) {
+        Charset charset = detect(bytes, 0, bytes.length, declaredCharset);
+        int bomLength = bomLength(bytes, 0, bytes.length, charset);
+        return new String(bytes, bomLength, bytes.length - bomLength, charset);
+    }
+
+    /**
+     * 读取实体的全部内容并解码，代替没有声明字符集时使用<code>ISO-8859-1</code>的{@link EntityUtils#toString(HttpEntity)}。
+     *
+     * @return 实体没有内容时返回<code>null</code>。
+     */
+    public static String decode(HttpEntity entity) throws IOException {
+        byte[] bytes = EntityUtils.toByteArray(entity);
+        return bytes == null ? null : decode(bytes, declaredCharset(entity));
+    }
+
+    /**
+     * @return <code>Content-Type</code>中声明的字符集，没有时返回<code>null</code>。
+     */
+    public static String declaredCharset(HttpEntity entity) {
+        Header contentType = entity.getContentType();
+        if (contentType == null) {
+            return null;
+        }
+        for (HeaderElement element : contentType.getElements()) {
+            NameValuePair charset = element.getParameterByName("charset");
+            if (charset != null) {
+                return charset.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 开头与<code>charset</code>对应的BOM的长度，没有时返回0。
+     */
+    public static int bomLength(byte[] bytes, int offset, int length, Charset charset) {
+        Charset bomCharset = bomCharset(bytes, offset, length);
+        if (bomCharset == null || !bomCharset.equals(charset)) {
+            return 0;
+        }
+        return StandardCharsets.UTF_8.equals(bomCharset) ? 3 : 2;
+    }
+
+    private static Charset bomCharset(byte[] bytes, int offset, int length) {
+        if (length >= 3 && bytes[offset] == (byte) 0xEF && bytes[offset + 1] == (byte) 0xBB && bytes[offset + 2] == (byte) 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && bytes[offset] == (byte) 0xFE && bytes[offset + 1] == (byte) 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (length >= 2 && bytes[offset] == (byte) 0xFF && bytes[offset + 1] == (byte) 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    private static Charset forName(String charsetName) {
+        if (charsetName == null) {
+            return null;
+        }
+        try {
+            return Charset.isSupported(charsetName) ? Charset.forName(charsetName) : null;
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+}
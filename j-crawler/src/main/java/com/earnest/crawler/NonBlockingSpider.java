@@ -0,0 +1,162 @@
+package com.earnest.crawler;
+
+
+import com.earnest.crawler.downloader.AsyncDownloader;
+import com.earnest.crawler.exception.TakeTimeoutException;
+import com.earnest.crawler.extractor.HttpRequestExtractor;
+import com.earnest.crawler.pipeline.Pipeline;
+import com.earnest.crawler.scheduler.Scheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 使用{@link AsyncDownloader}的爬虫。
+ * <p>
+ * 调用{@link #start()}的线程负责从调度器中取出请求并发起下载，同时进行的下载数由<code>maxInFlight</code>限制，
+ * 不受线程数的影响。下载完成后在<code>handlerPool</code>中提取链接和执行管道，不占用IO线程。
+ */
+@Slf4j
+public class NonBlockingSpider extends SyncSpider {
+
+    private final AsyncDownloader asyncDownloader;
+    private final ExecutorService handlerPool;
+    private final int maxInFlight;
+    //可以发起的下载数
+    private final Semaphore permits;
+    //已经发起但还没有处理完成的请求数，调度器不记录时用于判断抓取是否结束
+    private final AtomicInteger inFlight = new AtomicInteger();
+    //一次从调度器中取出的最大请求数
+    private int batchSize = AsyncSpider.DEFAULT_BATCH_SIZE;
+
+    private volatile boolean stopped;
+
+    public final static int DEFAULT_MAX_IN_FLIGHT = 256;
+    //等待空位和请求的最长时间，超时后重新检查是否已经停止
+    private final static long POLL_MILLIS = 200;
+
+
+    public NonBlockingSpider(AsyncDownloader downloader,
+                             Scheduler scheduler,
+                             HttpRequestExtractor httpRequestExtractor,
+                             Pipeline pipeline,
+                             ExecutorService handlerPool,
+                             int maxInFlight) {
+        super(downloader, scheduler, httpRequestExtractor, pipeline);
+        Assert.notNull(handlerPool, "handlerPool is required");
+        Assert.isTrue(maxInFlight > 0, "maxInFlight <1");
+        this.asyncDownloader = downloader;
+        this.handlerPool = handlerPool;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @param batchSize 一次从调度器中取出的最大请求数。
+     * @see AsyncSpider#setBatchSize(int)
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize <1");
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void start() {
+        try {
+            while (!stopped) {
+                //至少等到一个空位，再一次拿走其余的空位
+                if (!permits.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                int acquired = 1 + permits.drainPermits();
+                List<HttpUriRequest> httpUriRequests;
+                try {
+                    //没有待处理和正在下载的请求时调度器会立即返回
+                    httpUriRequests = scheduler.takeBatch(Math.min(acquired, batchSize), POLL_MILLIS);
+                } catch (TakeTimeoutException e) {
+                    //还有正在下载的请求，之后可能提取出新的请求
+                    permits.release(acquired);
+                    continue;
+                }
+                permits.release(acquired - httpUriRequests.size());
+                if (stopped) {
+                    //等待期间已经停止，取出的请求不下载也不标记完成，快照中依然是待处理的请求
+                    permits.release(httpUriRequests.size());
+                    break;
+                }
+                if (httpUriRequests.isEmpty()) {
+                    //新的请求在标记完成之前已经放入调度器，没有正在处理的请求时再确认一次
+                    if (inFlight.get() == 0 && scheduler.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                inFlight.addAndGet(httpUriRequests.size());
+                httpUriRequests.forEach(this::dispatch);
+            }
+            //等待正在进行的下载全部完成
+            permits.acquire(maxInFlight);
+            permits.release(maxInFlight);
+            log.info("download completed, exit...");
+            afterCompleted();
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for the task to complete,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(HttpUriRequest httpUriRequest) {
+        CompletableFuture<StringResponseResult> download;
+        try {
+            download = asyncDownloader.downloadAsync(httpUriRequest);
+        } catch (RuntimeException e) {
+            //直接抛出的异常同样需要标记完成并归还空位，不影响同一批的其他请求
+            download = CompletableFuture.failedFuture(e);
+        }
+        download
+                .thenAcceptAsync(stringResponseResult -> {
+                    List<HttpUriRequest> newHttpUriRequests = new ArrayList<>();
+                    try {
+                        handleStringResponseResult(stringResponseResult, newHttpUriRequests);
+                    } finally {
+                        //先放入新的请求再标记完成，避免误判为抓取结束
+                        scheduler.drainFrom(newHttpUriRequests);
+                    }
+                }, handlerPool)
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        log.error("url:{} handle failed,error:{}", httpUriRequest.getURI(), e.getMessage());
+                    }
+                    scheduler.complete(httpUriRequest);
+                    inFlight.decrementAndGet();
+                    permits.release();
+                });
+    }
+
+
+    /**
+     * 不再发起新的下载，已经开始的下载会继续完成。
+     */
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+
+    @Override
+    public void close() {
+        if (!handlerPool.isShutdown()) {
+            handlerPool.shutdown();
+        }
+        super.close();
+    }
+
+}
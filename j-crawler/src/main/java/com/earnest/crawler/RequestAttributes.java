@@ -0,0 +1,43 @@
+package com.earnest.crawler;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 在{@link HttpUriRequest}上保存爬虫使用的属性，这些属性不会被发送到服务器。
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+@SuppressWarnings("deprecation")
+public final class RequestAttributes {
+
+    private static final String DEPTH = "crawler.depth";
+
+    private static final String TAG = "crawler.tag";
+
+    /**
+     * @return 请求的抓取深度，初始请求为0。
+     */
+    public static int getDepth(HttpUriRequest httpUriRequest) {
+        Object depth = httpUriRequest.getParams().getParameter(DEPTH);
+        return depth instanceof Integer ? (Integer) depth : 0;
+    }
+
+    public static void setDepth(HttpUriRequest httpUriRequest, int depth) {
+        httpUriRequest.getParams().setIntParameter(DEPTH, depth);
+    }
+
+    /**
+     * @return 提取出这个请求的规则的标签，没有时返回<code>null</code>。
+     * @see com.earnest.crawler.extractor.MultiRegexHttpRequestExtractor
+     */
+    public static String getTag(HttpUriRequest httpUriRequest) {
+        Object tag = httpUriRequest.getParams().getParameter(TAG);
+        return tag instanceof String ? (String) tag : null;
+    }
+
+    public static void setTag(HttpUriRequest httpUriRequest, String tag) {
+        httpUriRequest.getParams().setParameter(TAG, tag);
+    }
+
+}
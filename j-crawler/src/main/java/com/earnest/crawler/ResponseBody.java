@@ -0,0 +1,179 @@
+package com.earnest.crawler;
+
+import com.earnest.crawler.downloader.ByteBufferPool;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 保存在{@link ByteBufferPool}中的响应体，只在需要时才解码为字符串。
+ * <p>
+ * 调用{@link #release()}后内存块会被其他响应重复使用，不能再读取。
+ */
+public class ResponseBody {
+
+    private final ByteBufferPool pool;
+    //写入状态的内存块，position为已写入的字节数
+    private final List<ByteBuffer> chunks = new ArrayList<>(4);
+
+    private int length;
+
+    private volatile boolean released;
+
+    public ResponseBody(ByteBufferPool pool) {
+        Assert.notNull(pool, "pool is null");
+        this.pool = pool;
+    }
+
+    /**
+     * 读取全部内容，不会关闭输入流。读取失败时归还已经占用的内存块。
+     */
+    public static ResponseBody read(InputStream inputStream, ByteBufferPool pool) throws IOException {
+        ResponseBody body = new ResponseBody(pool);
+        if (inputStream == null) {
+            return body;
+        }
+        try {
+            ByteBuffer chunk = body.nextChunk();
+            int read;
+            while ((read = inputStream.read(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining())) != -1) {
+                chunk.position(chunk.position() + read);
+                body.length += read;
+                if (!chunk.hasRemaining()) {
+                    chunk = body.nextChunk();
+                }
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            body.release();
+            throw e;
+        }
+        return body;
+    }
+
+    /**
+     * 追加<code>source</code>中剩余的字节。
+     */
+    public void append(ByteBuffer source) {
+        ByteBuffer chunk = chunks.isEmpty() ? nextChunk() : chunks.get(chunks.size() - 1);
+        while (source.hasRemaining()) {
+            if (!chunk.hasRemaining()) {
+                chunk = nextChunk();
+            }
+            int count = Math.min(chunk.remaining(), source.remaining());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + count);
+            chunk.put(slice);
+            source.position(source.position() + count);
+            length += count;
+        }
+    }
+
+    private ByteBuffer nextChunk() {
+        ByteBuffer chunk = pool.acquire();
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public InputStream openStream() {
+        checkNotReleased();
+        List<InputStream> inputStreams = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            inputStreams.add(new ByteArrayInputStream(chunk.array(), chunk.arrayOffset(), chunk.position()));
+        }
+        return new SequenceInputStream(Collections.enumeration(inputStreams));
+    }
+
+    /**
+     * @return 只读的内容。内容只占一块内存时不会复制。
+     */
+    public ByteBuffer asByteBuffer() {
+        checkNotReleased();
+        if (chunks.size() == 1) {
+            ByteBuffer view = chunks.get(0).duplicate();
+            view.flip();
+            return view.asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (ByteBuffer chunk : chunks) {
+            buffer.put(chunk.array(), chunk.arrayOffset(), chunk.position());
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        checkNotReleased();
+        for (ByteBuffer chunk : chunks) {
+            outputStream.write(chunk.array(), chunk.arrayOffset(), chunk.position());
+        }
+    }
+
+    /**
+     * 解码为字符串，开头与<code>charset</code>对应的BOM不会出现在结果中。
+     */
+    public String decode(Charset charset) {
+        try {
+            InputStream inputStream = openStream();
+            byte[] prefix = prefix(4);
+            inputStream.skip(CharsetDetector.bomLength(prefix, 0, prefix.length, charset));
+            return StreamUtils.copyToString(inputStream, charset);
+        } catch (IOException e) {
+            //内存中的数据不会出现IO异常
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 根据BOM、响应头声明的字符集和开头的<code>meta</code>确定解码使用的字符集。
+     *
+     * @param declaredCharset 响应头声明的字符集，可以为空。
+     * @see CharsetDetector
+     */
+    public Charset detectCharset(String declaredCharset) {
+        checkNotReleased();
+        byte[] prefix = prefix(CharsetDetector.PRESCAN_LENGTH);
+        return CharsetDetector.detect(prefix, 0, prefix.length, declaredCharset);
+    }
+
+    /**
+     * @return 开头最多<code>maxLength</code>个字节的副本。
+     */
+    private byte[] prefix(int maxLength) {
+        int prefixLength = Math.min(maxLength, length);
+        byte[] prefix = new byte[prefixLength];
+        int copied = 0;
+        for (int i = 0; copied < prefixLength; i++) {
+            ByteBuffer chunk = chunks.get(i);
+            int count = Math.min(chunk.position(), prefixLength - copied);
+            System.arraycopy(chunk.array(), chunk.arrayOffset(), prefix, copied, count);
+            copied += count;
+        }
+        return prefix;
+    }
+
+    /**
+     * 将内存块归还到池中，可以多次调用。
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        chunks.forEach(pool::release);
+        chunks.clear();
+    }
+
+    private void checkNotReleased() {
+        Assert.state(!released, "response body has been released");
+    }
+}
@@ -1,6 +1,161 @@
 package com.earnest.crawler;
 
 
+import lombok.Getter;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 文本的下载结果。
+ * <p>
+ * 下载器使用流式模式时内容保存在{@link ResponseBody}中，第一次调用{@link #getContent()}时才解码，
+ * 只需要字节的提取器和管道可以通过{@link #openStream()}直接读取，不产生字符串。
+ * <p>
+ * 同一个下载结果会依次交给提取器和所有的管道，{@link #parse(String)}得到的{@link Document}
+ * 和{@link #derive(Object, Function)}得到的其他形式只在第一次使用时计算，之后共享同一个对象，使用时不能修改，
+ * 需要修改页面时使用{@link #parseCopy(String)}。
+ */
 public class StringResponseResult extends HttpClientResponseResult<String> {
 
+    @Getter
+    private ResponseBody body;
+
+    //检测到的字符集，只检测一次
+    private Charset bodyCharset;
+
+    //解析后的页面，只解析一次
+    private Document document;
+
+    //由内容计算得到的其他形式
+    private Map<Object, Object> derived;
+
+    @Override
+    public String getContent() {
+        String content = super.getContent();
+        if (content == null && body != null) {
+            content = body.decode(getBodyCharset());
+            //内容没有变化，不清除已经解析的页面
+            super.setContent(content);
+        }
+        return content;
+    }
+
+    /**
+     * @return 内容的字节流，已经解码的内容会按{@link #getBodyCharset()}重新编码。
+     */
+    public InputStream openStream() {
+        String content = super.getContent();
+        if (content == null && body != null) {
+            return body.openStream();
+        }
+        return new ByteArrayInputStream(content == null ? new byte[0] : content.getBytes(getBodyCharset()));
+    }
+
+    @Override
+    public void setContent(String content) {
+        super.setContent(content);
+        document = null;
+        derived = null;
+    }
+
+    public void setBody(ResponseBody body) {
+        this.body = body;
+        bodyCharset = null;
+        document = null;
+        derived = null;
+    }
+
+    /**
+     * 解析为{@link Document}，只在第一次调用时解析，之后返回同一个只读的对象。
+     * 没有解码的内容直接从字节解析，使用{@link #getBodyCharset()}检测到的字符集。
+     *
+     * @param baseUri 补全相对地址使用的网址，与第一次解析时不同时返回使用该网址的副本，共享的页面不变。
+     */
+    public Document parse(String baseUri) {
+        if (document != null) {
+            if (document.baseUri().equals(baseUri)) {
+                return document;
+            }
+            Document copy = document.clone();
+            copy.setBaseUri(baseUri);
+            return copy;
+        }
+        String content = super.getContent();
+        if (content != null || body == null) {
+            document = Jsoup.parse(content == null ? "" : content, baseUri);
+            return document;
+        }
+        try {
+            document = Jsoup.parse(body.openStream(), getBodyCharset().name(), baseUri);
+            return document;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return 可以修改的页面副本，不影响其他提取器和管道使用的页面。
+     */
+    public Document parseCopy(String baseUri) {
+        Document copy = parse(baseUri);
+        return copy == document ? copy.clone() : copy;
+    }
+
+    /**
+     * 获取由内容计算得到的其他形式，同一个<code>key</code>只计算一次。
+     *
+     * @param key     区分不同形式的键，一般使用提取器或管道的类。
+     * @param factory 第一次获取时的计算方法。
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T derive(Object key, Function<? super StringResponseResult, T> factory) {
+        Assert.notNull(key, "key is null");
+        if (derived == null) {
+            derived = new HashMap<>(4);
+        }
+        Object value = derived.get(key);
+        if (value == null) {
+            value = factory.apply(this);
+            derived.put(key, value);
+        }
+        return (T) value;
+    }
+
+    /**
+     * @return 内容使用的字符集。
+     * @see ResponseBody#detectCharset(String)
+     */
+    public Charset getBodyCharset() {
+        if (body != null) {
+            if (bodyCharset == null) {
+                bodyCharset = body.detectCharset(getCharset());
+            }
+            return bodyCharset;
+        }
+        return getCharset() != null && Charset.isSupported(getCharset()) ? Charset.forName(getCharset()) : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * 归还{@link ResponseBody}占用的内存，之后不能再读取没有解码的内容，并丢弃解析后的页面。
+     */
+    public void release() {
+        if (body != null) {
+            body.release();
+        }
+        document = null;
+        derived = null;
+    }
+
 }
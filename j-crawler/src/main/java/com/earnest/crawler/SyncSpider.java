@@ -4,22 +4,33 @@ import com.alibaba.fastjson.util.IOUtils;
 import com.earnest.crawler.downloader.Downloader;
 import com.earnest.crawler.exception.TakeTimeoutException;
 import com.earnest.crawler.extractor.HttpRequestExtractor;
+import com.earnest.crawler.pipeline.NearDuplicateDetector;
 import com.earnest.crawler.pipeline.Pipeline;
 import com.earnest.crawler.scheduler.Scheduler;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import java.io.Closeable;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Set;
 
+@Slf4j
 public class SyncSpider implements Spider {
 
     protected final Downloader downloader;
     protected final Scheduler scheduler;
     protected final HttpRequestExtractor httpRequestExtractor;
     protected final Pipeline pipeline;
+    /**
+     * 不为空时判断内容是否重复：重复或相似的页面只提取链接，不进入管道。
+     */
+    @Setter
+    protected NearDuplicateDetector duplicateDetector;
 
     public SyncSpider(Downloader downloader, Scheduler scheduler, HttpRequestExtractor httpRequestExtractor, Pipeline pipeline) {
         Assert.notNull(downloader, "downloader is null");
@@ -44,8 +55,12 @@ public class SyncSpider implements Spider {
             if (httpUriRequest == null) {  //取出null值时
                 break;
             }
-            StringResponseResult stringResponseResult = downloader.download(httpUriRequest);
-            handleStringResponseResult(stringResponseResult);
+            try {
+                StringResponseResult stringResponseResult = downloader.download(httpUriRequest);
+                handleStringResponseResult(stringResponseResult);
+            } finally {
+                scheduler.complete(httpUriRequest);
+            }
         }
 
         afterCompleted();
@@ -65,17 +80,66 @@ public class SyncSpider implements Spider {
      * @param stringResponseResult
      */
     protected void handleStringResponseResult(StringResponseResult stringResponseResult) {
-        //提取新的链接
-        Set<HttpUriRequest> httpUriRequests = httpRequestExtractor.extract(stringResponseResult);
-        //将结果放入
-        scheduler.putAll(httpUriRequests);
-        //将结果进行处理
-        pipeline.pipe(stringResponseResult);
+        try {
+            NearDuplicateDetector.Duplicate duplicate = checkDuplicate(stringResponseResult);
+            //提取新的链接
+            Set<HttpUriRequest> httpUriRequests = httpRequestExtractor.extract(stringResponseResult);
+            //将结果放入
+            scheduler.putAll(httpUriRequests);
+            //将结果进行处理
+            if (duplicate == NearDuplicateDetector.Duplicate.UNIQUE) {
+                pipeline.pipe(stringResponseResult);
+            }
+        } finally {
+            //归还流式模式的内存块
+            stringResponseResult.release();
+        }
+    }
+
+    /**
+     * 对{@link StringResponseResult}进行处理，提取出的新链接暂存在集合中，由调用者批量放入调度器。
+     *
+     * @param stringResponseResult
+     * @param newHttpUriRequests   保存新链接的集合。
+     */
+    protected void handleStringResponseResult(StringResponseResult stringResponseResult, Collection<HttpUriRequest> newHttpUriRequests) {
+        try {
+            NearDuplicateDetector.Duplicate duplicate = checkDuplicate(stringResponseResult);
+            //提取新的链接
+            Set<HttpUriRequest> httpUriRequests = httpRequestExtractor.extract(stringResponseResult);
+            if (!CollectionUtils.isEmpty(httpUriRequests)) {
+                newHttpUriRequests.addAll(httpUriRequests);
+            }
+            //将结果进行处理
+            if (duplicate == NearDuplicateDetector.Duplicate.UNIQUE) {
+                pipeline.pipe(stringResponseResult);
+            }
+        } finally {
+            //归还流式模式的内存块
+            stringResponseResult.release();
+        }
+    }
+
+    /**
+     * 重复的页面依然需要提取链接：相同的内容出现在不同的地址时，相对链接解析出的地址不同；相似的页面（例如列表页）可能有新的链接。
+     */
+    private NearDuplicateDetector.Duplicate checkDuplicate(StringResponseResult stringResponseResult) {
+        if (duplicateDetector == null) {
+            return NearDuplicateDetector.Duplicate.UNIQUE;
+        }
+        NearDuplicateDetector.Duplicate duplicate = duplicateDetector.check(stringResponseResult);
+        if (duplicate != NearDuplicateDetector.Duplicate.UNIQUE) {
+            log.debug("Skip pipeline for {} duplicate content of {}", duplicate, stringResponseResult.getHttpRequest().getURI());
+        }
+        return duplicate;
     }
 
 
     @Override
     public void close() {
+        if (duplicateDetector != null) {
+            log.info("Duplicate content {}", duplicateDetector);
+        }
         closeComponents(downloader, scheduler, httpRequestExtractor, pipeline);
     }
 
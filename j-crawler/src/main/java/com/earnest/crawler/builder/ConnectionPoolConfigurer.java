@@ -0,0 +1,240 @@
+package com.earnest.crawler.builder;
+
+import com.earnest.crawler.downloader.ConnectionPoolStats;
+import org.apache.http.HttpHost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.springframework.util.Assert;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置下载器的连接池。
+ * <p>
+ * 默认的总连接数为线程数（或同时进行的最大请求数），每个主机可以使用全部的连接，
+ * 不再受<code>HttpClient</code>默认每个主机2个连接的限制。
+ */
+public class ConnectionPoolConfigurer extends SharedSpiderConfigurer {
+
+    private int maxTotal;
+
+    private int maxPerHost;
+
+    private final Map<HttpHost, Integer> hostMaxConnections = new LinkedHashMap<>();
+
+    private long timeToLiveMillis = -1;
+
+    private long maxIdleMillis;
+
+    private boolean evictExpired;
+
+    private int validateAfterInactivityMillis = -1;
+
+    private long keepAliveMillis = -1;
+
+    private ConnectionPoolStats connectionPoolStats;
+
+
+    /**
+     * @param maxTotal 连接池的总连接数。
+     * @return
+     */
+    public ConnectionPoolConfigurer maxTotal(int maxTotal) {
+        Assert.isTrue(maxTotal > 0, "maxTotal <1");
+        this.maxTotal = maxTotal;
+        return this;
+    }
+
+    /**
+     * @param maxPerHost 每个主机默认的最大连接数。
+     * @return
+     */
+    public ConnectionPoolConfigurer maxPerHost(int maxPerHost) {
+        Assert.isTrue(maxPerHost > 0, "maxPerHost <1");
+        this.maxPerHost = maxPerHost;
+        return this;
+    }
+
+    /**
+     * 为指定主机单独设置最大连接数，同时对<code>http</code>和<code>https</code>的默认端口生效。
+     *
+     * @param host           主机名。
+     * @param maxConnections 最大连接数。
+     * @return
+     */
+    public ConnectionPoolConfigurer maxPerHost(String host, int maxConnections) {
+        Assert.hasText(host, "host is empty or null");
+        maxPerHost(new HttpHost(host, 80, "http"), maxConnections);
+        return maxPerHost(new HttpHost(host, 443, "https"), maxConnections);
+    }
+
+    public ConnectionPoolConfigurer maxPerHost(HttpHost host, int maxConnections) {
+        Assert.notNull(host, "host is null");
+        Assert.isTrue(maxConnections > 0, "maxConnections <1");
+        hostMaxConnections.put(host, maxConnections);
+        return this;
+    }
+
+    /**
+     * @param timeToLive 连接的最长存活时间，超过后不再重复使用。
+     * @param timeUnit   时间单位。
+     * @return
+     */
+    public ConnectionPoolConfigurer timeToLive(long timeToLive, TimeUnit timeUnit) {
+        Assert.isTrue(timeToLive > 0, "timeToLive <1");
+        this.timeToLiveMillis = timeUnit.toMillis(timeToLive);
+        return this;
+    }
+
+    /**
+     * 后台定期关闭空闲过久的连接，只对阻塞的下载器生效，非阻塞的下载器由IO线程发现关闭的连接。
+     *
+     * @param maxIdleTime 最长空闲时间。
+     * @param timeUnit    时间单位。
+     * @return
+     */
+    public ConnectionPoolConfigurer evictIdle(long maxIdleTime, TimeUnit timeUnit) {
+        Assert.isTrue(maxIdleTime > 0, "maxIdleTime <1");
+        this.maxIdleMillis = timeUnit.toMillis(maxIdleTime);
+        return this;
+    }
+
+    /**
+     * 后台定期关闭超过存活时间的连接，只对阻塞的下载器生效。
+     *
+     * @return
+     */
+    public ConnectionPoolConfigurer evictExpired() {
+        this.evictExpired = true;
+        return this;
+    }
+
+    /**
+     * 连接空闲超过指定时间后，重新使用前先检查连接是否已被服务器关闭。只对阻塞的下载器生效。
+     *
+     * @param millis 空闲时间（毫秒）。
+     * @return
+     */
+    public ConnectionPoolConfigurer validateAfterInactivity(int millis) {
+        Assert.isTrue(millis >= 0, "millis <0");
+        this.validateAfterInactivityMillis = millis;
+        return this;
+    }
+
+    /**
+     * 服务器没有通过<code>Keep-Alive</code>响应头指定时，连接保持的时间；服务器指定的时间更短时使用服务器的时间。
+     *
+     * @param keepAlive 保持时间。
+     * @param timeUnit  时间单位。
+     * @return
+     */
+    public ConnectionPoolConfigurer keepAlive(long keepAlive, TimeUnit timeUnit) {
+        Assert.isTrue(keepAlive > 0, "keepAlive <1");
+        this.keepAliveMillis = timeUnit.toMillis(keepAlive);
+        return this;
+    }
+
+    /**
+     * 连接池的实时状态，在{@link SpiderBuilder#build()}之后可用。
+     *
+     * @return
+     */
+    public ConnectionPoolStats stats() {
+        Assert.state(connectionPoolStats != null, "connection pool has not been built yet");
+        return connectionPoolStats;
+    }
+
+    /**
+     * 为阻塞的下载器创建连接池。
+     *
+     * @param defaultMaxTotal 没有设置总连接数时使用的连接数。
+     */
+    void apply(HttpClientBuilder httpClientBuilder, int defaultMaxTotal) {
+        PoolingHttpClientConnectionManager connectionManager = timeToLiveMillis > 0 ?
+                new PoolingHttpClientConnectionManager(timeToLiveMillis, TimeUnit.MILLISECONDS) :
+                new PoolingHttpClientConnectionManager();
+        int total = maxTotal > 0 ? maxTotal : defaultMaxTotal;
+        connectionManager.setMaxTotal(total);
+        connectionManager.setDefaultMaxPerRoute(maxPerHost > 0 ? maxPerHost : total);
+        hostMaxConnections.forEach((host, max) -> connectionManager.setMaxPerRoute(routeOf(host), max));
+        if (validateAfterInactivityMillis >= 0) {
+            connectionManager.setValidateAfterInactivity(validateAfterInactivityMillis);
+        }
+
+        httpClientBuilder.setConnectionManager(connectionManager);
+        if (maxIdleMillis > 0) {
+            httpClientBuilder.evictIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+        }
+        if (evictExpired) {
+            httpClientBuilder.evictExpiredConnections();
+        }
+        if (keepAliveMillis > 0) {
+            httpClientBuilder.setKeepAliveStrategy(keepAliveStrategy());
+        }
+
+        connectionPoolStats = new ConnectionPoolStats(connectionManager, connectionManager::getRoutes);
+    }
+
+    /**
+     * 为非阻塞的下载器创建连接池。
+     *
+     * @param defaultMaxTotal 没有设置总连接数时使用的连接数。
+     */
+    void apply(HttpAsyncClientBuilder httpAsyncClientBuilder, int defaultMaxTotal) {
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(),
+                    null,
+                    RegistryBuilder.<SchemeIOSessionStrategy>create()
+                            .register("http", NoopIOSessionStrategy.INSTANCE)
+                            .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                            .build(),
+                    null, null,
+                    timeToLiveMillis, TimeUnit.MILLISECONDS);
+        } catch (IOReactorException e) {
+            throw new UncheckedIOException("failed to create I/O reactor", e);
+        }
+        int total = maxTotal > 0 ? maxTotal : defaultMaxTotal;
+        connectionManager.setMaxTotal(total);
+        connectionManager.setDefaultMaxPerRoute(maxPerHost > 0 ? maxPerHost : total);
+        hostMaxConnections.forEach((host, max) -> connectionManager.setMaxPerRoute(routeOf(host), max));
+
+        httpAsyncClientBuilder.setConnectionManager(connectionManager);
+        if (keepAliveMillis > 0) {
+            httpAsyncClientBuilder.setKeepAliveStrategy(keepAliveStrategy());
+        }
+
+        connectionPoolStats = new ConnectionPoolStats(connectionManager, connectionManager::getRoutes);
+    }
+
+    /**
+     * 与<code>DefaultRoutePlanner</code>为直连的请求生成的路由相同：补全默认端口，<code>https</code>的路由是安全的。
+     */
+    static HttpRoute routeOf(HttpHost host) {
+        boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+        HttpHost target = host.getPort() > 0 ? host : new HttpHost(host.getHostName(), secure ? 443 : 80, host.getSchemeName());
+        return new HttpRoute(target, null, secure);
+    }
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        long keepAlive = keepAliveMillis;
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+        };
+    }
+}
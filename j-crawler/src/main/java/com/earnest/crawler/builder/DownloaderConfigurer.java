@@ -1,36 +1,293 @@
 package com.earnest.crawler.builder;
 
+import com.earnest.crawler.NonBlockingSpider;
+import com.earnest.crawler.VirtualThreadExecutors;
+import com.earnest.crawler.downloader.AdaptiveConcurrencyDownloader;
+import com.earnest.crawler.downloader.AdaptiveConcurrencyLimiter;
+import com.earnest.crawler.downloader.AsyncDownloader;
+import com.earnest.crawler.downloader.ByteBufferPool;
+import com.earnest.crawler.downloader.ContentEncodings;
 import com.earnest.crawler.downloader.Downloader;
+import com.earnest.crawler.downloader.FileHttpCacheStorage;
+import com.earnest.crawler.downloader.HttpAsyncClientDownloader;
+import com.earnest.crawler.downloader.HtmlUnitDownloader;
 import com.earnest.crawler.downloader.HttpClientDownloader;
+import com.earnest.crawler.downloader.RenderRule;
+import com.earnest.crawler.downloader.RetryingDownloader;
+import com.earnest.crawler.downloader.RoutingDownloader;
+import com.earnest.crawler.downloader.WarcRecordingDownloader;
+import com.earnest.crawler.downloader.WarcReplayDownloader;
 import com.earnest.crawler.proxy.HttpProxy;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.impl.client.cache.CachingHttpClients;
 import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.springframework.util.Assert;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 
 public class DownloaderConfigurer extends RequestConfigConfigurer {
 
     private final HttpClientBuilder httpClientBuilder = HttpClients.custom();
 
+    //使用缓存时代替httpClientBuilder
+    private final CachingHttpClientBuilder cachingHttpClientBuilder = CachingHttpClients.custom();
+
+    private final HttpAsyncClientBuilder httpAsyncClientBuilder = HttpAsyncClients.custom();
+
+    //大于0时使用非阻塞的下载器
+    private int maxInFlight;
+
+    //大于0时在虚拟线程中下载
+    private int virtualThreads;
+
+    //不为空时使用流式模式
+    private ByteBufferPool byteBufferPool;
+
+    //不为空时缓存响应
+    private Path cacheDirectory;
+
+    //为true时按主机自适应调整并发数，没有指定限制器时在configure()时创建
+    private boolean adaptiveConcurrency;
+
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
+    //大于等于0时失败重试
+    private int maxRetries = -1;
+
+    private long retryBaseDelayMillis;
+
+    private long retryMaxDelayMillis;
+
+    private boolean hedging;
+
+    //不为空时命中规则的请求使用renderDownloader下载
+    private Predicate<HttpUriRequest> renderRule;
+
+    private Downloader renderDownloader;
+
+    //不为空时将响应记录到WARC文件中
+    private Path recordDirectory;
+
+    //不为空时从WARC文件中重放，不访问网络
+    private Path replayDirectory;
+
 
     public DownloaderConfigurer setProxy(HttpProxy httpProxy) {
         Assert.notNull(httpProxy, "httpProxy is null");
         httpClientBuilder.setProxy(httpProxy.getHttpHost());
+        cachingHttpClientBuilder.setProxy(httpProxy.getHttpHost());
+        httpAsyncClientBuilder.setProxy(httpProxy.getHttpHost());
         return this;
     }
 
     public DownloaderConfigurer setThreadNumber(int thread) {
         sharedObjectMap.put(Integer.class, Collections.singletonList(thread));
+        return this;
+    }
+
+
+    /**
+     * 使用非阻塞的下载器，少量的线程即可同时进行大量的下载，线程数只用于处理下载结果。
+     *
+     * @param maxInFlight 同时进行的最大下载数。
+     * @return
+     * @see NonBlockingSpider
+     */
+    public DownloaderConfigurer async(int maxInFlight) {
+        Assert.isTrue(maxInFlight > 0, "maxInFlight <1");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public DownloaderConfigurer async() {
+        return async(NonBlockingSpider.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 运行在JDK 21及以上时，每个请求在一个新的虚拟线程中下载和处理，同时进行的请求数由<code>maxConcurrency</code>限制。
+     * 不支持虚拟线程时依然使用{@link #setThreadNumber(int)}的固定线程池。
+     *
+     * @param maxConcurrency 同时进行的最大请求数。
+     * @return
+     * @see com.earnest.crawler.VirtualThreadExecutors
+     */
+    public DownloaderConfigurer virtualThreads(int maxConcurrency) {
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency <1");
+        this.virtualThreads = maxConcurrency;
+        return this;
+    }
+
+    int getVirtualThreads() {
+        return virtualThreads;
+    }
+
+
+    /**
+     * 使用流式模式，响应体保存在池中的内存块中，需要时才解码为字符串。
+     * 内存块在管道处理完后归还，管道需要在{@link com.earnest.crawler.pipeline.Pipeline#pipe}中读取内容。
+     *
+     * @param byteBufferPool 内存块池。
+     * @return
+     * @see com.earnest.crawler.StringResponseResult#openStream()
+     */
+    public DownloaderConfigurer streaming(ByteBufferPool byteBufferPool) {
+        Assert.notNull(byteBufferPool, "byteBufferPool is null");
+        this.byteBufferPool = byteBufferPool;
+        return this;
+    }
+
+    public DownloaderConfigurer streaming() {
+        return streaming(ByteBufferPool.DEFAULT);
+    }
+
+
+    /**
+     * 将响应缓存在磁盘上，重复抓取时使用条件请求，页面没有变化时服务器返回304，直接使用缓存的内容。
+     * 不能与{@link #async(int)}一起使用。
+     *
+     * @param directory 保存缓存的目录。
+     * @return
+     * @see FileHttpCacheStorage
+     */
+    public DownloaderConfigurer cache(Path directory) {
+        Assert.notNull(directory, "directory is null");
+        this.cacheDirectory = directory;
+        return this;
+    }
+
+
+    /**
+     * 按主机自适应调整同时进行的下载数，响应变慢或收到429、503时减小，否则逐渐增大。
+     *
+     * @param limiter 限制器，可以通过它查看每个主机的状态。
+     * @return
+     * @see AdaptiveConcurrencyDownloader
+     */
+    public DownloaderConfigurer adaptiveConcurrency(AdaptiveConcurrencyLimiter limiter) {
+        Assert.notNull(limiter, "limiter is null");
+        this.adaptiveConcurrency = true;
+        this.adaptiveConcurrencyLimiter = limiter;
+        return this;
+    }
+
+    /**
+     * 按主机自适应调整同时进行的下载数，上限为连接池的连接数。
+     *
+     * @return
+     */
+    public DownloaderConfigurer adaptiveConcurrency() {
+        this.adaptiveConcurrency = true;
+        return this;
+    }
+
+
+    /**
+     * 下载失败或收到429、5xx时重试，等待时间按指数增长并加入随机值，响应带有<code>Retry-After</code>时按其等待。
+     *
+     * @param maxRetries      最多重试的次数。
+     * @param baseDelayMillis 第一次重试的最长等待时间（毫秒）。
+     * @param maxDelayMillis  最长的等待时间（毫秒）。
+     * @return
+     * @see RetryingDownloader
+     */
+    public DownloaderConfigurer retry(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        Assert.isTrue(maxRetries >= 0, "maxRetries <0");
+        Assert.isTrue(baseDelayMillis > 0 && maxDelayMillis >= baseDelayMillis, "invalid retry delay");
+        this.maxRetries = maxRetries;
+        this.retryBaseDelayMillis = baseDelayMillis;
+        this.retryMaxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    public DownloaderConfigurer retry(int maxRetries) {
+        return retry(maxRetries, 500, 30_000);
+    }
 
-        httpClientBuilder.setMaxConnTotal(thread);
+    /**
+     * 请求的用时超过该主机响应时间的95百分位时，再发出一次相同的请求，使用先返回的结果。
+     *
+     * @return
+     * @see RetryingDownloader
+     */
+    public DownloaderConfigurer hedge() {
+        this.hedging = true;
+        return this;
+    }
+
+
+    /**
+     * 命中规则的请求使用HtmlUnit下载并执行页面中的脚本，其余的请求依然使用普通的下载器。
+     *
+     * @param renderDownloader 渲染页面的下载器。
+     * @param rule             需要渲染的请求。
+     * @return
+     * @see RenderRule
+     * @see RoutingDownloader
+     */
+    public DownloaderConfigurer render(HtmlUnitDownloader renderDownloader, Predicate<HttpUriRequest> rule) {
+        Assert.notNull(renderDownloader, "renderDownloader is null");
+        Assert.notNull(rule, "rule is null");
+        this.renderDownloader = renderDownloader;
+        this.renderRule = rule;
+        return this;
+    }
+
+    /**
+     * 命中规则的请求使用HtmlUnit渲染，同时渲染的页面数不超过线程数。
+     *
+     * @param rule 需要渲染的请求。
+     * @return
+     */
+    public DownloaderConfigurer render(Predicate<HttpUriRequest> rule) {
+        Assert.notNull(rule, "rule is null");
+        this.renderDownloader = null;
+        this.renderRule = rule;
+        return this;
+    }
 
+
+    /**
+     * 将请求和响应记录到目录中压缩的WARC文件，之后可以通过{@link #replay(Path)}离线重放。
+     *
+     * @param directory 保存WARC文件和索引的目录。
+     * @return
+     * @see WarcRecordingDownloader
+     */
+    public DownloaderConfigurer record(Path directory) {
+        Assert.notNull(directory, "directory is null");
+        this.recordDirectory = directory;
+        return this;
+    }
+
+    /**
+     * 从{@link #record(Path)}记录的WARC文件中读取响应，不访问网络，没有记录的请求作为下载失败处理。
+     *
+     * @param directory 保存WARC文件和索引的目录。
+     * @return
+     * @see WarcReplayDownloader
+     */
+    public DownloaderConfigurer replay(Path directory) {
+        Assert.notNull(directory, "directory is null");
+        this.replayDirectory = directory;
         return this;
     }
 
@@ -43,6 +300,8 @@ public class DownloaderConfigurer extends RequestConfigConfigurer {
 
     public DownloaderConfigurer userAgent(String userAgent) {
         httpClientBuilder.setUserAgent(userAgent);
+        cachingHttpClientBuilder.setUserAgent(userAgent);
+        httpAsyncClientBuilder.setUserAgent(userAgent);
         return this;
     }
 
@@ -93,16 +352,86 @@ public class DownloaderConfigurer extends RequestConfigConfigurer {
         //将session的cookieStore
         httpClientContext.setCookieStore((CookieStore) sessionCookieStore);
 
+        CookieStore cookieStore = (CookieStore) sharedObjectMap.remove(CookieStore.class).get(0);
+
+        if (replayDirectory != null) {
+            Assert.state(recordDirectory == null, "record and replay can't be used together");
+            sharedObjectMap.put(Downloader.class, Collections.singletonList(new WarcReplayDownloader(replayDirectory)));
+            return;
+        }
+
+        if (maxInFlight > 0) {
+            Assert.state(cacheDirectory == null, "cache is not supported by the async downloader");
+            httpAsyncClientBuilder.setDefaultCookieStore(cookieStore);
+            ContentEncodings.configure(httpAsyncClientBuilder);
+            and().connectionPool().apply(httpAsyncClientBuilder, maxInFlight);
+            HttpAsyncClientDownloader downloader = new HttpAsyncClientDownloader(httpAsyncClientBuilder.build(), httpClientContext);
+            downloader.setByteBufferPool(byteBufferPool);
+            sharedObjectMap.put(Downloader.class, Collections.singletonList(decorate(downloader, maxInFlight)));
+            return;
+        }
+
+        HttpClientBuilder builder = httpClientBuilder;
+        if (cacheDirectory != null) {
+            builder = FileHttpCacheStorage.custom(cachingHttpClientBuilder, cacheDirectory);
+        }
+
+        //连接数不能少于同时进行的请求数
+        int maxConnections = virtualThreads > 0 && VirtualThreadExecutors.isSupported() ?
+                virtualThreads : (Integer) sharedObjectMap.get(Integer.class).get(0);
+        and().connectionPool().apply(builder, maxConnections);
+
+        ContentEncodings.configure(builder);
+
         //设置全局的cookieStore
-        CloseableHttpClient httpClient = httpClientBuilder
-                .setDefaultCookieStore(((CookieStore) sharedObjectMap.remove(CookieStore.class).get(0)))
+        CloseableHttpClient httpClient = builder
+                .setDefaultCookieStore(cookieStore)
                 .build();
 
-        sharedObjectMap.put(Downloader.class,
-                Collections.singletonList(
-                        new HttpClientDownloader(httpClient, httpClientContext)
-                ));
+        HttpClientDownloader downloader = new HttpClientDownloader(httpClient, httpClientContext);
+        downloader.setByteBufferPool(byteBufferPool);
+        sharedObjectMap.put(Downloader.class, Collections.singletonList(decorate(downloader, maxConnections)));
+
+    }
+
+    private Downloader decorate(Downloader downloader, int maxConnections) {
+        if (renderRule != null) {
+            Downloader htmlUnitDownloader = renderDownloader != null ?
+                    renderDownloader : new HtmlUnitDownloader((Integer) sharedObjectMap.get(Integer.class).get(0));
+            //同步的下载器在单独的线程中执行，异步下载时不阻塞调用的线程
+            ExecutorService executor = downloader instanceof AsyncDownloader ? null : newDownloadExecutor("routing-downloader-", maxConnections);
+            downloader = new RoutingDownloader(downloader, htmlUnitDownloader, renderRule, executor);
+        }
+        if (recordDirectory != null) {
+            //记录每一次实际的下载，重试成功的结果覆盖之前失败的记录
+            downloader = new WarcRecordingDownloader(downloader, recordDirectory);
+        }
+        if (adaptiveConcurrency) {
+            AdaptiveConcurrencyLimiter limiter = adaptiveConcurrencyLimiter != null ?
+                    adaptiveConcurrencyLimiter : new AdaptiveConcurrencyLimiter(maxConnections);
+            //同步的下载器拿到许可后在单独的线程中执行，等待许可时不阻塞调用的线程
+            ExecutorService executor = downloader instanceof AsyncDownloader ? null : newDownloadExecutor("adaptive-downloader-", maxConnections);
+            downloader = new AdaptiveConcurrencyDownloader(downloader, limiter, executor);
+        }
+        if (maxRetries >= 0 || hedging) {
+            //每次重试都重新获取并发的许可，等待重试时不占用许可
+            RetryingDownloader retryingDownloader = new RetryingDownloader(downloader, Math.max(maxRetries, 0), maxConnections);
+            if (maxRetries >= 0) {
+                retryingDownloader.setBackoff(retryBaseDelayMillis, retryMaxDelayMillis);
+            }
+            retryingDownloader.setHedging(hedging);
+            downloader = retryingDownloader;
+        }
+        return downloader;
+    }
 
+    private static ExecutorService newDownloadExecutor(String namePrefix, int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
 
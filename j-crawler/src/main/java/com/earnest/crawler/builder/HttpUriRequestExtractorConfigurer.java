@@ -4,6 +4,8 @@ import com.earnest.crawler.Browser;
 import com.earnest.crawler.extractor.CssSelectorHttpRequestExtractor;
 import com.earnest.crawler.extractor.EmptyHttpRequestExtractor;
 import com.earnest.crawler.extractor.HttpRequestExtractor;
+import com.earnest.crawler.extractor.LinkHttpRequestExtractor;
+import com.earnest.crawler.extractor.MultiRegexHttpRequestExtractor;
 import com.earnest.crawler.extractor.RegexHttpRequestExtractor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
@@ -16,7 +18,9 @@ import org.jsoup.nodes.Document;
 import org.springframework.util.Assert;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
@@ -34,6 +38,8 @@ public class HttpUriRequestExtractorConfigurer extends SharedSpiderConfigurer {
 
     private String uriTemplate;
 
+    private final Map<String, String> taggedPatterns = new LinkedHashMap<>();
+
     /**
      * 使用正则表达式提取新的链接。
      *
@@ -45,6 +51,29 @@ public class HttpUriRequestExtractorConfigurer extends SharedSpiderConfigurer {
         return this;
     }
 
+    /**
+     * 使用多个正则表达式提取新的链接，每个页面只扫描一遍，提取到的请求标记为命中的规则的标签。
+     * 可以多次调用，先添加的规则优先。
+     * <blockquote>
+     * 例:
+     * <pre>
+     *         <code>match("album", "/a_\\w+\\.html").match("list", "/www/4/[\\d-]+\\.html")</code>
+     * </pre>
+     * </blockquote>
+     *
+     * @param tag     规则的标签。
+     * @param pattern
+     * @return
+     * @see com.earnest.crawler.RequestAttributes#getTag(HttpUriRequest)
+     */
+    public HttpUriRequestExtractorConfigurer match(String tag, String pattern) {
+        Assert.hasText(tag, "tag is empty or null");
+        Assert.hasText(pattern, "pattern is empty or null");
+        taggedPatterns.put(tag, pattern);
+        this.requestExtractor = null;
+        return this;
+    }
+
     /**
      * 使用css选择器提取新的链接。
      *
@@ -56,6 +85,36 @@ public class HttpUriRequestExtractorConfigurer extends SharedSpiderConfigurer {
         return this;
     }
 
+    /**
+     * 单遍扫描页面中指定标签的链接属性，不构建DOM，比{@link #select(Function)}更快。
+     * <blockquote>
+     * 例:
+     * <pre>
+     *         <code>links("a[href]", "iframe[src]")</code>
+     * </pre>
+     * </blockquote>
+     *
+     * @param tagAttributes 提取的标签和属性，为空时提取a、area、link的href和frame、iframe的src。
+     * @return
+     */
+    public SharedSpiderConfigurer links(String... tagAttributes) {
+        this.requestExtractor = new LinkHttpRequestExtractor(tagAttributes);
+        return this;
+    }
+
+    /**
+     * 单遍扫描页面中指定标签的链接属性，只保留能够匹配<code>urlFilter</code>的链接。
+     *
+     * @param urlFilter
+     * @param tagAttributes
+     * @return
+     */
+    public SharedSpiderConfigurer links(Pattern urlFilter, String... tagAttributes) {
+        Assert.notNull(urlFilter, "urlFilter is null");
+        this.requestExtractor = new LinkHttpRequestExtractor(urlFilter, tagAttributes);
+        return this;
+    }
+
     /**
      * 选取一个固定的范围获得链接。
      * <blockquote>
@@ -120,6 +179,9 @@ public class HttpUriRequestExtractorConfigurer extends SharedSpiderConfigurer {
 
         }
 
+        if (requestExtractor == null && !taggedPatterns.isEmpty()) {
+            requestExtractor = new MultiRegexHttpRequestExtractor(taggedPatterns);
+        }
         sharedObjectMap.put(HttpRequestExtractor.class, Collections.singletonList(requestExtractor));
     }
 
@@ -6,8 +6,10 @@ import com.earnest.crawler.HttpResponseResult;
 import com.earnest.crawler.pipeline.DocumentPipeline;
 import com.earnest.crawler.pipeline.FileNameGenerator;
 import com.earnest.crawler.pipeline.FilePipeline;
+import com.earnest.crawler.pipeline.NearDuplicateDetector;
 import com.earnest.crawler.pipeline.Pipeline;
 import org.jsoup.nodes.Document;
+import org.springframework.util.Assert;
 
 import java.util.Collections;
 import java.util.Optional;
@@ -20,6 +22,13 @@ public class PipelineConfigurer extends SharedSpiderConfigurer {
 
     private Pipeline pipeline;
 
+    //不为空时跳过重复的内容
+    private NearDuplicateDetector nearDuplicateDetector;
+
+    NearDuplicateDetector getNearDuplicateDetector() {
+        return nearDuplicateDetector;
+    }
+
 
     public SharedSpiderConfigurer custom(Pipeline pipeline) {
         this.pipeline = pipeline;
@@ -68,16 +77,32 @@ public class PipelineConfigurer extends SharedSpiderConfigurer {
         return this;
     }
 
+    /**
+     * 跳过内容与已经处理过的页面相同或相似的结果。在提取链接之前判断，完全相同的页面不会被解析，
+     * 相似的页面（例如列表页）依然提取链接，但不会进入管道。
+     *
+     * @param detector 判断重复的检测器，可以通过它查看重复率。
+     * @return
+     * @see com.earnest.crawler.SyncSpider#setDuplicateDetector(NearDuplicateDetector)
+     */
+    public PipelineConfigurer deduplicate(NearDuplicateDetector detector) {
+        Assert.notNull(detector, "detector is null");
+        this.nearDuplicateDetector = detector;
+        return this;
+    }
+
+    public PipelineConfigurer deduplicate() {
+        return deduplicate(new NearDuplicateDetector());
+    }
+
     @Override
      void configure() {
 
-        sharedObjectMap.put(Pipeline.class,
-                Collections.singletonList(
-                        Optional.ofNullable(pipeline)
-                                .orElse(r -> System.out.println(
-                                        JSONObject.toJSONString(r, SerializerFeature.PrettyFormat)
-                                ))
+        Pipeline pipeline = Optional.ofNullable(this.pipeline)
+                .orElse(r -> System.out.println(
+                        JSONObject.toJSONString(r, SerializerFeature.PrettyFormat)
                 ));
+        sharedObjectMap.put(Pipeline.class, Collections.singletonList(pipeline));
     }
 
 
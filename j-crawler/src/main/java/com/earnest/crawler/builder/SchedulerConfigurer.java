@@ -1,17 +1,22 @@
 package com.earnest.crawler.builder;
 
+import com.earnest.crawler.AsyncSpider;
 import com.earnest.crawler.extractor.EmptyHttpRequestExtractor;
 import com.earnest.crawler.extractor.HttpRequestExtractor;
-import com.earnest.crawler.scheduler.BlockingUniqueScheduler;
-import com.earnest.crawler.scheduler.FixedArrayScheduler;
-import com.earnest.crawler.scheduler.Scheduler;
+import com.earnest.crawler.scheduler.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static java.util.stream.Collectors.toList;
 
@@ -20,9 +25,24 @@ public class SchedulerConfigurer extends SharedSpiderConfigurer {
 
     private Scheduler scheduler;
 
+    //需要历史记录的调度器在configure()时才创建
+    private Function<HistoryStore, Scheduler> schedulerFactory;
+
+    private HistoryStore historyStore;
+
+    private Path checkpointPath;
+
+    private long checkpointIntervalMillis;
+
+    private Path resumePath;
+
+    private int batchSize = AsyncSpider.DEFAULT_BATCH_SIZE;
+
+    private final List<Consumer<HostPartitionedScheduler>> hostPolicies = new ArrayList<>();
+
 
     public SharedSpiderConfigurer blockingUnique(int timeout) {
-        scheduler = new BlockingUniqueScheduler(timeout);
+        schedulerFactory = historyStore -> new BlockingUniqueScheduler(timeout, historyStore);
         return this;
     }
 
@@ -30,11 +50,183 @@ public class SchedulerConfigurer extends SharedSpiderConfigurer {
         return blockingUnique(0);
     }
 
+    /**
+     * 使用无锁的调度器，适合线程数较多的场景。
+     *
+     * @param timeout 阻塞取值的超时时间（毫秒）。
+     * @return
+     */
+    public SharedSpiderConfigurer lockFreeUnique(int timeout) {
+        schedulerFactory = historyStore -> new LockFreeUniqueScheduler(timeout, historyStore);
+        return this;
+    }
+
+    public SharedSpiderConfigurer lockFreeUnique() {
+        return lockFreeUnique(0);
+    }
+
+    /**
+     * 使用可溢出到磁盘的调度器，待处理的请求过多时写入内存映射文件。
+     *
+     * @param directory    保存段文件的目录。
+     * @param headCapacity 内存中最多保存的请求数。
+     * @return
+     */
+    public SharedSpiderConfigurer spillable(Path directory, int headCapacity) {
+        schedulerFactory = historyStore -> new SpillableScheduler(directory, headCapacity, historyStore);
+        return this;
+    }
+
+    public SharedSpiderConfigurer spillable() {
+        schedulerFactory = historyStore -> new SpillableScheduler(historyStore);
+        return this;
+    }
+
+    /**
+     * 使用按主机划分队列的调度器，限制对同一主机的访问频率。
+     *
+     * @param minDelayMillis        同一主机两次请求之间的最小间隔（毫秒）。
+     * @param maxConcurrencyPerHost 同一主机同时进行的最大请求数。
+     * @return
+     */
+    public SchedulerConfigurer hostPartitioned(long minDelayMillis, int maxConcurrencyPerHost) {
+        schedulerFactory = historyStore -> {
+            HostPartitionedScheduler hostPartitionedScheduler =
+                    new HostPartitionedScheduler(minDelayMillis, maxConcurrencyPerHost, 0, historyStore);
+            hostPolicies.forEach(hostPolicy -> hostPolicy.accept(hostPartitionedScheduler));
+            return hostPartitionedScheduler;
+        };
+        return this;
+    }
+
+    /**
+     * 为指定主机单独设置访问策略，需要使用{@link #hostPartitioned(long, int)}。
+     *
+     * @param host           主机名。
+     * @param minDelayMillis 两次请求之间的最小间隔（毫秒）。
+     * @param maxConcurrency 同时进行的最大请求数。
+     * @return
+     */
+    public SchedulerConfigurer hostPolicy(String host, long minDelayMillis, int maxConcurrency) {
+        hostPolicies.add(s -> s.setHostPolicy(host, minDelayMillis, maxConcurrency));
+        return this;
+    }
+
+    /**
+     * 使用按优先级取值的调度器。
+     *
+     * @param scorer 为请求打分，分数越高越先被处理，超出<code>[0, levels)</code>的分数会被截断。
+     * @param levels 优先级的级数。
+     * @return
+     * @see com.earnest.crawler.scheduler.RuleBasedHttpUriRequestScorer
+     */
+    public SharedSpiderConfigurer priority(HttpUriRequestScorer scorer, int levels) {
+        Assert.notNull(scorer, "scorer is null");
+        schedulerFactory = historyStore -> new PriorityScheduler(scorer, levels, 0, historyStore);
+        return this;
+    }
+
+    public SharedSpiderConfigurer priority(HttpUriRequestScorer scorer) {
+        return priority(scorer, PriorityScheduler.DEFAULT_LEVELS);
+    }
+
+    /**
+     * 定期将调度器的状态保存到文件中，爬虫关闭时会再保存一次。
+     *
+     * @param path           保存的文件。
+     * @param intervalMillis 保存的间隔（毫秒）。
+     * @return
+     * @see CheckpointingScheduler
+     */
+    public SchedulerConfigurer checkpoint(Path path, long intervalMillis) {
+        Assert.notNull(path, "path is null");
+        this.checkpointPath = path;
+        this.checkpointIntervalMillis = intervalMillis;
+        return this;
+    }
+
+    /**
+     * 从保存的文件中恢复调度器的状态，文件不存在时从头开始抓取。
+     *
+     * @param path 通过{@link #checkpoint(Path, long)}保存的文件。
+     * @return
+     */
+    public SchedulerConfigurer resume(Path path) {
+        Assert.notNull(path, "path is null");
+        this.resumePath = path;
+        return this;
+    }
+
+    /**
+     * 设置每个线程一次从调度器中取出的请求数。
+     *
+     * @param batchSize 一次取出的请求数。
+     * @return
+     * @see AsyncSpider#setBatchSize(int)
+     */
+    public SchedulerConfigurer batchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize <1");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 使用自定义的调度器，例如多个节点共享的{@link RedisScheduler}。
+     *
+     * @param scheduler 调度器。
+     * @return
+     */
+    public SchedulerConfigurer custom(Scheduler scheduler) {
+        Assert.notNull(scheduler, "scheduler is null");
+        this.schedulerFactory = null;
+        this.scheduler = scheduler;
+        return this;
+    }
+
     public SharedSpiderConfigurer fixed(int initialCapacity) {
+        schedulerFactory = null;
         scheduler = new FixedArrayScheduler(initialCapacity);
         return this;
     }
 
+    /**
+     * 设置调度器保存历史请求的方式。默认使用{@link LongHashHistoryStore}。
+     *
+     * @param historyStore
+     * @return
+     */
+    public SchedulerConfigurer history(HistoryStore historyStore) {
+        Assert.notNull(historyStore, "historyStore is null");
+        this.historyStore = historyStore;
+        return this;
+    }
+
+    /**
+     * 使用64位指纹保存历史请求。
+     *
+     * @param expectedSize 预计的请求数量。
+     * @return
+     */
+    public SchedulerConfigurer fingerprintHistory(int expectedSize) {
+        return history(new LongHashHistoryStore(expectedSize));
+    }
+
+    /**
+     * 使用布隆过滤器保存历史请求，少量未处理过的请求可能会被误判为已处理。
+     *
+     * @param expectedSize      预计的请求数量，超出后过滤器会自动扩容。
+     * @param falsePositiveRate 误判率。
+     * @param offHeap           是否分配在堆外内存。
+     * @return
+     */
+    public SchedulerConfigurer bloomFilterHistory(long expectedSize, double falsePositiveRate, boolean offHeap) {
+        return history(new BloomFilterHistoryStore(expectedSize, falsePositiveRate, offHeap));
+    }
+
     //需要在HttpUriRequestExtractorConfigurer后进行configure()。
     @Override
     protected int order() {
@@ -49,6 +241,10 @@ public class SchedulerConfigurer extends SharedSpiderConfigurer {
         Assert.state(!CollectionUtils.isEmpty(httpUriRequests), "httpUriRequest is empty");
         log.debug("Obtained the initial request list:{}", httpUriRequests.stream().map(HttpUriRequest::getURI).collect(toList()));
 
+        if (schedulerFactory != null) {
+            scheduler = schedulerFactory.apply(historyStore);
+        }
+
         if (scheduler == null) {
             //判断请求
             List<?> httpRequestExtractors = sharedObjectMap.get(HttpRequestExtractor.class);
@@ -58,10 +254,24 @@ public class SchedulerConfigurer extends SharedSpiderConfigurer {
                 fixed(httpUriRequests.size());
             } else {//默认初始化调度器
                 blockingUnique();
+                scheduler = schedulerFactory.apply(historyStore);
             }
 
         }
 
+        if (resumePath != null) {
+            Assert.state(scheduler instanceof Checkpointable, scheduler.getClass() + " can't be resumed");
+            try {
+                CheckpointingScheduler.resume((Checkpointable) scheduler, resumePath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to resume from " + resumePath, e);
+            }
+        }
+
+        if (checkpointPath != null) {
+            scheduler = new CheckpointingScheduler(scheduler, checkpointPath, checkpointIntervalMillis);
+        }
+
         //加入请求列表
         scheduler.putAll(httpUriRequests);
 
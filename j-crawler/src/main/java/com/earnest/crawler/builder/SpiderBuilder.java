@@ -1,18 +1,26 @@
 package com.earnest.crawler.builder;
 
+import com.earnest.crawler.NonBlockingSpider;
 import com.earnest.crawler.Spider;
+import com.earnest.crawler.VirtualThreadExecutors;
+import com.earnest.crawler.downloader.AsyncDownloader;
 import com.earnest.crawler.downloader.Downloader;
+import com.earnest.crawler.downloader.ExecutorAsyncDownloader;
 import com.earnest.crawler.extractor.HttpRequestExtractor;
 import com.earnest.crawler.pipeline.Pipeline;
 import com.earnest.crawler.scheduler.Scheduler;
 import com.earnest.crawler.AsyncSpider;
+import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 
+@Slf4j
 public class SpiderBuilder extends SharedSpiderConfigurer implements Builder<Spider> {
 
 
@@ -27,7 +35,7 @@ public class SpiderBuilder extends SharedSpiderConfigurer implements Builder<Spi
     }
 
     private List<SharedSpiderConfigurer> createSharedSpiderConfigurers() {
-        return Stream.of(new HttpUriRequestConfigurer(), new DownloaderConfigurer(), new PipelineConfigurer(), new HttpUriRequestExtractorConfigurer(), new SchedulerConfigurer())
+        return Stream.of(new HttpUriRequestConfigurer(), new DownloaderConfigurer(), new ConnectionPoolConfigurer(), new PipelineConfigurer(), new HttpUriRequestExtractorConfigurer(), new SchedulerConfigurer())
                 .sorted(Comparator.comparingInt(SharedSpiderConfigurer::order))
                 .peek(e -> {
                     e.setBuilder(this);
@@ -65,6 +73,15 @@ public class SpiderBuilder extends SharedSpiderConfigurer implements Builder<Spi
         return (DownloaderConfigurer) configurers.get(DownloaderConfigurer.class);
     }
 
+    /**
+     * 设置下载器的连接池。
+     *
+     * @return
+     */
+    public ConnectionPoolConfigurer connectionPool() {
+        return (ConnectionPoolConfigurer) configurers.get(ConnectionPoolConfigurer.class);
+    }
+
     /**
      * 设置管道处理器。
      *
@@ -92,6 +109,18 @@ public class SpiderBuilder extends SharedSpiderConfigurer implements Builder<Spi
         return (SchedulerConfigurer) configurers.get(SchedulerConfigurer.class);
     }
 
+    /**
+     * 从保存的文件中恢复抓取的状态。
+     *
+     * @param path 保存状态的文件。
+     * @return
+     * @see SchedulerConfigurer#resume(Path)
+     */
+    public SpiderBuilder resume(Path path) {
+        scheduler().resume(path);
+        return this;
+    }
+
     @Override
     void configure() {
         sharedSpiderConfigurers.forEach(SharedSpiderConfigurer::configure);
@@ -113,7 +142,37 @@ public class SpiderBuilder extends SharedSpiderConfigurer implements Builder<Spi
         //thread
         Integer thread = (Integer) sharedObjectMap.get(Integer.class).get(0);
 
-        return new AsyncSpider(downloader, scheduler, httpRequestExtractor, pipeline, Executors.newFixedThreadPool(thread),thread);
+        Optional<ExecutorService> virtualThreadExecutor = Optional.empty();
+        if (global().getVirtualThreads() > 0) {
+            virtualThreadExecutor = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor();
+            if (virtualThreadExecutor.isEmpty()) {
+                log.warn("virtual threads are not supported by Java {}, falling back to {} threads", Runtime.version().feature(), thread);
+            }
+        }
+
+        if (global().getMaxInFlight() > 0) {
+            //线程只用于处理下载结果
+            NonBlockingSpider spider = new NonBlockingSpider((AsyncDownloader) downloader, scheduler, httpRequestExtractor, pipeline,
+                    virtualThreadExecutor.orElseGet(() -> Executors.newFixedThreadPool(thread)), global().getMaxInFlight());
+            spider.setBatchSize(scheduler().getBatchSize());
+            spider.setDuplicateDetector(pipeline().getNearDuplicateDetector());
+            return spider;
+        }
+
+        if (virtualThreadExecutor.isPresent()) {
+            //每个请求在一个虚拟线程中下载和处理
+            ExecutorService executor = virtualThreadExecutor.get();
+            NonBlockingSpider spider = new NonBlockingSpider(new ExecutorAsyncDownloader(downloader, executor), scheduler, httpRequestExtractor, pipeline,
+                    executor, global().getVirtualThreads());
+            spider.setBatchSize(scheduler().getBatchSize());
+            spider.setDuplicateDetector(pipeline().getNearDuplicateDetector());
+            return spider;
+        }
+
+        AsyncSpider spider = new AsyncSpider(downloader, scheduler, httpRequestExtractor, pipeline, Executors.newFixedThreadPool(thread), thread);
+        spider.setBatchSize(scheduler().getBatchSize());
+        spider.setDuplicateDetector(pipeline().getNearDuplicateDetector());
+        return spider;
     }
 
 }
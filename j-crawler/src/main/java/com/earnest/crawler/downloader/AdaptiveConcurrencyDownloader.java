@@ -0,0 +1,124 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import lombok.Getter;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 按主机限制同时进行的下载数，上限根据响应时间和429、503等过载响应自动调整。
+ * <p>
+ * 异步下载时等待许可不占用线程，包装的下载器不是{@link AsyncDownloader}时，拿到许可后在<code>executor</code>中下载；
+ * 同步下载时在调用的线程中等待。
+ *
+ * @see AdaptiveConcurrencyLimiter
+ */
+@Getter
+public class AdaptiveConcurrencyDownloader implements AsyncDownloader {
+
+    //HttpStatus中没有429
+    static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final Downloader downloader;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor 异步下载时执行同步下载器的线程池，为<code>null</code>时使用{@link CompletableFuture}默认的线程池。
+     */
+    public AdaptiveConcurrencyDownloader(Downloader downloader, AdaptiveConcurrencyLimiter limiter, ExecutorService executor) {
+        Assert.notNull(downloader, "downloader is null");
+        Assert.notNull(limiter, "limiter is null");
+        this.downloader = downloader;
+        this.limiter = limiter;
+        this.executor = executor;
+    }
+
+    public AdaptiveConcurrencyDownloader(Downloader downloader, AdaptiveConcurrencyLimiter limiter) {
+        this(downloader, limiter, null);
+    }
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        HttpHost host = URIUtils.extractHost(request.getURI());
+        if (!(downloader instanceof AsyncDownloader)) {
+            if (host == null) {
+                return CompletableFuture.completedFuture(downloader.download(request));
+            }
+            //拿到许可后在线程池中下载，不阻塞调用的线程
+            CompletableFuture<Void> permit = limiter.acquire(host);
+            return executor == null ?
+                    permit.thenApplyAsync(v -> downloadWithPermit(request, host)) :
+                    permit.thenApplyAsync(v -> downloadWithPermit(request, host), executor);
+        }
+        AsyncDownloader asyncDownloader = (AsyncDownloader) downloader;
+        if (host == null) {
+            return asyncDownloader.downloadAsync(request);
+        }
+        return limiter.acquire(host).thenCompose(v -> {
+            long start = System.nanoTime();
+            CompletableFuture<StringResponseResult> future;
+            try {
+                future = asyncDownloader.downloadAsync(request);
+            } catch (RuntimeException e) {
+                //没有开始下载时直接抛出的异常，同样需要归还许可
+                limiter.release(host, System.nanoTime() - start, true);
+                return CompletableFuture.failedFuture(e);
+            }
+            return future.whenComplete((result, e) -> limiter.release(host, System.nanoTime() - start, isOverloaded(result)));
+        });
+    }
+
+    @Override
+    public StringResponseResult download(HttpUriRequest request) {
+        HttpHost host = URIUtils.extractHost(request.getURI());
+        if (host == null) {
+            return downloader.download(request);
+        }
+        limiter.acquire(host).join();
+        return downloadWithPermit(request, host);
+    }
+
+    /**
+     * 已经拿到许可时下载，完成后归还许可。
+     */
+    private StringResponseResult downloadWithPermit(HttpUriRequest request, HttpHost host) {
+        long start = System.nanoTime();
+        StringResponseResult result = null;
+        try {
+            result = downloader.download(request);
+            return result;
+        } finally {
+            limiter.release(host, System.nanoTime() - start, isOverloaded(result));
+        }
+    }
+
+    /**
+     * 429、503以及没有收到响应的失败视为过载，其他状态码说明服务器可以正常处理。
+     */
+    static boolean isOverloaded(StringResponseResult result) {
+        if (result == null) {
+            return true;
+        }
+        int status = result.getStatus();
+        return status == SC_TOO_MANY_REQUESTS || status == HttpStatus.SC_SERVICE_UNAVAILABLE
+                || (status == 0 && !result.isSuccess());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        downloader.close();
+    }
+}
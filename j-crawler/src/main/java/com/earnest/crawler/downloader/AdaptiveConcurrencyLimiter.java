@@ -0,0 +1,228 @@
+package com.earnest.crawler.downloader;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主机自适应调整并发数的限制器（AIMD）。
+ * <p>
+ * 每个主机的并发上限从<code>initialLimit</code>开始，上限被用满并且请求成功时，每轮请求增加1（加性增）；
+ * 收到429、503，下载失败，或者近期的响应时间超过长期响应时间的<code>latencyTolerance</code>倍时，
+ * 上限乘以<code>backoffRatio</code>（乘性减）。同一批请求往往一起失败，所以每个响应时间内最多减小一次。
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+    //近期和长期响应时间的平滑系数
+    private static final double SHORT_ALPHA = 0.2;
+    private static final double LONG_ALPHA = 0.02;
+
+    private final int initialLimit;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private volatile double backoffRatio = 0.5;
+
+    private volatile double latencyTolerance = 2;
+
+    private final Map<HttpHost, HostLimit> hostLimits = new ConcurrentHashMap<>();
+
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        Assert.isTrue(minLimit > 0, "minLimit <1");
+        Assert.isTrue(minLimit <= initialLimit && initialLimit <= maxLimit, "initialLimit is out of [minLimit, maxLimit]");
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    public AdaptiveConcurrencyLimiter(int maxLimit) {
+        this(Math.min(DEFAULT_INITIAL_LIMIT, maxLimit), 1, maxLimit);
+    }
+
+    /**
+     * @param backoffRatio 过载时上限缩小的比例，在<code>(0, 1)</code>之间。
+     */
+    public void setBackoffRatio(double backoffRatio) {
+        Assert.isTrue(backoffRatio > 0 && backoffRatio < 1, "backoffRatio is out of (0, 1)");
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * @param latencyTolerance 近期响应时间超过长期响应时间的多少倍时视为过载，需要大于1。
+     */
+    public void setLatencyTolerance(double latencyTolerance) {
+        Assert.isTrue(latencyTolerance > 1, "latencyTolerance <=1");
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * 获取一个许可，主机的并发数已满时，返回的<code>Future</code>在其他请求释放许可后完成。
+     */
+    public CompletableFuture<Void> acquire(HttpHost host) {
+        return hostLimits.computeIfAbsent(host, HostLimit::new).acquire();
+    }
+
+    /**
+     * 释放许可并根据结果调整上限。
+     *
+     * @param latencyNanos 下载用时（纳秒）。
+     * @param overloaded   是否为过载的响应（429、503或下载失败）。
+     */
+    public void release(HttpHost host, long latencyNanos, boolean overloaded) {
+        HostLimit hostLimit = hostLimits.get(host);
+        Assert.state(hostLimit != null, "no permit has been acquired for " + host);
+        hostLimit.release(latencyNanos, overloaded);
+    }
+
+    public int getLimit(HttpHost host) {
+        HostLimit hostLimit = hostLimits.get(host);
+        return hostLimit == null ? initialLimit : hostLimit.getLimit();
+    }
+
+    /**
+     * @return 每个主机当前的状态。
+     */
+    public Map<HttpHost, HostStats> getStats() {
+        Map<HttpHost, HostStats> stats = new LinkedHashMap<>();
+        hostLimits.forEach((host, hostLimit) -> stats.put(host, hostLimit.stats()));
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return getStats().toString();
+    }
+
+
+    @Getter
+    @AllArgsConstructor
+    public static class HostStats {
+        private final int limit;
+        private final int inFlight;
+        private final int waiting;
+        //近期的平均响应时间
+        private final long latencyMillis;
+        //近期过载响应的比例
+        private final double overloadRate;
+
+        @Override
+        public String toString() {
+            return String.format("[limit: %d; inFlight: %d; waiting: %d; latency: %dms; overload: %.2f]",
+                    limit, inFlight, waiting, latencyMillis, overloadRate);
+        }
+    }
+
+
+    private class HostLimit {
+
+        private final HttpHost host;
+
+        private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+        private double limit = initialLimit;
+
+        private int inFlight;
+
+        private double shortLatency;
+
+        private double longLatency;
+
+        private double overloadRate;
+
+        private long lastDecrease = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+
+        HostLimit(HttpHost host) {
+            this.host = host;
+        }
+
+        synchronized CompletableFuture<Void> acquire() {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.offer(waiter);
+            return waiter;
+        }
+
+        void release(long latencyNanos, boolean overloaded) {
+            synchronized (this) {
+                boolean saturated = inFlight >= (int) limit;
+                inFlight--;
+                adjust(latencyNanos, overloaded, saturated);
+            }
+            grant();
+        }
+
+        private void adjust(long latencyNanos, boolean overloaded, boolean saturated) {
+            if (!overloaded) {
+                //失败的请求可能很快返回，也可能等到超时，不计入响应时间
+                if (shortLatency == 0) {
+                    shortLatency = longLatency = latencyNanos;
+                } else {
+                    shortLatency += SHORT_ALPHA * (latencyNanos - shortLatency);
+                    longLatency += LONG_ALPHA * (latencyNanos - longLatency);
+                }
+            }
+            overloadRate += SHORT_ALPHA * ((overloaded ? 1 : 0) - overloadRate);
+
+            long now = System.nanoTime();
+            if (overloaded || shortLatency > longLatency * latencyTolerance) {
+                if (now - lastDecrease >= shortLatency && limit > minLimit) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                    log.debug("Concurrency limit of {} decreased to {}", host, (int) limit);
+                }
+            } else if (saturated && limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+
+        /**
+         * 在锁外完成等待的<code>Future</code>，后续的下载可能直接在当前线程中开始。
+         */
+        private void grant() {
+            while (true) {
+                CompletableFuture<Void> waiter;
+                synchronized (this) {
+                    if (waiters.isEmpty() || inFlight >= (int) limit) {
+                        return;
+                    }
+                    waiter = waiters.poll();
+                    inFlight++;
+                }
+                if (!waiter.complete(null)) {
+                    //已经被取消
+                    synchronized (this) {
+                        inFlight--;
+                    }
+                }
+            }
+        }
+
+        synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        synchronized HostStats stats() {
+            return new HostStats((int) limit, inFlight, waiters.size(),
+                    TimeUnit.NANOSECONDS.toMillis((long) shortLatency), overloadRate);
+        }
+    }
+}
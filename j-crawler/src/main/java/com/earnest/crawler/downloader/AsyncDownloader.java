@@ -0,0 +1,27 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 非阻塞的下载器，下载在IO线程中进行，调用线程不会等待。
+ */
+public interface AsyncDownloader extends Downloader {
+
+    /**
+     * 开始下载，下载失败时返回<code>success</code>为<code>false</code>的结果，不会异常完成。
+     * <p>
+     * 结果在IO线程中完成，耗时的处理需要使用<code>*Async</code>的方法切换到其他线程。
+     *
+     * @param request 请求。
+     * @return 下载结果。
+     */
+    CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request);
+
+    @Override
+    default StringResponseResult download(HttpUriRequest request) {
+        return downloadAsync(request).join();
+    }
+}
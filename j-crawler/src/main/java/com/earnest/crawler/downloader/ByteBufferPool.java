@@ -0,0 +1,58 @@
+package com.earnest.crawler.downloader;
+
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定大小的堆内{@link ByteBuffer}池，用于保存响应体，避免每个页面都重新分配内存。
+ */
+public class ByteBufferPool {
+
+    public static final ByteBufferPool DEFAULT = new ByteBufferPool(8 * 1024, 1024);
+
+    @Getter
+    private final int chunkSize;
+    //池中最多保存的数量，超出的直接丢弃
+    private final int maxPooled;
+
+    private final Queue<ByteBuffer> pooled = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pooledSize = new AtomicInteger();
+
+    /**
+     * @param chunkSize 每块的字节数。
+     * @param maxPooled 池中最多保存的块数。
+     */
+    public ByteBufferPool(int chunkSize, int maxPooled) {
+        Assert.isTrue(chunkSize > 0, "chunkSize <1");
+        Assert.isTrue(maxPooled >= 0, "maxPooled <0");
+        this.chunkSize = chunkSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pooled.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(chunkSize);
+        }
+        pooledSize.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != chunkSize || buffer.isReadOnly()) {
+            return;
+        }
+        if (pooledSize.incrementAndGet() > maxPooled) {
+            pooledSize.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        pooled.offer(buffer);
+    }
+}
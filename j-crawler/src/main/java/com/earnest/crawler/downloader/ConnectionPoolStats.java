@@ -0,0 +1,57 @@
+package com.earnest.crawler.downloader;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.springframework.util.Assert;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 连接池的实时状态，阻塞和非阻塞的连接池都可以使用。
+ * <p>
+ * {@link PoolStats}中<code>leased</code>为正在使用的连接数，<code>pending</code>为等待连接的请求数，
+ * <code>available</code>为空闲的连接数，<code>pending</code>持续大于0说明该主机的连接数不够。
+ */
+public class ConnectionPoolStats {
+
+    private final ConnPoolControl<HttpRoute> connPoolControl;
+
+    private final Supplier<Set<HttpRoute>> routes;
+
+    public ConnectionPoolStats(ConnPoolControl<HttpRoute> connPoolControl, Supplier<Set<HttpRoute>> routes) {
+        Assert.notNull(connPoolControl, "connPoolControl is null");
+        Assert.notNull(routes, "routes is null");
+        this.connPoolControl = connPoolControl;
+        this.routes = routes;
+    }
+
+    public PoolStats getTotalStats() {
+        return connPoolControl.getTotalStats();
+    }
+
+    public PoolStats getStats(HttpRoute route) {
+        return connPoolControl.getStats(route);
+    }
+
+    /**
+     * @return 每个路由（目标主机）的状态。
+     */
+    public Map<HttpRoute, PoolStats> getRouteStats() {
+        Map<HttpRoute, PoolStats> routeStats = new LinkedHashMap<>();
+        for (HttpRoute route : routes.get()) {
+            routeStats.put(route, connPoolControl.getStats(route));
+        }
+        return routeStats;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("total ").append(getTotalStats());
+        getRouteStats().forEach((route, stats) -> builder.append(", ").append(route.getTargetHost()).append(' ').append(stats));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.earnest.crawler.downloader;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DeflateInputStreamFactory;
+import org.apache.http.client.entity.GZIPInputStreamFactory;
+import org.apache.http.client.entity.InputStreamFactory;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压缩传输的配置。请求时声明支持<code>gzip</code>、<code>deflate</code>，
+ * 类路径中有<code>org.brotli:dec</code>时还支持<code>br</code>，收到的内容在读取时边读边解压。
+ * <p>
+ * 阻塞的客户端自带解压的拦截器，只需要替换解压器；非阻塞的客户端不支持解压，
+ * 需要添加请求拦截器，并在收到响应后调用{@link #decompress(HttpResponse, HttpContext)}。
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ContentEncodings {
+
+    private static final MethodHandle BROTLI_INPUT_STREAM = findBrotliInputStream();
+
+    private static final Map<String, InputStreamFactory> DECODERS = createDecoders();
+
+    private static final ResponseContentEncoding RESPONSE_CONTENT_ENCODING = createResponseContentEncoding();
+
+    public static boolean isBrotliSupported() {
+        return BROTLI_INPUT_STREAM != null;
+    }
+
+    /**
+     * @return 支持的编码和对应的解压器。
+     */
+    public static Map<String, InputStreamFactory> decoders() {
+        return DECODERS;
+    }
+
+    public static HttpClientBuilder configure(HttpClientBuilder httpClientBuilder) {
+        //根据解压器生成Accept-Encoding
+        return httpClientBuilder.setContentDecoderRegistry(DECODERS);
+    }
+
+    public static HttpAsyncClientBuilder configure(HttpAsyncClientBuilder httpAsyncClientBuilder) {
+        return httpAsyncClientBuilder.addInterceptorLast(acceptEncoding());
+    }
+
+    public static HttpRequestInterceptor acceptEncoding() {
+        return new RequestAcceptEncoding(new ArrayList<>(DECODERS.keySet()));
+    }
+
+    /**
+     * 响应有<code>Content-Encoding</code>时，将实体替换为读取时解压的实体，并去掉相关的响应头。
+     */
+    public static void decompress(HttpResponse response, HttpContext context) throws IOException {
+        try {
+            RESPONSE_CONTENT_ENCODING.process(response, context);
+        } catch (HttpException e) {
+            //不支持的编码
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return 解压<code>contentEncoding</code>的输入流，不需要解压时返回原来的输入流。
+     */
+    public static InputStream decompress(String contentEncoding, InputStream inputStream) throws IOException {
+        if (contentEncoding == null || contentEncoding.isBlank() || "identity".equalsIgnoreCase(contentEncoding.trim())) {
+            return inputStream;
+        }
+        InputStreamFactory decoder = DECODERS.get(contentEncoding.trim().toLowerCase());
+        if (decoder == null) {
+            throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+        return decoder.create(inputStream);
+    }
+
+    private static Map<String, InputStreamFactory> createDecoders() {
+        Map<String, InputStreamFactory> decoders = new LinkedHashMap<>();
+        if (BROTLI_INPUT_STREAM != null) {
+            decoders.put("br", ContentEncodings::brotli);
+        }
+        decoders.put("gzip", GZIPInputStreamFactory.getInstance());
+        decoders.put("x-gzip", GZIPInputStreamFactory.getInstance());
+        decoders.put("deflate", DeflateInputStreamFactory.getInstance());
+        return decoders;
+    }
+
+    private static ResponseContentEncoding createResponseContentEncoding() {
+        RegistryBuilder<InputStreamFactory> registryBuilder = RegistryBuilder.create();
+        DECODERS.forEach(registryBuilder::register);
+        return new ResponseContentEncoding(registryBuilder.build());
+    }
+
+    private static InputStream brotli(InputStream inputStream) throws IOException {
+        try {
+            return (InputStream) BROTLI_INPUT_STREAM.invoke(inputStream);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static MethodHandle findBrotliInputStream() {
+        try {
+            Class<?> brotliInputStream = Class.forName("org.brotli.dec.BrotliInputStream");
+            return MethodHandles.publicLookup().findConstructor(brotliInputStream, MethodType.methodType(void.class, InputStream.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.debug("Brotli is not supported,add org.brotli:dec to the classpath to enable it");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import lombok.Getter;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 在指定的线程池中调用阻塞的下载器。与虚拟线程一起使用时，阻塞的下载只占用很少的资源。
+ */
+@Getter
+public class ExecutorAsyncDownloader implements AsyncDownloader {
+
+    private final Downloader downloader;
+
+    private final Executor executor;
+
+    public ExecutorAsyncDownloader(Downloader downloader, Executor executor) {
+        Assert.notNull(downloader, "downloader is null");
+        Assert.notNull(executor, "executor is null");
+        this.downloader = downloader;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        return CompletableFuture.supplyAsync(() -> downloader.download(request), executor);
+    }
+
+    @Override
+    public StringResponseResult download(HttpUriRequest request) {
+        return downloader.download(request);
+    }
+
+    @Override
+    public void close() throws IOException {
+        downloader.close();
+    }
+}
@@ -0,0 +1,143 @@
+package com.earnest.crawler.downloader;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheEntrySerializer;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.impl.client.cache.CachingHttpClients;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * 保存在磁盘上的HTTP缓存，程序重启后依然有效。
+ * <p>
+ * 与{@link CachingHttpClientBuilder}一起使用：缓存的页面过期后会带上<code>If-None-Match</code>/<code>If-Modified-Since</code>
+ * 重新验证，服务器返回304时直接使用磁盘中的内容。每个缓存项保存为一个文件，先写入临时文件再替换，写入中断不会损坏已有的缓存。
+ * <p>
+ * 缓存项保存为普通的数据，不使用Java序列化。目录不存在时创建为只有当前用户可以访问，不要使用多个用户共享的目录。
+ *
+ * @see #custom(Path)
+ */
+@Slf4j
+public class FileHttpCacheStorage implements HttpCacheStorage {
+
+    /**
+     * 爬虫使用的缓存配置：私有缓存，允许缓存较大的页面。
+     */
+    public static final CacheConfig DEFAULT_CACHE_CONFIG = CacheConfig.custom()
+            .setSharedCache(false)
+            .setMaxObjectSize(16 * 1024 * 1024)
+            .build();
+
+    private static final String SUFFIX = ".entry";
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Getter
+    private final Path directory;
+
+    private final HttpCacheEntrySerializer serializer = new HttpCacheEntryCodec();
+    //同一个缓存项的读-改-写需要互斥
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public FileHttpCacheStorage(Path directory) {
+        Assert.notNull(directory, "directory is null");
+        this.directory = directory;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        try {
+            createPrivateDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to create cache directory " + directory, e);
+        }
+    }
+
+    /**
+     * 创建使用磁盘缓存的{@link CachingHttpClientBuilder}，爬虫和其他使用<code>HttpClient</code>的客户端都可以使用。
+     *
+     * @param directory 保存缓存的目录。
+     * @return
+     */
+    public static CachingHttpClientBuilder custom(Path directory) {
+        return custom(CachingHttpClients.custom(), directory);
+    }
+
+    /**
+     * 为已有的{@link CachingHttpClientBuilder}设置磁盘缓存。
+     */
+    public static CachingHttpClientBuilder custom(CachingHttpClientBuilder builder, Path directory) {
+        return builder.setHttpCacheStorage(new FileHttpCacheStorage(directory))
+                .setCacheConfig(DEFAULT_CACHE_CONFIG);
+    }
+
+    @Override
+    public void putEntry(String key, HttpCacheEntry entry) throws IOException {
+        Path file = resolve(key);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                serializer.writeTo(entry, outputStream);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public HttpCacheEntry getEntry(String key) throws IOException {
+        Path file = resolve(key);
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+            return serializer.readFrom(inputStream);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            //文件损坏或版本不兼容时丢弃，重新下载
+            log.warn("Discard unreadable cache entry {},error:{}", file, e.getMessage());
+            Files.deleteIfExists(file);
+            return null;
+        }
+    }
+
+    @Override
+    public void removeEntry(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException {
+        synchronized (locks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES]) {
+            HttpCacheEntry updated = callback.update(getEntry(key));
+            if (updated == null) {
+                removeEntry(key);
+            } else {
+                putEntry(key, updated);
+            }
+        }
+    }
+
+    private static void createPrivateDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    private Path resolve(String key) {
+        return directory.resolve(DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)) + SUFFIX);
+    }
+}
@@ -0,0 +1,166 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.Cookie;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 使用HtmlUnit执行页面中的脚本，下载结果为脚本执行后的页面。
+ * <p>
+ * 比{@link HttpClientDownloader}慢很多，一般通过{@link RoutingDownloader}只下载需要渲染的页面。
+ */
+@Slf4j
+@Getter
+public class HtmlUnitDownloader implements AsyncDownloader {
+
+    private final WebClientPool webClientPool;
+
+    //等待页面中的定时器、异步请求完成的时间
+    @Setter
+    private long backgroundJavaScriptWait = 3000;
+
+    //等待空闲WebClient的时间
+    @Setter
+    private long borrowTimeout = 60_000;
+
+    //下载在线程池中进行，线程数与WebClient的上限相同
+    private final ExecutorService executorService;
+
+
+    public HtmlUnitDownloader(WebClientPool webClientPool) {
+        Assert.notNull(webClientPool, "webClientPool is null");
+        this.webClientPool = webClientPool;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(webClientPool.getMaxSize(), r -> {
+            Thread thread = new Thread(r, "htmlunit-downloader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public HtmlUnitDownloader(int maxWebClients) {
+        this(new WebClientPool(maxWebClients));
+    }
+
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        return CompletableFuture.supplyAsync(() -> download(request), executorService);
+    }
+
+    @Override
+    public StringResponseResult download(HttpUriRequest request) {
+        Assert.notNull(request, "request is null");
+        String uri = request.getURI().toString();
+        log.trace("Start rendering {}", uri);
+
+        WebClient webClient;
+        try {
+            webClient = webClientPool.borrow(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return HttpClientDownloader.failureAdapt(request, e);
+        }
+        if (webClient == null) {
+            log.error("url:{} render failed,error:no idle webClient", uri);
+            return HttpClientDownloader.failureAdapt(request, new IllegalStateException("no idle webClient"));
+        }
+
+        Page page = null;
+        boolean broken = false;
+        try {
+            page = webClient.getPage(toWebRequest(request));
+            if (page instanceof HtmlPage) {
+                webClient.waitForBackgroundJavaScript(backgroundJavaScriptWait);
+            }
+            log.debug("render successful,url={}", uri);
+            return adapt(page, request);
+        } catch (Exception e) {
+            log.error("url:{} render failed,error:{}", uri, e.getMessage());
+            broken = true;
+            return HttpClientDownloader.failureAdapt(request, e);
+        } finally {
+            if (page != null) {
+                page.cleanUp();
+            }
+            //出错的WebClient状态未知，不再使用
+            if (broken) {
+                webClientPool.invalidate(webClient);
+            } else {
+                webClientPool.release(webClient);
+            }
+        }
+    }
+
+    private static WebRequest toWebRequest(HttpUriRequest request) throws IOException {
+        WebRequest webRequest = new WebRequest(request.getURI().toURL(), HttpMethod.valueOf(request.getMethod()));
+        for (Header header : request.getAllHeaders()) {
+            webRequest.setAdditionalHeader(header.getName(), header.getValue());
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                webRequest.setRequestBody(EntityUtils.toString(entity));
+            }
+        }
+        return webRequest;
+    }
+
+    private StringResponseResult adapt(Page page, HttpUriRequest request) {
+        WebResponse webResponse = page.getWebResponse();
+
+        StringResponseResult responseResult = new StringResponseResult();
+        responseResult.setHttpRequest(request);
+        responseResult.setStatus(webResponse.getStatusCode());
+        responseResult.setSuccess("OK".equalsIgnoreCase(webResponse.getStatusMessage()));
+        responseResult.setReason(webResponse.getStatusMessage());
+        responseResult.setCharset(webResponse.getContentCharset().name());
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (NameValuePair header : webResponse.getResponseHeaders()) {
+            headers.put(header.getName(), header.getValue());
+        }
+        responseResult.setHeaders(headers);
+
+        Map<String, String> cookies = new LinkedHashMap<>();
+        for (Cookie cookie : webClientPool.getCookieManager().getCookies()) {
+            cookies.put(cookie.getName(), cookie.getValue());
+        }
+        responseResult.setCookies(cookies);
+
+        //HTML页面使用脚本执行后的DOM，其他页面使用原始内容
+        responseResult.setContent(page instanceof SgmlPage ? ((SgmlPage) page).asXml() : webResponse.getContentAsString());
+        return responseResult;
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        webClientPool.close();
+    }
+}
@@ -0,0 +1,134 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.protocol.BasicHttpContext;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基于{@link CloseableHttpAsyncClient}的非阻塞下载器，少量的IO线程即可同时进行大量的下载。
+ * <p>
+ * 每个请求使用独立的{@link HttpClientContext}，以共享的<code>httpContext</code>作为父级，
+ * 并发的请求之间不会互相覆盖，cookie依然保存在共享的cookieStore中。
+ */
+@Slf4j
+@Getter
+public class HttpAsyncClientDownloader implements AsyncDownloader {
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    private final HttpClientContext httpContext;
+
+    /**
+     * 设置后使用流式模式，收到的字节直接写入池中的内存块。
+     *
+     * @see ResponseBodyConsumer
+     */
+    @Setter
+    private ByteBufferPool byteBufferPool;
+
+
+    public HttpAsyncClientDownloader(CloseableHttpAsyncClient httpClient, HttpClientContext httpContext) {
+        this.httpClient = Optional.ofNullable(httpClient).orElseGet(HttpAsyncClients::createMinimal);
+        this.httpContext = httpContext;
+        if (!this.httpClient.isRunning()) {
+            this.httpClient.start();
+        }
+    }
+
+    public HttpAsyncClientDownloader(CloseableHttpAsyncClient httpClient) {
+        this(httpClient, null);
+    }
+
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        Assert.notNull(request, "request is null");
+        //下载地址
+        String uri = request.getRequestLine().getUri();
+
+        log.trace("Start downloading {}", uri);
+        CompletableFuture<StringResponseResult> future = new CompletableFuture<>();
+
+        HttpClientContext requestContext = httpContext == null ? null : HttpClientContext.adapt(new BasicHttpContext(httpContext));
+
+        try {
+            if (byteBufferPool == null) {
+                httpClient.execute(request, requestContext, new DownloadCallback<>(request, future, httpResponse -> {
+                    //非阻塞的客户端不会自动解压
+                    ContentEncodings.decompress(httpResponse, requestContext);
+                    return HttpClientDownloader.successAdapt(httpResponse, request, requestContext, null);
+                }));
+            } else {
+                httpClient.execute(HttpAsyncMethods.create(request), new ResponseBodyConsumer(request, requestContext, byteBufferPool),
+                        requestContext, new DownloadCallback<>(request, future, responseResult -> responseResult));
+            }
+        } catch (RuntimeException e) {
+            //客户端已经关闭
+            log.error("url:{} download failed,error:{}", uri, e.getMessage());
+            future.complete(HttpClientDownloader.failureAdapt(request, e));
+        }
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface ResponseAdapter<T> {
+        StringResponseResult adapt(T response) throws IOException;
+    }
+
+    private static class DownloadCallback<T> implements FutureCallback<T> {
+
+        private final HttpUriRequest request;
+
+        private final CompletableFuture<StringResponseResult> future;
+
+        private final ResponseAdapter<T> responseAdapter;
+
+        DownloadCallback(HttpUriRequest request, CompletableFuture<StringResponseResult> future, ResponseAdapter<T> responseAdapter) {
+            this.request = request;
+            this.future = future;
+            this.responseAdapter = responseAdapter;
+        }
+
+        @Override
+        public void completed(T response) {
+            try {
+                log.debug("download successful,url={}", request.getRequestLine().getUri());
+                future.complete(responseAdapter.adapt(response));
+            } catch (IOException | RuntimeException e) {
+                failed(e);
+            }
+        }
+
+        @Override
+        public void failed(Exception e) {
+            log.error("url:{} download failed,error:{}", request.getRequestLine().getUri(), e.getMessage());
+            future.complete(HttpClientDownloader.failureAdapt(request, e));
+        }
+
+        @Override
+        public void cancelled() {
+            failed(new CancellationException("download cancelled"));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        httpClient.close();
+
+    }
+}
@@ -0,0 +1,141 @@
+package com.earnest.crawler.downloader;
+
+import org.apache.http.Header;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheEntrySerializationException;
+import org.apache.http.client.cache.HttpCacheEntrySerializer;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.impl.client.cache.HeapResource;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.springframework.util.StreamUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 将{@link HttpCacheEntry}保存为普通的数据：状态行、响应头、响应体和变体，不使用Java序列化，
+ * 读取被篡改的缓存文件最多得到错误的页面，不会创建任意的对象。
+ */
+class HttpCacheEntryCodec implements HttpCacheEntrySerializer {
+
+    private static final int MAGIC = 0x4A434845;
+
+    private static final int VERSION = 1;
+
+    private static final int NO_RESOURCE = -1;
+
+    //字符串的长度上限，防止损坏的文件申请过多的内存
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    @Override
+    public void writeTo(HttpCacheEntry entry, OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeLong(entry.getRequestDate().getTime());
+        output.writeLong(entry.getResponseDate().getTime());
+
+        ProtocolVersion protocolVersion = entry.getProtocolVersion();
+        writeString(output, protocolVersion.getProtocol());
+        output.writeShort(protocolVersion.getMajor());
+        output.writeShort(protocolVersion.getMinor());
+        output.writeShort(entry.getStatusCode());
+        writeString(output, entry.getReasonPhrase() == null ? "" : entry.getReasonPhrase());
+
+        Header[] headers = entry.getAllHeaders();
+        output.writeInt(headers.length);
+        for (Header header : headers) {
+            writeString(output, header.getName());
+            writeString(output, header.getValue());
+        }
+
+        Resource resource = entry.getResource();
+        if (resource == null) {
+            output.writeInt(NO_RESOURCE);
+        } else {
+            byte[] body;
+            try (InputStream inputStream = resource.getInputStream()) {
+                body = StreamUtils.copyToByteArray(inputStream);
+            }
+            output.writeInt(body.length);
+            output.write(body);
+        }
+
+        Map<String, String> variantMap = entry.getVariantMap();
+        output.writeInt(variantMap.size());
+        for (Map.Entry<String, String> variant : variantMap.entrySet()) {
+            writeString(output, variant.getKey());
+            writeString(output, variant.getValue());
+        }
+        writeString(output, entry.getRequestMethod() == null ? "GET" : entry.getRequestMethod());
+        output.flush();
+    }
+
+    @Override
+    public HttpCacheEntry readFrom(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+            throw new HttpCacheEntrySerializationException("unknown cache entry format");
+        }
+        Date requestDate = new Date(input.readLong());
+        Date responseDate = new Date(input.readLong());
+
+        ProtocolVersion protocolVersion = new ProtocolVersion(readString(input), input.readUnsignedShort(), input.readUnsignedShort());
+        int status = input.readUnsignedShort();
+        String reason = readString(input);
+
+        Header[] headers = new Header[readCount(input)];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = new BasicHeader(readString(input), readString(input));
+        }
+
+        Resource resource = null;
+        int bodyLength = input.readInt();
+        if (bodyLength != NO_RESOURCE) {
+            if (bodyLength < 0) {
+                throw new HttpCacheEntrySerializationException("invalid body length " + bodyLength);
+            }
+            byte[] body = new byte[bodyLength];
+            input.readFully(body);
+            resource = new HeapResource(body);
+        }
+
+        int variantCount = readCount(input);
+        Map<String, String> variantMap = new LinkedHashMap<>();
+        for (int i = 0; i < variantCount; i++) {
+            variantMap.put(readString(input), readString(input));
+        }
+        String requestMethod = readString(input);
+        return new HttpCacheEntry(requestDate, responseDate, new BasicStatusLine(protocolVersion, status, reason),
+                headers, resource, variantMap, requestMethod);
+    }
+
+    private static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new HttpCacheEntrySerializationException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(DataInput input) throws IOException {
+        int count = input.readInt();
+        if (count < 0 || count > 0xFFFF) {
+            throw new HttpCacheEntrySerializationException("invalid count " + count);
+        }
+        return count;
+    }
+}
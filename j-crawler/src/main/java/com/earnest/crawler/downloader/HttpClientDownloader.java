@@ -1,28 +1,26 @@
 package com.earnest.crawler.downloader;
 
+import com.earnest.crawler.CharsetDetector;
+import com.earnest.crawler.ResponseBody;
 import com.earnest.crawler.StringResponseResult;
+import com.earnest.crawler.handler.HttpClientResponseAdapter;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.HttpClientUtils;
-import org.apache.http.cookie.Cookie;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
-import static java.util.stream.Collectors.toMap;
-
 @Slf4j
 @Getter
 public class HttpClientDownloader implements Downloader {
@@ -31,6 +29,14 @@ public class HttpClientDownloader implements Downloader {
 
     private final HttpClientContext httpContext;
 
+    /**
+     * 设置后使用流式模式，响应体读入池中的内存块，需要时才解码。
+     *
+     * @see StringResponseResult#getBody()
+     */
+    @Setter
+    private ByteBufferPool byteBufferPool;
+
 
     public HttpClientDownloader(CloseableHttpClient httpClient, HttpClientContext httpContext) {
         this.httpClient = Optional.ofNullable(httpClient).orElse(HttpClients.createMinimal());
@@ -56,7 +62,7 @@ public class HttpClientDownloader implements Downloader {
         try {
             httpResponse = httpClient.execute(request, httpContext);
             log.debug("download successful,url={}", uri);
-            return successAdapt(httpResponse, request);
+            return successAdapt(httpResponse, request, httpContext, byteBufferPool);
         } catch (IOException e) {
             log.error("url:{} download failed,error:{}", uri, e.getMessage());
             return failureAdapt(request, e);
@@ -66,7 +72,7 @@ public class HttpClientDownloader implements Downloader {
 
     }
 
-    private static StringResponseResult failureAdapt(HttpUriRequest request, IOException e) {
+    static StringResponseResult failureAdapt(HttpUriRequest request, Exception e) {
         StringResponseResult responseResult = new StringResponseResult();
         responseResult.setHttpRequest(request);
         responseResult.setReason(e.getMessage());
@@ -81,50 +87,21 @@ public class HttpClientDownloader implements Downloader {
 
     }
 
-    private StringResponseResult successAdapt(HttpResponse response, HttpUriRequest httpUriRequest) throws IOException {
-
-        StringResponseResult responseResult = new StringResponseResult();
-
-        //set httpUriRequest
-        responseResult.setHttpRequest(httpUriRequest);
-
-        Map<String, String> headers = new LinkedHashMap<>();
-
-        Arrays.stream(response.getAllHeaders())
-                .forEach(header -> headers.put(header.getName(), header.getValue()));
-
-        responseResult.setHeaders(headers);
+    static StringResponseResult successAdapt(HttpResponse response, HttpUriRequest httpUriRequest, HttpClientContext httpContext,
+                                             ByteBufferPool byteBufferPool) throws IOException {
 
-        responseResult.setStatus(response.getStatusLine().getStatusCode());
-
-        String reasonPhrase = response.getStatusLine().getReasonPhrase();
-
-        responseResult.setSuccess("OK".equalsIgnoreCase(reasonPhrase));
-        responseResult.setReason(reasonPhrase);
+        StringResponseResult responseResult = HttpClientResponseAdapter.adapt(new StringResponseResult(), response, httpUriRequest, httpContext);
 
         HttpEntity entity = response.getEntity();
 
-        // set charset
-        Optional.ofNullable(entity.getContentType())
-                .map(Header::getElements)
-                .stream()
-                .flatMap(Arrays::stream)
-                .map(e -> e.getParameterByName("charset"))
-                .filter(Objects::nonNull)
-                .findAny()
-                .map(NameValuePair::getValue).ifPresent(responseResult::setCharset);
-
-
         //set entity
-        responseResult.setContent(EntityUtils.toString(entity));
-
-
-        //set cookies
-        if (httpContext != null) {
-            responseResult.setCookies(
-                    httpContext.getCookieStore().getCookies().stream()
-                            .collect(toMap(Cookie::getName, Cookie::getValue))
-            );
+        if (entity == null) {
+            return responseResult;
+        }
+        if (byteBufferPool == null) {
+            responseResult.setContent(CharsetDetector.decode(entity));
+        } else {
+            responseResult.setBody(ResponseBody.read(entity.getContent(), byteBufferPool));
         }
 
         return responseResult;
@@ -0,0 +1,77 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.RequestAttributes;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 判断请求是否需要渲染，命中任意一条规则即需要渲染。
+ * <blockquote>
+ * 例:
+ * <pre>
+ *     new RenderRule()
+ *             .match("/v_\\w+\\.html")
+ *             .host("m.iqiyi.com");
+ * </pre>
+ * </blockquote>
+ *
+ * @see RoutingDownloader
+ */
+public class RenderRule implements Predicate<HttpUriRequest> {
+
+    private final List<Predicate<HttpUriRequest>> rules = new ArrayList<>();
+
+    /**
+     * 请求地址匹配正则表达式时渲染。
+     */
+    public RenderRule match(String regex) {
+        Assert.hasText(regex, "regex is empty");
+        Pattern pattern = Pattern.compile(regex);
+        rules.add(r -> pattern.matcher(r.getURI().toString()).find());
+        return this;
+    }
+
+    /**
+     * 请求的主机相同时渲染。
+     */
+    public RenderRule host(String host) {
+        Assert.hasText(host, "host is empty");
+        rules.add(r -> host.equalsIgnoreCase(r.getURI().getHost()));
+        return this;
+    }
+
+    /**
+     * 请求的标签相同时渲染。
+     *
+     * @see RequestAttributes#getTag(HttpUriRequest)
+     */
+    public RenderRule tag(String tag) {
+        Assert.hasText(tag, "tag is empty");
+        rules.add(r -> tag.equals(RequestAttributes.getTag(r)));
+        return this;
+    }
+
+    /**
+     * 自定义的规则。
+     */
+    public RenderRule when(Predicate<HttpUriRequest> rule) {
+        Assert.notNull(rule, "rule is null");
+        rules.add(rule);
+        return this;
+    }
+
+    @Override
+    public boolean test(HttpUriRequest httpUriRequest) {
+        for (Predicate<HttpUriRequest> rule : rules) {
+            if (rule.test(httpUriRequest)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
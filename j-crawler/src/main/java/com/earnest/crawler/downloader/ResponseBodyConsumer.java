@@ -0,0 +1,83 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.ResponseBody;
+import com.earnest.crawler.StringResponseResult;
+import com.earnest.crawler.handler.HttpClientResponseAdapter;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 将收到的字节直接写入{@link ResponseBody}，下载失败时归还已经占用的内存块。
+ * 压缩的内容在收完后从内存块中边读边解压到新的内存块中。
+ */
+class ResponseBodyConsumer extends AsyncByteConsumer<StringResponseResult> {
+
+    private final HttpUriRequest httpUriRequest;
+
+    private final HttpClientContext httpContext;
+
+    private final ByteBufferPool byteBufferPool;
+
+    private HttpResponse response;
+
+    private ResponseBody body;
+
+    ResponseBodyConsumer(HttpUriRequest httpUriRequest, HttpClientContext httpContext, ByteBufferPool byteBufferPool) {
+        super(byteBufferPool.getChunkSize());
+        this.httpUriRequest = httpUriRequest;
+        this.httpContext = httpContext;
+        this.byteBufferPool = byteBufferPool;
+        this.body = new ResponseBody(byteBufferPool);
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onByteReceived(ByteBuffer buf, IOControl ioControl) {
+        body.append(buf);
+    }
+
+    @Override
+    protected StringResponseResult buildResult(HttpContext context) throws IOException {
+        Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        //HEAD等没有内容的响应也可能带有Content-Encoding
+        if (contentEncoding != null && body.length() > 0) {
+            ResponseBody compressed = body;
+            body = null;
+            try (InputStream inputStream = ContentEncodings.decompress(contentEncoding.getValue(), compressed.openStream())) {
+                body = ResponseBody.read(inputStream, byteBufferPool);
+            } finally {
+                compressed.release();
+            }
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        }
+        StringResponseResult responseResult = HttpClientResponseAdapter.adapt(new StringResponseResult(), response, httpUriRequest, httpContext);
+        responseResult.setBody(body);
+        //已经交给下载结果，不再由此释放
+        body = null;
+        return responseResult;
+    }
+
+    @Override
+    protected void releaseResources() {
+        super.releaseResources();
+        if (body != null) {
+            body.release();
+            body = null;
+        }
+    }
+}
@@ -1,88 +1,60 @@
 package com.earnest.crawler.downloader;
 
+import com.earnest.crawler.CharsetDetector;
 import com.earnest.crawler.StringResponseResult;
-import com.earnest.crawler.handler.HttpClientResponseContextHolder;
-import lombok.AllArgsConstructor;
+import com.earnest.crawler.handler.HttpClientResponseAdapter;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.cookie.Cookie;
 import org.apache.http.util.EntityUtils;
+import org.springframework.util.Assert;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
-import static java.util.stream.Collectors.toMap;
-
-@AllArgsConstructor
+/**
+ * 请求和cookie从{@link HttpClientContext}中获取，每个请求需要使用单独的上下文和处理器，
+ * 多个请求共享上下文时得到的请求可能是其他线程的。
+ */
 public class ResponseResultHandler implements ResponseHandler<StringResponseResult> {
 
     private final HttpClientContext httpContext;
 
+    /**
+     * @param httpContext 执行本次请求时传入的上下文。
+     */
+    public ResponseResultHandler(HttpClientContext httpContext) {
+        Assert.notNull(httpContext, "httpContext is null");
+        this.httpContext = httpContext;
+    }
+
+    /**
+     * 不传入上下文时，结果中没有请求和cookie。
+     */
     public ResponseResultHandler() {
-        this(null);
+        this(HttpClientContext.create());
     }
 
     @Override
     public StringResponseResult handleResponse(HttpResponse response) throws IOException {
-
-        StringResponseResult responseResult = new StringResponseResult();
-
-        Map<String, String> headers = new LinkedHashMap<>();
-
-        Arrays.stream(response.getAllHeaders())
-                .forEach(header -> headers.put(header.getName(), header.getValue()));
-
-        responseResult.setHeaders(headers);
-
-        responseResult.setStatus(response.getStatusLine().getStatusCode());
-
-        String reasonPhrase = response.getStatusLine().getReasonPhrase();
-
-        responseResult.setSuccess("OK".equalsIgnoreCase(reasonPhrase));
-        responseResult.setReason(reasonPhrase);
-
-
-        HttpEntity entity = response.getEntity();
-
-        // set charset
-        Arrays.stream(entity.getContentType().getElements())
-                .map(e -> e.getParameterByName("charset"))
-                .findAny()
-                .map(NameValuePair::getValue).ifPresent(responseResult::setCharset);
-
-        //set entity
-        responseResult.setContent(EntityUtils.toString(entity));
-
-
-        //set httpUriRequest
-        HttpUriRequest httpUriRequest = HttpClientResponseContextHolder.getHttpUriRequest(response);
-
-        responseResult.setHttpRequest(httpUriRequest);
-
-        //set cookies
-        if (httpContext != null) {
-            responseResult.setCookies(
-                    httpContext.getCookieStore().getCookies().stream()
-                            .collect(toMap(Cookie::getName, Cookie::getValue))
-            );
+        try {
+            StringResponseResult responseResult = HttpClientResponseAdapter.adapt(new StringResponseResult(), response, httpContext);
+
+            HttpEntity entity = response.getEntity();
+
+            //set entity
+            if (entity != null) {
+                responseResult.setContent(CharsetDetector.decode(entity));
+            }
+
+            return responseResult;
+        } finally {
+            //无论是否成功都归还连接
+            EntityUtils.consumeQuietly(response.getEntity());
+            if (response instanceof CloseableHttpResponse) {
+                ((CloseableHttpResponse) response).close();
+            }
         }
-
-
-        if (!responseResult.isSuccess()) {
-            EntityUtils.consume(response.getEntity());
-        }
-
-        if (response instanceof CloseableHttpResponse) {
-            ((CloseableHttpResponse) response).close();
-        }
-
-        return responseResult;
     }
 }
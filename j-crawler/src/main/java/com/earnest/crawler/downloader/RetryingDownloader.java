@@ -0,0 +1,395 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.client.utils.URIUtils;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 失败时重试的下载器，可以同时对慢请求发出对冲请求。
+ * <p>
+ * 没有收到响应的失败，以及状态码在<code>retryStatuses</code>中的响应会被重试，等待时间为
+ * <code>[0, min(maxDelayMillis, baseDelayMillis * 2^重试次数)]</code>中的随机值，
+ * 响应带有<code>Retry-After</code>时至少等待到指定的时间，指定的时间超过<code>maxDelayMillis</code>时不再重试。
+ * <p>
+ * 开启对冲后，<code>GET</code>和<code>HEAD</code>请求的用时超过该主机最近响应时间的95百分位时，再发出一次相同的请求，
+ * 使用先成功返回的结果，另一个结果被丢弃。只有约5%的请求会被对冲，不会明显增加主机的压力。
+ * 包装的下载器不是{@link AsyncDownloader}时，第一次请求在调用线程中进行，只有对冲请求交给线程池，
+ * 线程池没有空闲的线程时不再对冲；对冲请求先返回时中止第一次请求。
+ */
+@Slf4j
+public class RetryingDownloader implements AsyncDownloader {
+
+    public static final Set<Integer> DEFAULT_RETRY_STATUSES = Set.of(429, 500, 502, 503, 504);
+
+    private static final Set<String> HEDGE_METHODS = Set.of("GET", "HEAD");
+
+    //统计到足够的响应时间后才开始对冲
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
+    @Getter
+    private final Downloader downloader;
+
+    private final int maxRetries;
+
+    private volatile long baseDelayMillis = 500;
+
+    private volatile long maxDelayMillis = 30_000;
+
+    private volatile Set<Integer> retryStatuses = DEFAULT_RETRY_STATUSES;
+
+    private volatile boolean hedging;
+
+    private final Map<HttpHost, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    //包装的下载器不是AsyncDownloader时，用于进行对冲请求，线程数不超过同时进行的下载数，不排队
+    private final ExecutorService hedgeExecutor;
+
+    private final static int DEFAULT_HEDGE_THREADS = 5;
+
+    /**
+     * @param hedgeThreads 包装的下载器不是{@link AsyncDownloader}时，同时进行的下载数的上限，一般与连接数相同。
+     */
+    public RetryingDownloader(Downloader downloader, int maxRetries, int hedgeThreads) {
+        Assert.notNull(downloader, "downloader is null");
+        Assert.isTrue(maxRetries >= 0, "maxRetries <0");
+        Assert.isTrue(hedgeThreads > 0, "hedgeThreads <1");
+        this.downloader = downloader;
+        this.maxRetries = maxRetries;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(hedgeThreads, hedgeThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "hedged-download-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        //包装的下载器是AsyncDownloader时不使用，空闲的线程不保留
+        executor.allowCoreThreadTimeOut(true);
+        this.hedgeExecutor = executor;
+    }
+
+    public RetryingDownloader(Downloader downloader, int maxRetries) {
+        this(downloader, maxRetries, DEFAULT_HEDGE_THREADS);
+    }
+
+    /**
+     * @param baseDelayMillis 第一次重试的最长等待时间（毫秒），之后每次翻倍。
+     * @param maxDelayMillis  最长的等待时间（毫秒）。
+     */
+    public void setBackoff(long baseDelayMillis, long maxDelayMillis) {
+        Assert.isTrue(baseDelayMillis > 0, "baseDelayMillis <1");
+        Assert.isTrue(maxDelayMillis >= baseDelayMillis, "maxDelayMillis < baseDelayMillis");
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public void setRetryStatuses(Set<Integer> retryStatuses) {
+        Assert.notNull(retryStatuses, "retryStatuses is null");
+        this.retryStatuses = Set.copyOf(retryStatuses);
+    }
+
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    @Override
+    public StringResponseResult download(HttpUriRequest request) {
+        if (hedging && downloader instanceof AsyncDownloader) {
+            return downloadAsync(request).join();
+        }
+        for (int retries = 0; ; retries++) {
+            StringResponseResult result = hedging ? hedgedDownload(request) : downloader.download(request);
+            long delay = retryDelay(result, retries);
+            if (delay < 0) {
+                return result;
+            }
+            log.debug("Retry {} after {}ms,status:{}", request.getURI(), delay, result.getStatus());
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+            result.release();
+        }
+    }
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        if (!(downloader instanceof AsyncDownloader)) {
+            return CompletableFuture.completedFuture(download(request));
+        }
+        return downloadAsync(request, 0);
+    }
+
+    private CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request, int retries) {
+        return attempt(request).thenCompose(result -> {
+            long delay = retryDelay(result, retries);
+            if (delay < 0) {
+                return CompletableFuture.completedFuture(result);
+            }
+            log.debug("Retry {} after {}ms,status:{}", request.getURI(), delay, result.getStatus());
+            result.release();
+            return CompletableFuture.runAsync(() -> {
+            }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> downloadAsync(request, retries + 1));
+        });
+    }
+
+    /**
+     * 下载一次，超过对冲时间还没有返回时再发出一次相同的请求。
+     */
+    private CompletableFuture<StringResponseResult> attempt(HttpUriRequest request) {
+        HttpHost host = URIUtils.extractHost(request.getURI());
+        long hedgeDelay = hedgeDelay(request, host);
+        if (hedgeDelay < 0) {
+            return timedAttempt(request, host);
+        }
+        CompletableFuture<StringResponseResult> first = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        timedAttempt(request, host).whenComplete((result, e) -> completeHedged(first, pending, result, e));
+
+        CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> {
+            pending.incrementAndGet();
+            if (first.isDone()) {
+                return;
+            }
+            log.debug("Hedge {} after {}ms", request.getURI(), hedgeDelay);
+            timedAttempt(copy(request), host).whenComplete((result, e) -> {
+                if (result != null) {
+                    result.setHttpRequest(request);
+                }
+                completeHedged(first, pending, result, e);
+            });
+        });
+        return first;
+    }
+
+    /**
+     * 在调用线程中下载一次，超过对冲时间还没有返回时在线程池中再发出一次相同的请求。
+     */
+    private StringResponseResult hedgedDownload(HttpUriRequest request) {
+        HttpHost host = URIUtils.extractHost(request.getURI());
+        long hedgeDelay = hedgeDelay(request, host);
+        if (hedgeDelay < 0) {
+            return timedDownload(request, host);
+        }
+        CompletableFuture<StringResponseResult> first = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        //0：第一次请求进行中，1：第一次请求已经返回，2：第一次请求被中止
+        AtomicInteger state = new AtomicInteger();
+
+        CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> {
+            if (first.isDone()) {
+                return;
+            }
+            try {
+                hedgeExecutor.execute(() -> {
+                    pending.incrementAndGet();
+                    if (first.isDone()) {
+                        return;
+                    }
+                    log.debug("Hedge {} after {}ms", request.getURI(), hedgeDelay);
+                    StringResponseResult result;
+                    try {
+                        result = timedDownload(copy(request), host);
+                    } catch (RuntimeException e) {
+                        completeHedged(first, pending, null, e);
+                        return;
+                    }
+                    result.setHttpRequest(request);
+                    completeHedged(first, pending, result, null);
+                    if (first.getNow(null) == result && request instanceof HttpRequestBase && state.compareAndSet(0, 2)) {
+                        ((HttpRequestBase) request).abort();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.debug("No thread is available to hedge {}", request.getURI());
+            }
+        });
+
+        try {
+            completeHedged(first, pending, timedDownload(request, host), null);
+        } catch (RuntimeException e) {
+            completeHedged(first, pending, null, e);
+        } finally {
+            //被中止的请求在重试前需要重置
+            if (!state.compareAndSet(0, 1)) {
+                ((HttpRequestBase) request).reset();
+            }
+        }
+        try {
+            return first.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * 使用先返回的结果，失败的结果在另一个请求还没有返回时先不使用。
+     */
+    private void completeHedged(CompletableFuture<StringResponseResult> first, AtomicInteger pending,
+                                StringResponseResult result, Throwable e) {
+        boolean last = pending.decrementAndGet() <= 0;
+        if (e != null) {
+            if (last) {
+                first.completeExceptionally(e);
+            }
+            return;
+        }
+        if ((!last && isRetryable(result)) || !first.complete(result)) {
+            result.release();
+        }
+    }
+
+    private CompletableFuture<StringResponseResult> timedAttempt(HttpUriRequest request, HttpHost host) {
+        long start = System.nanoTime();
+        CompletableFuture<StringResponseResult> future = ((AsyncDownloader) downloader).downloadAsync(request);
+        if (!hedging || host == null) {
+            return future;
+        }
+        return future.whenComplete((result, e) -> recordLatency(host, start, result));
+    }
+
+    private StringResponseResult timedDownload(HttpUriRequest request, HttpHost host) {
+        long start = System.nanoTime();
+        StringResponseResult result = downloader.download(request);
+        if (host != null) {
+            recordLatency(host, start, result);
+        }
+        return result;
+    }
+
+    private void recordLatency(HttpHost host, long start, StringResponseResult result) {
+        //只统计收到响应的请求
+        if (result != null && result.getStatus() != 0) {
+            latencies.computeIfAbsent(host, h -> new LatencyWindow())
+                    .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private long hedgeDelay(HttpUriRequest request, HttpHost host) {
+        if (!hedging || host == null || !HEDGE_METHODS.contains(request.getMethod())) {
+            return -1;
+        }
+        LatencyWindow latencyWindow = latencies.get(host);
+        return latencyWindow == null ? -1 : latencyWindow.percentile(0.95);
+    }
+
+    /**
+     * @return 重试前等待的时间（毫秒），不需要重试时返回-1。
+     */
+    long retryDelay(StringResponseResult result, int retries) {
+        if (retries >= maxRetries || !isRetryable(result)) {
+            return -1;
+        }
+        long maxDelay = maxDelayMillis;
+        long backoff = ThreadLocalRandom.current().nextLong(Math.min(maxDelay, baseDelayMillis << Math.min(retries, 30)) + 1);
+        long retryAfter = retryAfterMillis(result);
+        if (retryAfter > maxDelay) {
+            log.debug("Retry-After of {} is {}ms,give up retrying", result.getHttpRequest().getURI(), retryAfter);
+            return -1;
+        }
+        return Math.max(backoff, retryAfter);
+    }
+
+    private boolean isRetryable(StringResponseResult result) {
+        int status = result.getStatus();
+        return status == 0 ? !result.isSuccess() : retryStatuses.contains(status);
+    }
+
+    /**
+     * 解析<code>Retry-After</code>，支持秒数和HTTP日期两种格式。
+     */
+    static long retryAfterMillis(StringResponseResult result) {
+        Map<String, String> headers = result.getHeaders();
+        if (headers == null) {
+            return 0;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!"Retry-After".equalsIgnoreCase(header.getKey()) || header.getValue() == null) {
+                continue;
+            }
+            String value = header.getValue().trim();
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+            } catch (NumberFormatException e) {
+                Date date = DateUtils.parseDate(value);
+                return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 同一个请求对象不能同时执行两次，对冲时使用副本。
+     */
+    private static HttpUriRequest copy(HttpUriRequest request) {
+        if (request instanceof HttpRequestBase) {
+            try {
+                return (HttpUriRequest) ((HttpRequestBase) request).clone();
+            } catch (CloneNotSupportedException e) {
+                log.debug("{} can't be cloned,error:{}", request.getURI(), e.getMessage());
+            }
+        }
+        return request;
+    }
+
+    @Override
+    public void close() throws IOException {
+        hedgeExecutor.shutdown();
+        downloader.close();
+    }
+
+
+    /**
+     * 最近一段时间的响应时间。
+     */
+    private static class LatencyWindow {
+
+        private final long[] samples = new long[128];
+
+        private int count;
+
+        synchronized void record(long latencyMillis) {
+            samples[count++ % samples.length] = latencyMillis;
+            if (count == 2 * samples.length) {
+                count = samples.length;
+            }
+        }
+
+        /**
+         * @return 百分位的响应时间，样本不足时返回-1。
+         */
+        synchronized long percentile(double quantile) {
+            int size = Math.min(count, samples.length);
+            if (size < HEDGE_MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return Math.max(1, sorted[(int) Math.ceil(quantile * size) - 1]);
+        }
+    }
+}
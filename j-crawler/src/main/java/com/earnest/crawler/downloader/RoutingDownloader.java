@@ -0,0 +1,87 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import lombok.Getter;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+/**
+ * 命中规则的请求交给<code>renderDownloader</code>，其余的请求交给<code>downloader</code>，
+ * 普通页面依然使用快速的下载器。
+ * <p>
+ * 异步下载时，不是{@link AsyncDownloader}的下载器在<code>executor</code>中执行，不阻塞调用的线程。
+ *
+ * @see RenderRule
+ */
+@Getter
+public class RoutingDownloader implements AsyncDownloader {
+
+    private final Downloader downloader;
+
+    private final Downloader renderDownloader;
+
+    private final Predicate<HttpUriRequest> rule;
+    //执行同步的下载器，关闭时一起关闭
+    private final ExecutorService executor;
+
+    private final AsyncDownloader asyncDownloader;
+
+    private final AsyncDownloader asyncRenderDownloader;
+
+    /**
+     * @param executor 执行同步下载器的线程池，两个下载器都是{@link AsyncDownloader}时可以为<code>null</code>。
+     */
+    public RoutingDownloader(Downloader downloader, Downloader renderDownloader, Predicate<HttpUriRequest> rule, ExecutorService executor) {
+        Assert.notNull(downloader, "downloader is null");
+        Assert.notNull(renderDownloader, "renderDownloader is null");
+        Assert.notNull(rule, "rule is null");
+        Assert.isTrue(executor != null || downloader instanceof AsyncDownloader && renderDownloader instanceof AsyncDownloader,
+                "executor is null");
+        this.downloader = downloader;
+        this.renderDownloader = renderDownloader;
+        this.rule = rule;
+        this.executor = executor;
+        this.asyncDownloader = toAsync(downloader, executor);
+        this.asyncRenderDownloader = toAsync(renderDownloader, executor);
+    }
+
+    public RoutingDownloader(AsyncDownloader downloader, AsyncDownloader renderDownloader, Predicate<HttpUriRequest> rule) {
+        this(downloader, renderDownloader, rule, null);
+    }
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        return (rule.test(request) ? asyncRenderDownloader : asyncDownloader).downloadAsync(request);
+    }
+
+    @Override
+    public StringResponseResult download(HttpUriRequest request) {
+        return route(request).download(request);
+    }
+
+    private Downloader route(HttpUriRequest request) {
+        return rule.test(request) ? renderDownloader : downloader;
+    }
+
+    private static AsyncDownloader toAsync(Downloader downloader, ExecutorService executor) {
+        return downloader instanceof AsyncDownloader ?
+                (AsyncDownloader) downloader : new ExecutorAsyncDownloader(downloader, executor);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        try {
+            renderDownloader.close();
+        } finally {
+            downloader.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.earnest.crawler.downloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * WARC文件的索引，按请求指纹排序，查找时二分查找内存映射的索引文件。
+ * <p>
+ * 文件格式：4字节的标识，4字节的是否已排序，之后每条记录24字节：
+ * 8字节的指纹，4字节的WARC文件序号，4字节的记录长度，8字节的记录在文件中的位置。
+ * 记录时按写入的顺序追加，关闭时排序，同一指纹只保留最后写入的记录。
+ */
+final class WarcIndex {
+
+    static final String FILE_NAME = "warc.idx";
+
+    private static final int MAGIC = 0x57494458;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int ENTRY_SIZE = 24;
+
+    private final ByteBuffer entries;
+
+    private final int size;
+
+    private WarcIndex(ByteBuffer entries) {
+        this.entries = entries;
+        this.size = entries.limit() / ENTRY_SIZE;
+    }
+
+    static String warcFileName(int fileIndex) {
+        return String.format("records-%05d.warc.gz", fileIndex);
+    }
+
+    /**
+     * 打开目录中的索引。没有排序的索引（记录时没有正常关闭）在内存中排序，不修改文件。
+     */
+    static WarcIndex open(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a warc index");
+            }
+            boolean sorted = header.getInt() != 0;
+            long length = (channel.size() - HEADER_SIZE) / ENTRY_SIZE * ENTRY_SIZE;
+            ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, length);
+            return new WarcIndex(sorted ? entries : sort(entries));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return 记录在索引中的位置，没有时返回-1。
+     */
+    int find(long fingerprint) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = entries.getLong(mid * ENTRY_SIZE);
+            if (value < fingerprint) {
+                low = mid + 1;
+            } else if (value > fingerprint) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    int fileIndex(int position) {
+        return entries.getInt(position * ENTRY_SIZE + 8);
+    }
+
+    int length(int position) {
+        return entries.getInt(position * ENTRY_SIZE + 12);
+    }
+
+    long offset(int position) {
+        return entries.getLong(position * ENTRY_SIZE + 16);
+    }
+
+    /**
+     * 按指纹排序，指纹相同时保留最后的记录。
+     */
+    private static ByteBuffer sort(ByteBuffer entries) {
+        int count = entries.limit() / ENTRY_SIZE;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        //稳定排序，相同指纹保持写入的顺序
+        Arrays.sort(order, (a, b) -> Long.compare(entries.getLong(a * ENTRY_SIZE), entries.getLong(b * ENTRY_SIZE)));
+
+        ByteBuffer sorted = ByteBuffer.allocate(count * ENTRY_SIZE).order(entries.order());
+        for (int i = 0; i < count; i++) {
+            int from = order[i] * ENTRY_SIZE;
+            if (i + 1 < count && entries.getLong(order[i + 1] * ENTRY_SIZE) == entries.getLong(from)) {
+                continue;
+            }
+            for (int j = 0; j < ENTRY_SIZE; j += 8) {
+                sorted.putLong(entries.getLong(from + j));
+            }
+        }
+        sorted.flip();
+        return sorted;
+    }
+
+
+    /**
+     * 追加写入索引，关闭时排序。目录中已有索引时在其后追加。
+     */
+    static final class Writer implements Closeable {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+
+        Writer(Path directory) throws IOException {
+            this.file = directory.resolve(FILE_NAME);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            //标记为未排序
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(0);
+            header.flip();
+            channel.write(header, 0);
+            long entriesSize = (channel.size() - HEADER_SIZE) / ENTRY_SIZE * ENTRY_SIZE;
+            channel.position(HEADER_SIZE + entriesSize);
+        }
+
+        void add(long fingerprint, int fileIndex, int length, long offset) throws IOException {
+            entry.clear();
+            entry.putLong(fingerprint).putInt(fileIndex).putInt(length).putLong(offset);
+            entry.flip();
+            while (entry.hasRemaining()) {
+                channel.write(entry);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            ByteBuffer sorted;
+            try (channel) {
+                long length = channel.position() - HEADER_SIZE;
+                ByteBuffer entries = ByteBuffer.allocate((int) length);
+                while (entries.hasRemaining() && channel.read(entries, HEADER_SIZE + entries.position()) >= 0) ;
+                entries.flip();
+                sorted = sort(entries);
+            }
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(1);
+                header.flip();
+                out.write(header);
+                while (sorted.hasRemaining()) {
+                    out.write(sorted);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
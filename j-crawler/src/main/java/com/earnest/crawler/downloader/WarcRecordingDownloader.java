@@ -0,0 +1,268 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import com.earnest.crawler.scheduler.Fingerprints;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 将请求和响应记录到压缩的WARC文件中，之后可以通过{@link WarcReplayDownloader}离线重放。
+ * <p>
+ * 每条WARC记录单独压缩为一个gzip成员，文件超过<code>maxFileSize</code>时写入新的文件。
+ * 只记录收到了响应的结果，下载失败（没有状态码）的不记录。
+ * 已经解码的内容按UTF-8重新编码，并在<code>Content-Type</code>中声明，流式模式的内容按原始字节记录。
+ */
+@Slf4j
+public class WarcRecordingDownloader implements AsyncDownloader {
+
+    public static final long DEFAULT_MAX_FILE_SIZE = 1024L * 1024 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    @Getter
+    private final Downloader downloader;
+
+    @Getter
+    private final Path directory;
+
+    private final long maxFileSize;
+
+    private final WarcIndex.Writer indexWriter;
+
+    private int fileIndex;
+
+    private FileChannel channel;
+
+    @Getter
+    private volatile long recorded;
+
+    private boolean closed;
+
+    public WarcRecordingDownloader(Downloader downloader, Path directory, long maxFileSize) {
+        Assert.notNull(downloader, "downloader is null");
+        Assert.notNull(directory, "directory is null");
+        Assert.isTrue(maxFileSize > 0, "maxFileSize <1");
+        this.downloader = downloader;
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+        try {
+            Files.createDirectories(directory);
+            //目录中已有记录时写入新的文件
+            while (Files.exists(directory.resolve(WarcIndex.warcFileName(fileIndex)))) {
+                fileIndex++;
+            }
+            this.indexWriter = new WarcIndex.Writer(directory);
+            this.channel = openFile(fileIndex);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to open warc directory " + directory, e);
+        }
+    }
+
+    public WarcRecordingDownloader(Downloader downloader, Path directory) {
+        this(downloader, directory, DEFAULT_MAX_FILE_SIZE);
+    }
+
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        if (downloader instanceof AsyncDownloader) {
+            return ((AsyncDownloader) downloader).downloadAsync(request).thenApply(this::record);
+        }
+        return CompletableFuture.completedFuture(download(request));
+    }
+
+    @Override
+    public StringResponseResult download(HttpUriRequest request) {
+        return record(downloader.download(request));
+    }
+
+    private StringResponseResult record(StringResponseResult responseResult) {
+        HttpUriRequest request = responseResult.getHttpRequest();
+        if (request == null || responseResult.getStatus() <= 0) {
+            return responseResult;
+        }
+        try {
+            String requestId = recordId();
+            byte[] requestRecord = compress(warcHeader("request", requestId, null, request, requestBlock(request)));
+            byte[] responseRecord = compress(warcHeader("response", recordId(), requestId, request, responseBlock(responseResult)));
+            write(Fingerprints.fingerprint(request), requestRecord, responseRecord);
+        } catch (IOException e) {
+            log.warn("Failed to record {},error:{}", request.getURI(), e.getMessage());
+        }
+        return responseResult;
+    }
+
+    private synchronized void write(long fingerprint, byte[] requestRecord, byte[] responseRecord) throws IOException {
+        if (closed) {
+            throw new IOException("recorder is closed");
+        }
+        if (channel.position() >= maxFileSize) {
+            channel.close();
+            channel = openFile(++fileIndex);
+        }
+        writeFully(requestRecord);
+        long offset = channel.position();
+        writeFully(responseRecord);
+        indexWriter.add(fingerprint, fileIndex, responseRecord.length, offset);
+        recorded++;
+    }
+
+    private void writeFully(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private FileChannel openFile(int index) throws IOException {
+        return FileChannel.open(directory.resolve(WarcIndex.warcFileName(index)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static String recordId() {
+        return "<urn:uuid:" + UUID.randomUUID() + ">";
+    }
+
+    private static byte[] warcHeader(String type, String recordId, String concurrentTo, HttpUriRequest request, byte[] block) {
+        StringBuilder header = new StringBuilder(256)
+                .append("WARC/1.0\r\n")
+                .append("WARC-Type: ").append(type).append("\r\n")
+                .append("WARC-Record-ID: ").append(recordId).append("\r\n")
+                .append("WARC-Date: ").append(Instant.now().truncatedTo(ChronoUnit.SECONDS)).append("\r\n")
+                .append("WARC-Target-URI: ").append(request.getURI()).append("\r\n");
+        if (concurrentTo != null) {
+            header.append("WARC-Concurrent-To: ").append(concurrentTo).append("\r\n");
+        }
+        header.append("Content-Type: application/http;msgtype=").append(type).append("\r\n")
+                .append("Content-Length: ").append(block.length).append("\r\n\r\n");
+
+        byte[] headerBytes = header.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[headerBytes.length + block.length + 4];
+        System.arraycopy(headerBytes, 0, record, 0, headerBytes.length);
+        System.arraycopy(block, 0, record, headerBytes.length, block.length);
+        record[record.length - 4] = record[record.length - 2] = '\r';
+        record[record.length - 3] = record[record.length - 1] = '\n';
+        return record;
+    }
+
+    private static byte[] requestBlock(HttpUriRequest request) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(512);
+        String path = request.getURI().getRawPath();
+        String query = request.getURI().getRawQuery();
+        writeLine(block, request.getMethod() + " " + (path == null || path.isEmpty() ? "/" : path)
+                + (query == null ? "" : "?" + query) + " HTTP/1.1");
+        writeLine(block, "Host: " + request.getURI().getRawAuthority());
+        for (Header header : request.getAllHeaders()) {
+            writeLine(block, header.getName() + ": " + header.getValue());
+        }
+        block.write(CRLF);
+        if (request instanceof HttpEntityEnclosingRequest) {
+            //与请求指纹一致，只记录可以重复读取的请求体
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.isRepeatable()) {
+                entity.writeTo(block);
+            }
+        }
+        return block.toByteArray();
+    }
+
+    private static byte[] responseBlock(StringResponseResult responseResult) throws IOException {
+        byte[] body;
+        String contentType = null;
+        if (responseResult.getBody() != null) {
+            ByteArrayOutputStream bodyOutput = new ByteArrayOutputStream(responseResult.getBody().length());
+            responseResult.getBody().writeTo(bodyOutput);
+            body = bodyOutput.toByteArray();
+        } else {
+            String content = responseResult.getContent();
+            body = content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8);
+            //重放时按声明的字符集解码
+            contentType = "text/html; charset=UTF-8";
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(body.length + 512);
+        writeLine(block, "HTTP/1.1 " + responseResult.getStatus() + " "
+                + (responseResult.getReason() == null ? "" : responseResult.getReason()));
+        Map<String, String> headers = responseResult.getHeaders();
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                String name = header.getKey();
+                //内容已经解压并且重新计算长度
+                if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)
+                        || HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+                    continue;
+                }
+                if (contentType != null && HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(name)) {
+                    contentType = mimeType(header.getValue()) + "; charset=UTF-8";
+                    continue;
+                }
+                writeLine(block, name + ": " + header.getValue());
+            }
+        }
+        if (contentType != null) {
+            writeLine(block, HttpHeaders.CONTENT_TYPE + ": " + contentType);
+        }
+        writeLine(block, HttpHeaders.CONTENT_LENGTH + ": " + body.length);
+        block.write(CRLF);
+        block.write(body);
+        return block.toByteArray();
+    }
+
+    private static String mimeType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim();
+    }
+
+    private static void writeLine(OutputStream output, String line) throws IOException {
+        output.write(line.getBytes(StandardCharsets.UTF_8));
+        output.write(CRLF);
+    }
+
+    private static byte[] compress(byte[] record) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(record.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(record);
+        }
+        return compressed.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                channel.close();
+                indexWriter.close();
+            }
+            log.info("Recorded {} responses to {}", recorded, directory);
+        } finally {
+            downloader.close();
+        }
+    }
+}
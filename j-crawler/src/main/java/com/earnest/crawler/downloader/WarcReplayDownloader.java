@@ -0,0 +1,219 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.CharsetDetector;
+import com.earnest.crawler.StringResponseResult;
+import com.earnest.crawler.scheduler.Fingerprints;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 从{@link WarcRecordingDownloader}记录的WARC文件中读取响应，不访问网络。
+ * <p>
+ * 按请求指纹在内存映射的索引中查找记录的位置，再从WARC文件中读取并解压这一条记录，
+ * 重复运行时结果完全相同，可以用于离线调试和测试抓取的速度。没有记录或者记录损坏的请求返回下载失败的结果。
+ * 读取本地文件很快，异步下载时直接在调用线程中完成。
+ */
+@Slf4j
+public class WarcReplayDownloader implements AsyncDownloader {
+
+    @Getter
+    private final Path directory;
+
+    private final WarcIndex index;
+
+    private final Map<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public WarcReplayDownloader(Path directory) {
+        Assert.notNull(directory, "directory is null");
+        this.directory = directory;
+        try {
+            this.index = WarcIndex.open(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to open warc index in " + directory, e);
+        }
+        log.debug("Opened warc index of {} records in {}", index.size(), directory);
+    }
+
+
+    @Override
+    public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+        return CompletableFuture.completedFuture(download(request));
+    }
+
+    @Override
+    public StringResponseResult download(HttpUriRequest request) {
+        Assert.notNull(request, "request is null");
+        int position = index.find(Fingerprints.fingerprint(request));
+        if (position < 0) {
+            misses.incrementAndGet();
+            log.debug("url:{} is not recorded", request.getURI());
+            return HttpClientDownloader.failureAdapt(request, new IOException("not recorded"));
+        }
+        try {
+            byte[] record = read(index.fileIndex(position), index.offset(position), index.length(position));
+            StringResponseResult responseResult = parse(record, request);
+            hits.incrementAndGet();
+            return responseResult;
+        } catch (IOException e) {
+            //无法解析的记录按没有记录处理
+            misses.incrementAndGet();
+            log.error("url:{} replay failed,error:{}", request.getURI(), e.getMessage());
+            return HttpClientDownloader.failureAdapt(request, e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private byte[] read(int fileIndex, long offset, int length) throws IOException {
+        FileChannel channel = channels.computeIfAbsent(fileIndex, i -> {
+            try {
+                return FileChannel.open(directory.resolve(WarcIndex.warcFileName(i)), StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        ByteBuffer compressed = ByteBuffer.allocate(length);
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, offset + compressed.position()) < 0) {
+                throw new IOException("truncated warc record");
+            }
+        }
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed.array()), 8192)) {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(length * 4);
+            inputStream.transferTo(record);
+            return record.toByteArray();
+        }
+    }
+
+    /**
+     * 解析WARC的response记录：WARC头、HTTP状态行、响应头和响应体。
+     */
+    private static StringResponseResult parse(byte[] record, HttpUriRequest request) throws IOException {
+        int[] cursor = {0};
+        String line = readLine(record, cursor);
+        if (line == null || !line.startsWith("WARC/")) {
+            throw new IOException("invalid warc record");
+        }
+        //跳过WARC头
+        while ((line = readLine(record, cursor)) != null && !line.isEmpty()) ;
+
+        String statusLine = readLine(record, cursor);
+        if (statusLine == null || !statusLine.startsWith("HTTP/")) {
+            throw new IOException("invalid http response");
+        }
+        int codeStart = statusLine.indexOf(' ') + 1;
+        int codeEnd = statusLine.indexOf(' ', codeStart);
+        codeEnd = codeEnd < 0 ? statusLine.length() : codeEnd;
+
+        StringResponseResult responseResult = new StringResponseResult();
+        responseResult.setHttpRequest(request);
+        responseResult.setStatus(parseInt(statusLine.substring(codeStart, codeEnd), "status code"));
+        String reasonPhrase = codeEnd < statusLine.length() ? statusLine.substring(codeEnd + 1) : "";
+        responseResult.setSuccess("OK".equalsIgnoreCase(reasonPhrase));
+        responseResult.setReason(reasonPhrase);
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        int contentLength = -1;
+        while ((line = readLine(record, cursor)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                headers.put(name, value);
+                if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                    contentLength = parseInt(value, "content length");
+                }
+            }
+        }
+        responseResult.setHeaders(headers);
+        responseResult.setCookies(Collections.emptyMap());
+
+        int bodyStart = cursor[0];
+        int bodyLength = contentLength >= 0 ? Math.min(contentLength, record.length - bodyStart) : record.length - bodyStart;
+        ByteArrayEntity entity = new ByteArrayEntity(record, bodyStart, bodyLength);
+        headers.entrySet().stream()
+                .filter(header -> HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey()))
+                .findFirst()
+                .ifPresent(header -> entity.setContentType(header.getValue()));
+        responseResult.setCharset(CharsetDetector.declaredCharset(entity));
+        responseResult.setContent(CharsetDetector.decode(entity));
+        return responseResult;
+    }
+
+    private static int parseInt(String value, String name) throws IOException {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid " + name + ":" + value, e);
+        }
+        if (result < 0) {
+            throw new IOException("invalid " + name + ":" + value);
+        }
+        return result;
+    }
+
+    private static String readLine(byte[] record, int[] cursor) {
+        int start = cursor[0];
+        if (start >= record.length) {
+            return null;
+        }
+        int end = start;
+        while (end < record.length && record[end] != '\n') {
+            end++;
+        }
+        cursor[0] = end + 1;
+        int lineEnd = end > start && record[end - 1] == '\r' ? end - 1 : end;
+        return new String(record, start, lineEnd - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        for (FileChannel channel : channels.values()) {
+            channel.close();
+        }
+        long elapsedMillis = Math.max((System.nanoTime() - startNanos) / 1_000_000, 1);
+        log.info("Replayed {} responses ({} not recorded) in {} ms, {} responses/s",
+                hits.get(), misses.get(), elapsedMillis, hits.get() * 1000 / elapsedMillis);
+    }
+}
@@ -0,0 +1,275 @@
+package com.earnest.crawler.downloader;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.CookieManager;
+import com.gargoylesoftware.htmlunit.NicelyResynchronizingAjaxController;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebClientOptions;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 有上限的{@link WebClient}池。{@link WebClient}不是线程安全的，每次下载从池中借出一个，用完后归还。
+ * <p>
+ * 池中的所有{@link WebClient}共享同一个{@link CookieManager}和{@link Cache}，
+ * 地址匹配屏蔽列表的资源（图片、字体、统计脚本等）不会被下载，直接返回空的响应。
+ */
+@Slf4j
+public class WebClientPool implements Closeable {
+
+    /**
+     * 默认屏蔽的资源：图片、字体、音视频和常见的统计脚本。
+     */
+    public static final List<String> DEFAULT_BLOCKLIST = List.of(
+            "\\.(png|jpe?g|gif|webp|bmp|svg|ico)(\\?|$)",
+            "\\.(woff2?|ttf|otf|eot)(\\?|$)",
+            "\\.(mp3|mp4|flv|m3u8|ts|webm)(\\?|$)",
+            "//[^/]*(google-analytics\\.com|googletagmanager\\.com|doubleclick\\.net)/",
+            "//[^/]*(hm\\.baidu\\.com|cnzz\\.com|51\\.la)/"
+    );
+
+    private static final int DEFAULT_JAVA_SCRIPT_TIMEOUT = 10_000;
+
+    @Getter
+    private final int maxSize;
+
+    private final BlockingQueue<WebClient> idle;
+
+    //已经创建且没有关闭的数量
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final BrowserVersion browserVersion;
+
+    @Getter
+    private final CookieManager cookieManager = new CookieManager();
+
+    @Getter
+    private final Cache cache = new Cache();
+
+    private final List<Pattern> blocklist = new ArrayList<>();
+
+    //单个脚本最长的执行时间
+    @Getter
+    private volatile long javaScriptTimeout = DEFAULT_JAVA_SCRIPT_TIMEOUT;
+
+    //连接和读取的超时时间
+    private volatile int timeout;
+
+    private volatile boolean closed;
+
+
+    /**
+     * @param maxSize        最多同时存在的{@link WebClient}数量。
+     * @param browserVersion 模拟的浏览器。
+     */
+    public WebClientPool(int maxSize, BrowserVersion browserVersion) {
+        Assert.isTrue(maxSize > 0, "maxSize <1");
+        Assert.notNull(browserVersion, "browserVersion is null");
+        this.maxSize = maxSize;
+        this.browserVersion = browserVersion;
+        this.idle = new LinkedBlockingQueue<>(maxSize);
+        DEFAULT_BLOCKLIST.forEach(this::block);
+    }
+
+    public WebClientPool(int maxSize) {
+        this(maxSize, BrowserVersion.CHROME);
+    }
+
+    /**
+     * 屏蔽地址匹配正则表达式的资源，需要在{@link #warmUp(int)}和第一次借出之前调用。
+     */
+    public WebClientPool block(String regex) {
+        Assert.hasText(regex, "regex is empty");
+        blocklist.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+        return this;
+    }
+
+    /**
+     * 清空屏蔽列表，包括{@link #DEFAULT_BLOCKLIST}。
+     */
+    public WebClientPool clearBlocklist() {
+        blocklist.clear();
+        return this;
+    }
+
+    public WebClientPool setJavaScriptTimeout(long javaScriptTimeout) {
+        Assert.isTrue(javaScriptTimeout >= 0, "javaScriptTimeout <0");
+        this.javaScriptTimeout = javaScriptTimeout;
+        return this;
+    }
+
+    /**
+     * @param timeout 连接和读取的超时时间（毫秒），0表示不超时。
+     */
+    public WebClientPool setTimeout(int timeout) {
+        Assert.isTrue(timeout >= 0, "timeout <0");
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * 预先创建{@link WebClient}并初始化脚本引擎，避免第一批请求等待。
+     *
+     * @param size 预先创建的数量，不超过{@link #getMaxSize()}。
+     */
+    public WebClientPool warmUp(int size) {
+        List<WebClient> webClients = new ArrayList<>(size);
+        for (int i = 0; i < size && reserve(); i++) {
+            WebClient webClient = create();
+            try {
+                webClient.getPage("about:blank");
+            } catch (IOException e) {
+                log.warn("Failed to warm up webClient,error:{}", e.getMessage());
+            }
+            webClients.add(webClient);
+        }
+        webClients.forEach(this::release);
+        return this;
+    }
+
+    /**
+     * 借出一个{@link WebClient}，池中没有空闲并且已达到上限时等待。
+     *
+     * @return 超时返回<code>null</code>。
+     */
+    public WebClient borrow(long timeout, TimeUnit unit) throws InterruptedException {
+        Assert.state(!closed, "webClientPool is closed");
+        WebClient webClient = idle.poll();
+        if (webClient != null) {
+            return webClient;
+        }
+        if (reserve()) {
+            return create();
+        }
+        return idle.poll(timeout, unit);
+    }
+
+    /**
+     * 归还借出的{@link WebClient}，并停止页面中还没有执行的脚本。
+     */
+    public void release(WebClient webClient) {
+        if (webClient == null) {
+            return;
+        }
+        webClient.getWebWindows().forEach(webWindow -> webWindow.getJobManager().removeAllJobs());
+        if (closed || !idle.offer(webClient)) {
+            invalidate(webClient);
+        }
+    }
+
+    /**
+     * 关闭出错的{@link WebClient}，不再放回池中。
+     */
+    public void invalidate(WebClient webClient) {
+        if (webClient == null) {
+            return;
+        }
+        created.decrementAndGet();
+        webClient.close();
+    }
+
+    public int getIdleSize() {
+        return idle.size();
+    }
+
+    public int getCreatedSize() {
+        return created.get();
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = created.get();
+            if (current >= maxSize) {
+                return false;
+            }
+        } while (!created.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private WebClient create() {
+        WebClient webClient = new WebClient(browserVersion);
+        WebClientOptions options = webClient.getOptions();
+        options.setJavaScriptEnabled(true);
+        options.setCssEnabled(false);
+        options.setThrowExceptionOnScriptError(false);
+        options.setThrowExceptionOnFailingStatusCode(false);
+        options.setPrintContentOnFailingStatusCode(false);
+        options.setTimeout(timeout);
+        webClient.setJavaScriptTimeout(javaScriptTimeout);
+        webClient.setAjaxController(new NicelyResynchronizingAjaxController());
+        //页面不规范的警告对抓取没有意义
+        webClient.setIncorrectnessListener((message, origin) -> log.trace(message));
+        webClient.setCookieManager(cookieManager);
+        webClient.setCache(cache);
+        if (!blocklist.isEmpty()) {
+            new BlockingWebConnection(webClient, List.copyOf(blocklist));
+        }
+        return webClient;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        WebClient webClient;
+        while ((webClient = idle.poll()) != null) {
+            invalidate(webClient);
+        }
+    }
+
+
+    /**
+     * 地址匹配屏蔽列表时返回空的响应，不进行下载。使用200而不是204，避免脚本加载失败的错误日志。
+     */
+    private static class BlockingWebConnection extends WebConnectionWrapper {
+
+        private final List<Pattern> blocklist;
+
+        BlockingWebConnection(WebClient webClient, List<Pattern> blocklist) {
+            super(webClient);
+            this.blocklist = blocklist;
+        }
+
+        @Override
+        public WebResponse getResponse(WebRequest request) throws IOException {
+            String url = request.getUrl().toString();
+            for (Pattern pattern : blocklist) {
+                if (pattern.matcher(url).find()) {
+                    log.trace("Blocked {}", url);
+                    WebResponseData responseData = new WebResponseData(new byte[0], 200, "OK", Collections.emptyList());
+                    return new WebResponse(responseData, request, 0);
+                }
+            }
+            return super.getResponse(request);
+        }
+
+        //父类声明了throws Exception，可能抛出InterruptedException，这里收窄为IOException
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
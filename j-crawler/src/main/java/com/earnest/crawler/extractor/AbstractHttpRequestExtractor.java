@@ -2,11 +2,15 @@ package com.earnest.crawler.extractor;
 
 import com.earnest.crawler.Browser;
 import com.earnest.crawler.HttpResponseResult;
+import com.earnest.crawler.RequestAttributes;
+import com.earnest.crawler.scheduler.UrlCanonicalizer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -19,16 +23,37 @@ public abstract class AbstractHttpRequestExtractor implements HttpRequestExtract
         HttpUriRequest httpRequest = responseResult.getHttpRequest();
 
         RequestBuilder requestBuilder = RequestBuilder.copy(httpRequest);
-        Set<String> newUris = extractUrl(responseResult);
+        Map<String, String> newUris = extractTaggedUrl(responseResult);
         if (newUris.size() != 0)
             log.trace("Get {} new uris by {}", newUris.size(), httpRequest.getURI());
-        return newUris.stream().map(url ->
-                requestBuilder.setUri(url)
-                        .setHeader(Browser.REFERER, httpRequest.getRequestLine().getUri())
-                        .build()
+        int depth = RequestAttributes.getDepth(httpRequest) + 1;
+        //统一网址的写法，去掉同一页面中指向相同地址的链接，保留第一个链接的标签
+        Map<String, String> canonicalUris = new LinkedHashMap<>();
+        newUris.forEach((url, tag) -> canonicalUris.putIfAbsent(UrlCanonicalizer.canonicalize(url), tag));
+        return canonicalUris.entrySet().stream().map(taggedUri -> {
+                    HttpUriRequest newHttpRequest = requestBuilder.setUri(taggedUri.getKey())
+                            .setHeader(Browser.REFERER, httpRequest.getRequestLine().getUri())
+                            .build();
+                    RequestAttributes.setDepth(newHttpRequest, depth);
+                    if (taggedUri.getValue() != null) {
+                        RequestAttributes.setTag(newHttpRequest, taggedUri.getValue());
+                    }
+                    return newHttpRequest;
+                }
         ).collect(Collectors.toSet());
     }
 
 
     protected abstract Set<String> extractUrl(HttpResponseResult<String> responseResult);
+
+    /**
+     * @return 链接和提取它的规则的标签，默认没有标签。
+     */
+    protected Map<String, String> extractTaggedUrl(HttpResponseResult<String> responseResult) {
+        Map<String, String> taggedUrls = new LinkedHashMap<>();
+        for (String url : extractUrl(responseResult)) {
+            taggedUrls.put(url, null);
+        }
+        return taggedUrls;
+    }
 }
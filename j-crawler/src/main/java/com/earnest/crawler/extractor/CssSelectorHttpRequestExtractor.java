@@ -1,6 +1,7 @@
 package com.earnest.crawler.extractor;
 
 import com.earnest.crawler.HttpResponseResult;
+import com.earnest.crawler.StringResponseResult;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.util.Assert;
@@ -26,6 +27,11 @@ public class CssSelectorHttpRequestExtractor extends AbstractHttpRequestExtracto
             baseUri = responseResult.getHttpRequest().getURI().toString();
         }
 
+        if (responseResult instanceof StringResponseResult) {
+            //流式模式下直接从字节解析
+            return selectorExtractor.apply(((StringResponseResult) responseResult).parse(baseUri));
+        }
+
         return selectorExtractor.apply(
                 Jsoup.parse(responseResult.getContent(),
                         baseUri
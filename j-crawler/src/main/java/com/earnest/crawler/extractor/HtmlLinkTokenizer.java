@@ -0,0 +1,599 @@
+package com.earnest.crawler.extractor;
+
+import org.jsoup.helper.StringUtil;
+import org.springframework.util.Assert;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * 单遍扫描HTML，只提取指定标签的链接属性，不构建DOM。
+ * <p>
+ * 扫描的状态保存在对象中，内容可以分块多次传入{@link #feed(byte[], int, int)}或{@link #feed(CharSequence)}，
+ * 例如在从网络读取的同时扫描。按字节扫描时只在属性值中有非ASCII字符时才按<code>charset</code>解码，
+ * 因此只支持兼容ASCII的字符集（UTF-8、GBK等）。
+ * <p>
+ * 提取到的链接按{@link #getBaseUrl() 页面地址}或页面中的<code>&lt;base href&gt;</code>补全为绝对地址，
+ * 只保留http和https的链接，<code>script</code>、<code>style</code>和注释中的内容被跳过。
+ * <blockquote>
+ * 例:
+ * <pre>
+ *     HtmlLinkTokenizer tokenizer = new HtmlLinkTokenizer(url, StandardCharsets.UTF_8, links::add, "a[href]", "iframe[src]");
+ *     tokenizer.feed(bytes, 0, length);
+ * </pre>
+ * </blockquote>
+ * 不是线程安全的。
+ */
+public class HtmlLinkTokenizer {
+
+    /**
+     * 默认提取的标签和属性。
+     */
+    public static final String[] DEFAULT_TAG_ATTRIBUTES = {"a[href]", "area[href]", "link[href]", "frame[src]", "iframe[src]"};
+
+    //超过长度的标签名和属性名不会命中任何规则
+    private static final int MAX_NAME_LENGTH = 32;
+
+    //超过长度的属性值（一般是data:地址）不提取
+    private static final int MAX_VALUE_LENGTH = 8192;
+
+    private static final int DATA = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int TAG_NAME = 2;
+    private static final int BEFORE_ATTRIBUTE_NAME = 3;
+    private static final int ATTRIBUTE_NAME = 4;
+    private static final int AFTER_ATTRIBUTE_NAME = 5;
+    private static final int BEFORE_ATTRIBUTE_VALUE = 6;
+    private static final int DOUBLE_QUOTED_VALUE = 7;
+    private static final int SINGLE_QUOTED_VALUE = 8;
+    private static final int UNQUOTED_VALUE = 9;
+    private static final int MARKUP_DECLARATION = 10;
+    private static final int COMMENT = 11;
+    private static final int BOGUS = 12;
+    private static final int RAW_TEXT = 13;
+
+    private static final char[] BASE = "base".toCharArray();
+    private static final char[] HREF = "href".toCharArray();
+    private static final char[] SCRIPT_END = "</script".toCharArray();
+    private static final char[] STYLE_END = "</style".toCharArray();
+
+    private final char[][] ruleTags;
+
+    private final char[][] ruleAttributes;
+
+    private final Charset charset;
+
+    private final Consumer<String> linkConsumer;
+
+    private URL baseUrl;
+
+    private int state = DATA;
+
+    private final char[] tagName = new char[MAX_NAME_LENGTH];
+    private int tagNameLength;
+
+    private final char[] attributeName = new char[MAX_NAME_LENGTH];
+    private int attributeNameLength;
+
+    //当前标签命中的规则，按位表示
+    private int tagRules;
+
+    private boolean baseTag;
+
+    //当前属性值是否需要保存
+    private boolean capturing;
+
+    private char[] value = new char[256];
+    private int valueLength;
+    //按字节扫描时值中是否有非ASCII的字节
+    private boolean valueHasNonAscii;
+
+    private boolean byteMode;
+
+    //注释中连续的'-'，或markup声明中已读的'-'
+    private int dashes;
+
+    private char[] rawTextEnd;
+    private int rawTextMatched;
+
+
+    /**
+     * @param baseUrl       页面的地址，用于补全相对地址。
+     * @param charset       按字节扫描时属性值使用的字符集，为空时使用UTF-8。
+     * @param linkConsumer  接收补全后的链接，同一个链接可能出现多次。
+     * @param tagAttributes 提取的标签和属性，形式为<code>tag[attribute]</code>，标签为<code>*</code>时匹配所有标签。
+     */
+    public HtmlLinkTokenizer(String baseUrl, Charset charset, Consumer<String> linkConsumer, String... tagAttributes) {
+        Assert.notNull(linkConsumer, "linkConsumer is null");
+        if (tagAttributes == null || tagAttributes.length == 0) {
+            tagAttributes = DEFAULT_TAG_ATTRIBUTES;
+        }
+        Assert.isTrue(tagAttributes.length <= Integer.SIZE, "too many tagAttributes");
+        this.ruleTags = new char[tagAttributes.length][];
+        this.ruleAttributes = new char[tagAttributes.length][];
+        for (int i = 0; i < tagAttributes.length; i++) {
+            String tagAttribute = tagAttributes[i].trim().toLowerCase(Locale.ROOT);
+            int open = tagAttribute.indexOf('[');
+            Assert.isTrue(open > 0 && tagAttribute.endsWith("]") && open + 2 < tagAttribute.length(),
+                    "tagAttribute should be in the form tag[attribute]:" + tagAttributes[i]);
+            ruleTags[i] = tagAttribute.substring(0, open).toCharArray();
+            ruleAttributes[i] = tagAttribute.substring(open + 1, tagAttribute.length() - 1).toCharArray();
+        }
+        this.charset = charset == null ? StandardCharsets.UTF_8 : charset;
+        this.linkConsumer = linkConsumer;
+        this.baseUrl = toUrl(baseUrl);
+    }
+
+    public HtmlLinkTokenizer(String baseUrl, Consumer<String> linkConsumer) {
+        this(baseUrl, null, linkConsumer, DEFAULT_TAG_ATTRIBUTES);
+    }
+
+    /**
+     * @return 补全相对地址使用的地址，页面中有<code>&lt;base href&gt;</code>时为其补全后的地址。
+     */
+    public String getBaseUrl() {
+        return baseUrl == null ? null : baseUrl.toExternalForm();
+    }
+
+    /**
+     * 按字节扫描一块内容。
+     */
+    public void feed(byte[] bytes, int offset, int length) {
+        byteMode = true;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            consume((char) (bytes[i] & 0xff));
+        }
+    }
+
+    /**
+     * 按字节扫描<code>buffer</code>中剩余的内容，扫描后position移动到limit。
+     */
+    public void feed(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        byteMode = true;
+        while (buffer.hasRemaining()) {
+            consume((char) (buffer.get() & 0xff));
+        }
+    }
+
+    /**
+     * 扫描一段已经解码的内容。
+     */
+    public void feed(CharSequence chars) {
+        byteMode = false;
+        for (int i = 0, length = chars.length(); i < length; i++) {
+            consume(chars.charAt(i));
+        }
+    }
+
+    private void consume(char c) {
+        switch (state) {
+            case DATA:
+                if (c == '<') {
+                    state = TAG_OPEN;
+                }
+                break;
+            case TAG_OPEN:
+                if (isLetter(c)) {
+                    tagNameLength = 0;
+                    appendTagName(c);
+                    state = TAG_NAME;
+                } else if (c == '!') {
+                    dashes = 0;
+                    state = MARKUP_DECLARATION;
+                } else if (c == '/' || c == '?') {
+                    state = BOGUS;
+                } else if (c != '<') {
+                    state = DATA;
+                }
+                break;
+            case TAG_NAME:
+                if (isWhitespace(c) || c == '/') {
+                    startTag();
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '>') {
+                    startTag();
+                    endStartTag();
+                } else {
+                    appendTagName(c);
+                }
+                break;
+            case BEFORE_ATTRIBUTE_NAME:
+                if (c == '>') {
+                    endStartTag();
+                } else if (!isWhitespace(c) && c != '/') {
+                    attributeNameLength = 0;
+                    appendAttributeName(c);
+                    state = ATTRIBUTE_NAME;
+                }
+                break;
+            case ATTRIBUTE_NAME:
+                if (isWhitespace(c)) {
+                    state = AFTER_ATTRIBUTE_NAME;
+                } else if (c == '=') {
+                    state = BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    endStartTag();
+                } else if (c == '/') {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else {
+                    appendAttributeName(c);
+                }
+                break;
+            case AFTER_ATTRIBUTE_NAME:
+                if (c == '=') {
+                    state = BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    endStartTag();
+                } else if (c == '/') {
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (!isWhitespace(c)) {
+                    attributeNameLength = 0;
+                    appendAttributeName(c);
+                    state = ATTRIBUTE_NAME;
+                }
+                break;
+            case BEFORE_ATTRIBUTE_VALUE:
+                if (isWhitespace(c)) {
+                    break;
+                }
+                if (c == '>') {
+                    endStartTag();
+                    break;
+                }
+                startValue();
+                if (c == '"') {
+                    state = DOUBLE_QUOTED_VALUE;
+                } else if (c == '\'') {
+                    state = SINGLE_QUOTED_VALUE;
+                } else {
+                    appendValue(c);
+                    state = UNQUOTED_VALUE;
+                }
+                break;
+            case DOUBLE_QUOTED_VALUE:
+            case SINGLE_QUOTED_VALUE:
+                if (c == (state == DOUBLE_QUOTED_VALUE ? '"' : '\'')) {
+                    endValue();
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else {
+                    appendValue(c);
+                }
+                break;
+            case UNQUOTED_VALUE:
+                if (isWhitespace(c)) {
+                    endValue();
+                    state = BEFORE_ATTRIBUTE_NAME;
+                } else if (c == '>') {
+                    endValue();
+                    endStartTag();
+                } else {
+                    appendValue(c);
+                }
+                break;
+            case MARKUP_DECLARATION:
+                if (c == '-' && ++dashes == 2) {
+                    dashes = 0;
+                    state = COMMENT;
+                } else if (c == '>') {
+                    state = DATA;
+                } else if (c != '-') {
+                    state = BOGUS;
+                }
+                break;
+            case COMMENT:
+                if (c == '-') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    state = DATA;
+                } else {
+                    dashes = 0;
+                }
+                break;
+            case BOGUS:
+                if (c == '>') {
+                    state = DATA;
+                }
+                break;
+            case RAW_TEXT:
+                //结束标签的名称后面必须是'>'、'/'或空白，</scripts不是结束标签
+                if (rawTextMatched == rawTextEnd.length) {
+                    if (c == '>') {
+                        state = DATA;
+                        break;
+                    }
+                    if (c == '/' || isWhitespace(c)) {
+                        state = BOGUS;
+                        break;
+                    }
+                    rawTextMatched = 0;
+                }
+                if (toLowerCase(c) == rawTextEnd[rawTextMatched]) {
+                    rawTextMatched++;
+                } else {
+                    rawTextMatched = c == '<' ? 1 : 0;
+                }
+                break;
+            default:
+                throw new IllegalStateException("unknown state " + state);
+        }
+    }
+
+    private void startTag() {
+        tagRules = 0;
+        for (int i = 0; i < ruleTags.length; i++) {
+            char[] ruleTag = ruleTags[i];
+            if (ruleTag.length == 1 && ruleTag[0] == '*' || nameEquals(tagName, tagNameLength, ruleTag)) {
+                tagRules |= 1 << i;
+            }
+        }
+        baseTag = nameEquals(tagName, tagNameLength, BASE);
+    }
+
+    private void endStartTag() {
+        if (nameEquals(tagName, tagNameLength, SCRIPT_END, 2)) {
+            enterRawText(SCRIPT_END);
+        } else if (nameEquals(tagName, tagNameLength, STYLE_END, 2)) {
+            enterRawText(STYLE_END);
+        } else {
+            state = DATA;
+        }
+    }
+
+    private void enterRawText(char[] end) {
+        rawTextEnd = end;
+        rawTextMatched = 0;
+        state = RAW_TEXT;
+    }
+
+    private void startValue() {
+        valueLength = 0;
+        valueHasNonAscii = false;
+        capturing = baseTag && nameEquals(attributeName, attributeNameLength, HREF);
+        for (int i = 0; !capturing && i < ruleAttributes.length; i++) {
+            capturing = (tagRules & 1 << i) != 0 && nameEquals(attributeName, attributeNameLength, ruleAttributes[i]);
+        }
+    }
+
+    private void appendValue(char c) {
+        if (!capturing) {
+            return;
+        }
+        if (valueLength == MAX_VALUE_LENGTH) {
+            capturing = false;
+            return;
+        }
+        if (valueLength == value.length) {
+            char[] grown = new char[Math.min(value.length * 2, MAX_VALUE_LENGTH)];
+            System.arraycopy(value, 0, grown, 0, valueLength);
+            value = grown;
+        }
+        if (c >= 0x80) {
+            valueHasNonAscii = true;
+        }
+        value[valueLength++] = c;
+    }
+
+    private void endValue() {
+        if (!capturing) {
+            return;
+        }
+        capturing = false;
+        String link = decodeValue();
+        if (link.isEmpty() || link.charAt(0) == '#') {
+            return;
+        }
+        if (baseTag) {
+            URL url = resolve(link);
+            if (url != null) {
+                baseUrl = url;
+            }
+            return;
+        }
+        String scheme = scheme(link);
+        String resolved;
+        if (scheme != null) {
+            //绝对地址不需要补全
+            resolved = "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme) ? link : null;
+        } else {
+            URL url = resolve(link);
+            resolved = url == null ? null : url.toExternalForm();
+        }
+        if (resolved != null) {
+            linkConsumer.accept(encodeIllegal(resolved));
+        }
+    }
+
+    /**
+     * 解码字节和字符引用，并去掉首尾的空白和中间的换行、制表符。
+     */
+    private String decodeValue() {
+        int start = 0;
+        int end = valueLength;
+        while (start < end && isWhitespace(value[start])) start++;
+        while (end > start && isWhitespace(value[end - 1])) end--;
+
+        String text;
+        if (byteMode && valueHasNonAscii) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = (byte) value[i];
+            }
+            text = new String(bytes, charset);
+        } else {
+            text = new String(value, start, end - start);
+        }
+        if (text.indexOf('&') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0 && text.indexOf('\t') < 0) {
+            return text;
+        }
+        StringBuilder decoded = new StringBuilder(text.length());
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\t') {
+                continue;
+            }
+            if (c == '&') {
+                int semicolon = text.indexOf(';', i + 1);
+                if (semicolon > i + 1 && semicolon - i <= 10) {
+                    int reference = characterReference(text, i + 1, semicolon);
+                    if (reference >= 0) {
+                        decoded.appendCodePoint(reference);
+                        i = semicolon;
+                        continue;
+                    }
+                }
+            }
+            decoded.append(c);
+        }
+        return decoded.toString();
+    }
+
+    private static int characterReference(String text, int from, int to) {
+        if (text.charAt(from) == '#') {
+            boolean hex = from + 1 < to && (text.charAt(from + 1) == 'x' || text.charAt(from + 1) == 'X');
+            try {
+                int codePoint = Integer.parseInt(text.substring(from + (hex ? 2 : 1), to), hex ? 16 : 10);
+                return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        switch (text.substring(from, to)) {
+            case "amp":
+                return '&';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            default:
+                return -1;
+        }
+    }
+
+    //与Jsoup的absUrl相同，只有查询参数的链接保留页面的文件名
+    private URL resolve(String link) {
+        try {
+            return baseUrl == null ? new URL(link) : StringUtil.resolve(baseUrl, link);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static URL toUrl(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            return new URL(url);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 链接的协议，相对地址返回<code>null</code>。
+     */
+    private static String scheme(String link) {
+        for (int i = 0, length = link.length(); i < length; i++) {
+            char c = link.charAt(i);
+            if (c == ':') {
+                return i > 0 ? link.substring(0, i) : null;
+            }
+            boolean valid = isLetter(c) || i > 0 && (c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.');
+            if (!valid) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 对网址中不允许出现的字符（空格、非ASCII字符等）按UTF-8进行百分号编码。
+     */
+    static String encodeIllegal(String url) {
+        int i = 0;
+        int length = url.length();
+        while (i < length && isLegal(url.charAt(i))) i++;
+        if (i == length) {
+            return url;
+        }
+        StringBuilder encoded = new StringBuilder(length + 16).append(url, 0, i);
+        for (; i < length; i++) {
+            char c = url.charAt(i);
+            if (isLegal(c)) {
+                encoded.append(c);
+                continue;
+            }
+            int end = Character.isHighSurrogate(c) && i + 1 < length ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit(b >> 4 & 0xf, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+            }
+            i = end - 1;
+        }
+        return encoded.toString();
+    }
+
+    private static boolean isLegal(char c) {
+        return c > ' ' && c < 0x7f && c != '"' && c != '<' && c != '>' && c != '\\' && c != '^'
+                && c != '`' && c != '{' && c != '|' && c != '}';
+    }
+
+    private void appendTagName(char c) {
+        if (tagNameLength < MAX_NAME_LENGTH) {
+            tagName[tagNameLength] = toLowerCase(c);
+        }
+        tagNameLength++;
+    }
+
+    private void appendAttributeName(char c) {
+        if (attributeNameLength < MAX_NAME_LENGTH) {
+            attributeName[attributeNameLength] = toLowerCase(c);
+        }
+        attributeNameLength++;
+    }
+
+    private static boolean nameEquals(char[] name, int length, char[] expected) {
+        return nameEquals(name, length, expected, 0);
+    }
+
+    /**
+     * 比较<code>name</code>与<code>expected</code>从<code>from</code>开始的部分。
+     */
+    private static boolean nameEquals(char[] name, int length, char[] expected, int from) {
+        if (length != expected.length - from) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != expected[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
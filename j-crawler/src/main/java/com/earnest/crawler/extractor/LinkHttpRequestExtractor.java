@@ -0,0 +1,95 @@
+package com.earnest.crawler.extractor;
+
+import com.earnest.crawler.HttpResponseResult;
+import com.earnest.crawler.StringResponseResult;
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 使用{@link HtmlLinkTokenizer}单遍扫描页面提取链接，不构建DOM。
+ * <p>
+ * 流式模式下没有解码的内容直接按字节分块扫描，只解码提取到的链接，不产生整个页面的字符串。
+ */
+@Getter
+public class LinkHttpRequestExtractor extends AbstractHttpRequestExtractor {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String[] tagAttributes;
+
+    private final Pattern urlFilter;
+
+    /**
+     * @param urlFilter     只保留能够匹配的链接，为空时保留所有链接。
+     * @param tagAttributes 提取的标签和属性，为空时使用{@link HtmlLinkTokenizer#DEFAULT_TAG_ATTRIBUTES}。
+     */
+    public LinkHttpRequestExtractor(Pattern urlFilter, String... tagAttributes) {
+        this.tagAttributes = tagAttributes == null || tagAttributes.length == 0 ?
+                HtmlLinkTokenizer.DEFAULT_TAG_ATTRIBUTES : tagAttributes.clone();
+        this.urlFilter = urlFilter;
+        //检查格式
+        new HtmlLinkTokenizer(null, null, url -> {
+        }, this.tagAttributes);
+    }
+
+    public LinkHttpRequestExtractor(String... tagAttributes) {
+        this(null, tagAttributes);
+    }
+
+
+    @Override
+    protected Set<String> extractUrl(HttpResponseResult<String> responseResult) {
+        String baseUri = null;
+        if (responseResult.getHttpRequest() != null) {
+            baseUri = responseResult.getHttpRequest().getURI().toString();
+        }
+        Set<String> urls = new LinkedHashSet<>();
+        Consumer<String> linkConsumer = urlFilter == null ? urls::add : url -> {
+            if (urlFilter.matcher(url).find()) {
+                urls.add(url);
+            }
+        };
+
+        if (responseResult instanceof StringResponseResult) {
+            StringResponseResult stringResponseResult = (StringResponseResult) responseResult;
+            Charset charset = stringResponseResult.getBodyCharset();
+            if (stringResponseResult.getBody() != null && isAsciiCompatible(charset)) {
+                //流式模式下直接按字节扫描
+                HtmlLinkTokenizer tokenizer = new HtmlLinkTokenizer(baseUri, charset, linkConsumer, tagAttributes);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try (InputStream inputStream = stringResponseResult.openStream()) {
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        tokenizer.feed(buffer, 0, read);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return urls;
+            }
+        }
+
+        String content = responseResult.getContent();
+        if (content != null) {
+            new HtmlLinkTokenizer(baseUri, null, linkConsumer, tagAttributes).feed(content);
+        }
+        return urls;
+    }
+
+    /**
+     * UTF-16和UTF-32中的ASCII字符不是单个字节，不能按字节扫描。
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return !name.startsWith("UTF-16") && !name.startsWith("UTF-32");
+    }
+}
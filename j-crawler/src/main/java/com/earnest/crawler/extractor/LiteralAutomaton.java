@@ -0,0 +1,127 @@
+package com.earnest.crawler.extractor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * 同时查找多个字面量的Aho-Corasick自动机，一遍扫描找到所有字面量出现的位置。
+ * <p>
+ * 只处理ASCII字符并且不区分大小写，转移表预先计算为完整的DFA，每个字符只需要查一次表。
+ * 不是ASCII的字符使自动机回到初始状态，因此字面量中不能包含这些字符。
+ */
+final class LiteralAutomaton {
+
+    private static final int ALPHABET = 128;
+
+    //每个状态的转移
+    private final int[][] transitions;
+
+    //每个状态结束的字面量，包括后缀链接上的
+    private final int[][] outputs;
+
+    private final int[] lengths;
+
+    /**
+     * 找到字面量时调用。
+     */
+    interface Hit {
+        /**
+         * @param literal 字面量的序号。
+         * @param start   字面量在文本中开始的位置。
+         * @param end     字面量在文本中结束的位置（不包含）。
+         */
+        void hit(int literal, int start, int end);
+    }
+
+    LiteralAutomaton(List<String> literals) {
+        List<int[]> gotos = new ArrayList<>();
+        List<int[]> ends = new ArrayList<>();
+        gotos.add(newState());
+        ends.add(new int[0]);
+        lengths = new int[literals.size()];
+
+        for (int i = 0; i < literals.size(); i++) {
+            String literal = literals.get(i);
+            lengths[i] = literal.length();
+            int state = 0;
+            for (int j = 0; j < literal.length(); j++) {
+                int c = toLowerCase(literal.charAt(j));
+                if (c >= ALPHABET) {
+                    throw new IllegalArgumentException("literal is not ascii:" + literal);
+                }
+                if (gotos.get(state)[c] < 0) {
+                    gotos.get(state)[c] = gotos.size();
+                    gotos.add(newState());
+                    ends.add(new int[0]);
+                }
+                state = gotos.get(state)[c];
+            }
+            ends.set(state, append(ends.get(state), i));
+        }
+
+        //按广度优先计算后缀链接，并补全转移
+        int[] failures = new int[gotos.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        int[] root = gotos.get(0);
+        for (int c = 0; c < ALPHABET; c++) {
+            if (root[c] < 0) {
+                root[c] = 0;
+            } else {
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] transition = gotos.get(state);
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = transition[c];
+                int fallback = gotos.get(failures[state])[c];
+                if (next < 0) {
+                    transition[c] = fallback;
+                } else {
+                    failures[next] = fallback;
+                    for (int literal : ends.get(fallback)) {
+                        ends.set(next, append(ends.get(next), literal));
+                    }
+                    queue.add(next);
+                }
+            }
+        }
+        this.transitions = gotos.toArray(new int[0][]);
+        this.outputs = ends.toArray(new int[0][]);
+    }
+
+    int size() {
+        return lengths.length;
+    }
+
+    void scan(CharSequence text, Hit hit) {
+        int state = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            int c = toLowerCase(text.charAt(i));
+            state = c < ALPHABET ? transitions[state][c] : 0;
+            for (int literal : outputs[state]) {
+                hit.hit(literal, i + 1 - lengths[literal], i + 1);
+            }
+        }
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    private static int toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
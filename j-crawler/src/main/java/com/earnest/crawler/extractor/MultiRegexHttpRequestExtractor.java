@@ -0,0 +1,423 @@
+package com.earnest.crawler.extractor;
+
+import com.earnest.crawler.HttpResponseResult;
+import com.earnest.crawler.RequestAttributes;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.jsoup.helper.StringUtil;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 使用多个正则表达式提取链接，每个页面只扫描一遍，提取到的请求通过{@link RequestAttributes#setTag(HttpUriRequest, String)}
+ * 标记为命中的规则，调度和下载时可以按标签区分。
+ * <p>
+ * 先从每个表达式中取出匹配时一定出现的最长字面量，用{@link LiteralAutomaton}一遍找到所有字面量出现的位置，
+ * 只在字面量所在的片段（不含空白、引号和尖括号的一段文本）中执行对应的表达式，片段外的文本对边界和环视依然可见。
+ * 以下表达式依然扫描整个页面，结果与单独使用每个表达式相同：
+ * <ul>
+ * <li>取不出字面量，例如顶层有<code>|</code></li>
+ * <li>匹配的结果可能含有空白、引号或尖括号，例如含有这些字符、<code>.</code>、<code>[^/]</code>、<code>\S</code></li>
+ * <li>含有环视</li>
+ * </ul>
+ * <p>
+ * 同一个链接命中多条规则时使用先添加的规则的标签。
+ * <blockquote>
+ * 例:
+ * <pre>
+ *     Map&lt;String, String&gt; rules = new LinkedHashMap&lt;&gt;();
+ *     rules.put("album", "/a_\\w+\\.html");
+ *     rules.put("list", "/www/4/[\\d-]+\\.html");
+ *     new MultiRegexHttpRequestExtractor(rules);
+ * </pre>
+ * </blockquote>
+ */
+@Getter
+public class MultiRegexHttpRequestExtractor extends AbstractHttpRequestExtractor {
+
+    //字面量太短时几乎处处命中，不如直接扫描
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    private final String[] tags;
+
+    private final Pattern[] patterns;
+
+    //有字面量的规则的序号，与自动机中字面量的序号对应
+    private final int[] literalRules;
+
+    //没有字面量或者匹配结果可能跨片段的规则的序号
+    private final int[] scanRules;
+
+    private final LiteralAutomaton automaton;
+
+    /**
+     * @param taggedPatterns 规则的标签和正则表达式，按添加的顺序决定优先级。
+     */
+    public MultiRegexHttpRequestExtractor(Map<String, String> taggedPatterns) {
+        Assert.isTrue(!CollectionUtils.isEmpty(taggedPatterns), "taggedPatterns is empty");
+        int size = taggedPatterns.size();
+        this.tags = new String[size];
+        this.patterns = new Pattern[size];
+        List<String> literals = new ArrayList<>();
+        List<Integer> literalRules = new ArrayList<>();
+        List<Integer> scanRules = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, String> taggedPattern : taggedPatterns.entrySet()) {
+            Assert.hasText(taggedPattern.getKey(), "tag is empty or null");
+            Assert.hasText(taggedPattern.getValue(), "pattern of " + taggedPattern.getKey() + " is empty or null");
+            tags[i] = taggedPattern.getKey();
+            patterns[i] = Pattern.compile(taggedPattern.getValue());
+            String literal = requiredLiteral(taggedPattern.getValue());
+            if (literal != null && literal.length() >= MIN_LITERAL_LENGTH && !canMatchDelimiter(taggedPattern.getValue())) {
+                literals.add(literal);
+                literalRules.add(i);
+            } else {
+                scanRules.add(i);
+            }
+            i++;
+        }
+        this.literalRules = literalRules.stream().mapToInt(Integer::intValue).toArray();
+        this.scanRules = scanRules.stream().mapToInt(Integer::intValue).toArray();
+        this.automaton = new LiteralAutomaton(literals);
+    }
+
+
+    @Override
+    protected Set<String> extractUrl(HttpResponseResult<String> responseResult) {
+        return extractTaggedUrl(responseResult).keySet();
+    }
+
+    @Override
+    protected Map<String, String> extractTaggedUrl(HttpResponseResult<String> responseResult) {
+        String content = responseResult.getContent();
+        Map<String, String> taggedUrls = new LinkedHashMap<>();
+        if (StringUtils.isEmpty(content)) {
+            return taggedUrls;
+        }
+        //链接命中的规则中序号最小的
+        Map<String, Integer> urlRules = new LinkedHashMap<>();
+
+        if (automaton.size() != 0) {
+            Matcher[] matchers = new Matcher[patterns.length];
+            //每条规则已经扫描到的位置，同一片段中多次出现的字面量只扫描一次
+            int[] scanned = new int[patterns.length];
+            automaton.scan(content, (literal, start, end) -> {
+                int rule = literalRules[literal];
+                if (start < scanned[rule]) {
+                    return;
+                }
+                int from = start;
+                while (from > 0 && !isDelimiter(content.charAt(from - 1))) from--;
+                int to = end;
+                while (to < content.length() && !isDelimiter(content.charAt(to))) to++;
+                scanned[rule] = to;
+
+                Matcher matcher = matchers[rule];
+                if (matcher == null) {
+                    matcher = matchers[rule] = patterns[rule].matcher(content)
+                            .useAnchoringBounds(false)
+                            .useTransparentBounds(true);
+                }
+                matcher.region(from, to);
+                while (matcher.find()) {
+                    urlRules.merge(matcher.group(), rule, Math::min);
+                }
+            });
+        }
+        for (int rule : scanRules) {
+            Matcher matcher = patterns[rule].matcher(content);
+            while (matcher.find()) {
+                urlRules.merge(matcher.group(), rule, Math::min);
+            }
+        }
+
+        String baseUri = responseResult.getHttpRequest().getURI().toString();
+        urlRules.forEach((url, rule) -> {
+            if (!StringUtils.startsWithAny(url, "http", "https")) {
+                //将url进行补全
+                url = StringUtil.resolve(baseUri, url);
+            }
+            taggedUrls.putIfAbsent(url, tags[rule]);
+        });
+        return taggedUrls;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '"' || c == '\'' || c == '<' || c == '>';
+    }
+
+    /**
+     * 取出表达式匹配时一定出现的最长的一段字面量，只分析顶层的普通字符，
+     * 字符类、分组和可以出现0次的字符都会截断字面量。
+     *
+     * @return 顶层有<code>|</code>或没有字面量时返回<code>null</code>。
+     */
+    static String requiredLiteral(String regex) {
+        String longest = "";
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        int length = regex.length();
+        while (i < length) {
+            char c = regex.charAt(i);
+            //当前的原子是否是一个字面字符
+            char literal = 0;
+            boolean isLiteral = false;
+            if (c == '\\' && i + 1 < length) {
+                char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    int quoteEnd = regex.indexOf("\\E", i + 2);
+                    quoteEnd = quoteEnd < 0 ? length : quoteEnd;
+                    String quoted = regex.substring(i + 2, quoteEnd);
+                    i = Math.min(quoteEnd + 2, length);
+                    //引用的最后一个字符可能被量词修饰
+                    for (int j = 0; j < quoted.length() - 1; j++) {
+                        if (quoted.charAt(j) < 0x80) {
+                            current.append(quoted.charAt(j));
+                        } else {
+                            if (current.length() > longest.length()) {
+                                longest = current.toString();
+                            }
+                            current.setLength(0);
+                        }
+                    }
+                    if (quoted.isEmpty()) {
+                        continue;
+                    }
+                    literal = quoted.charAt(quoted.length() - 1);
+                    isLiteral = true;
+                } else if (Character.isLetterOrDigit(next)) {
+                    //\d、\w、\p{...}等字符类和反向引用
+                    i = skipEscape(regex, i);
+                } else {
+                    literal = next;
+                    isLiteral = true;
+                    i += 2;
+                }
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                i = skipGroup(regex, i);
+            } else if (c == '|') {
+                return null;
+            } else if (c == '.' || c == '^' || c == '$' || c == '*' || c == '+' || c == '?' || c == '{') {
+                i++;
+            } else {
+                literal = c;
+                isLiteral = true;
+                i++;
+            }
+
+            //量词
+            boolean optional = false;
+            boolean quantified = false;
+            if (i < length) {
+                char quantifier = regex.charAt(i);
+                if (quantifier == '?' || quantifier == '*') {
+                    optional = quantified = true;
+                    i++;
+                } else if (quantifier == '+') {
+                    quantified = true;
+                    i++;
+                } else if (quantifier == '{') {
+                    int close = regex.indexOf('}', i);
+                    if (close > 0) {
+                        quantified = true;
+                        optional = regex.startsWith("{0", i) && (close == i + 2 || regex.charAt(i + 2) == ',');
+                        i = close + 1;
+                    }
+                }
+                //懒惰和占有的量词
+                if (quantified && i < length && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    i++;
+                }
+            }
+
+            if (isLiteral && !optional && literal < 0x80) {
+                current.append(literal);
+            }
+            if (!isLiteral || quantified || literal >= 0x80) {
+                if (current.length() > longest.length()) {
+                    longest = current.toString();
+                }
+                current.setLength(0);
+            }
+        }
+        if (current.length() > longest.length()) {
+            longest = current.toString();
+        }
+        return longest.isEmpty() ? null : longest;
+    }
+
+    /**
+     * 表达式匹配的结果是否可能含有空白、引号或尖括号，或者表达式含有环视。只做保守的判断，不确定时返回<code>true</code>。
+     */
+    static boolean canMatchDelimiter(String regex) {
+        int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    int quoteEnd = regex.indexOf("\\E", i + 2);
+                    quoteEnd = quoteEnd < 0 ? length : quoteEnd;
+                    for (int j = i + 2; j < quoteEnd; j++) {
+                        if (isDelimiter(regex.charAt(j))) {
+                            return true;
+                        }
+                    }
+                    i = quoteEnd + 2;
+                } else if (Character.isLetterOrDigit(next)) {
+                    //只有单词、数字、边界和反向引用不会匹配到分隔符
+                    if ("wdbBAzZGk123456789".indexOf(next) < 0) {
+                        return true;
+                    }
+                    i = skipEscape(regex, i);
+                } else if (isDelimiter(next)) {
+                    return true;
+                } else {
+                    i += 2;
+                }
+            } else if (c == '[') {
+                int end = skipClass(regex, i);
+                if (classCanMatchDelimiter(regex, i, end)) {
+                    return true;
+                }
+                i = end;
+            } else if (regex.startsWith("(?", i)) {
+                if (regex.startsWith("(?=", i) || regex.startsWith("(?!", i)
+                        || regex.startsWith("(?<=", i) || regex.startsWith("(?<!", i)) {
+                    return true;
+                }
+                //命名分组的名称中有尖括号
+                int nameEnd = regex.startsWith("(?<", i) ? regex.indexOf('>', i) : -1;
+                i = nameEnd < 0 ? i + 2 : nameEnd + 1;
+            } else if (c == '.' || isDelimiter(c)) {
+                return true;
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    //[start, end)是一个字符类
+    private static boolean classCanMatchDelimiter(String regex, int start, int end) {
+        int i = start + 1;
+        int last = end - 1;
+        if (i < last && regex.charAt(i) == '^') {
+            return true;
+        }
+        //上一个字符，作为范围的起点
+        int previous = -1;
+        while (i < last) {
+            char c = regex.charAt(i);
+            char value;
+            if (c == '\\' && i + 1 < last) {
+                char next = regex.charAt(i + 1);
+                i += 2;
+                if (next == 'w' || next == 'd') {
+                    previous = -1;
+                    continue;
+                }
+                if (Character.isLetterOrDigit(next)) {
+                    return true;
+                }
+                value = next;
+            } else if (c == '[' || regex.startsWith("&&", i)) {
+                //嵌套和交集
+                return true;
+            } else if (c == '-' && previous >= 0 && i + 1 < last) {
+                char high = regex.charAt(i + 1);
+                if (high == '\\') {
+                    if (i + 2 >= last || Character.isLetterOrDigit(regex.charAt(i + 2))) {
+                        return true;
+                    }
+                    high = regex.charAt(i + 2);
+                    i += 3;
+                } else {
+                    i += 2;
+                }
+                for (int ch = previous; ch <= high; ch++) {
+                    if (isDelimiter((char) ch)) {
+                        return true;
+                    }
+                }
+                previous = -1;
+                continue;
+            } else {
+                value = c;
+                i++;
+            }
+            if (isDelimiter(value)) {
+                return true;
+            }
+            previous = value;
+        }
+        return false;
+    }
+
+    private static int skipEscape(String regex, int i) {
+        char next = regex.charAt(i + 1);
+        int end = i + 2;
+        if ((next == 'p' || next == 'P' || next == 'x') && end < regex.length() && regex.charAt(end) == '{'
+                || next == 'k' && end < regex.length() && regex.charAt(end) == '<') {
+            int close = regex.indexOf(next == 'k' ? '>' : '}', end);
+            return close < 0 ? regex.length() : close + 1;
+        }
+        if (next == 'x') {
+            return Math.min(end + 2, regex.length());
+        }
+        if (next == 'u') {
+            return Math.min(end + 4, regex.length());
+        }
+        if (next == 'c') {
+            return Math.min(end + 1, regex.length());
+        }
+        return end;
+    }
+
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+        for (int j = i; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '[') {
+                depth++;
+                //类开头的]是普通字符
+                if (j + 1 < regex.length() && regex.charAt(j + 1) == '^') j++;
+                if (j + 1 < regex.length() && regex.charAt(j + 1) == ']') j++;
+            } else if (c == ']' && --depth == 0) {
+                return j + 1;
+            }
+        }
+        return regex.length();
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        for (int j = i; j < regex.length(); j++) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '[') {
+                j = skipClass(regex, j) - 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return j + 1;
+            }
+        }
+        return regex.length();
+    }
+}
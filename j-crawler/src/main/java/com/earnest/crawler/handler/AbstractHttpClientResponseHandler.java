@@ -2,63 +2,57 @@ package com.earnest.crawler.handler;
 
 import com.earnest.crawler.HttpClientResponseResult;
 import com.earnest.crawler.HttpResponseResult;
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.NameValuePair;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
+import org.springframework.util.Assert;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
+/**
+ * 请求和cookie从{@link HttpContext}中获取，每个请求需要使用单独的上下文和处理器，
+ * 多个请求共享上下文时得到的请求可能是其他线程的。
+ */
 public abstract class AbstractHttpClientResponseHandler<T> implements ResponseHandler<HttpResponseResult<T>> {
 
-    @Override
-    public HttpResponseResult<T> handleResponse(HttpResponse response) throws IOException {
-
-        HttpClientResponseResult<T> responseResult = new HttpClientResponseResult<>();
-
-        Map<String, String> headers = new LinkedHashMap<>();
-
-        Arrays.stream(response.getAllHeaders())
-                .forEach(header -> headers.put(header.getName(), header.getValue()));
-
-        responseResult.setHeaders(headers);
-
-        responseResult.setStatus(response.getStatusLine().getStatusCode());
-
-        responseResult.setSuccess("OK".equalsIgnoreCase(response.getStatusLine().getReasonPhrase()));
-
-        HttpEntity entity = response.getEntity();
-
-        // set charset
-        Arrays.stream(entity.getContentType().getElements())
-                .map(e -> e.getParameterByName("charset"))
-                .findAny()
-                .map(NameValuePair::getValue).ifPresent(responseResult::setCharset);
+    private final HttpContext httpContext;
 
-        //set entity
-
-        responseResult.setContent(getContent(response));
-
-
-        //set httpUriRequest
-        HttpUriRequest httpUriRequest = HttpClientResponseContextHolder.getHttpUriRequest(response);
+    /**
+     * @param httpContext 执行本次请求时传入的上下文。
+     */
+    protected AbstractHttpClientResponseHandler(HttpContext httpContext) {
+        Assert.notNull(httpContext, "httpContext is null");
+        this.httpContext = httpContext;
+    }
 
-        responseResult.setHttpRequest(httpUriRequest);
+    /**
+     * 不传入上下文时，结果中没有请求和cookie。
+     */
+    protected AbstractHttpClientResponseHandler() {
+        this(new BasicHttpContext());
+    }
 
-        if (!responseResult.isSuccess()) {
-            EntityUtils.consume(response.getEntity());
-        }
-        if (response instanceof CloseableHttpResponse) {
-            ((CloseableHttpResponse) response).close();
+    @Override
+    public HttpResponseResult<T> handleResponse(HttpResponse response) throws IOException {
+        try {
+            HttpClientResponseResult<T> responseResult = HttpClientResponseAdapter.adapt(new HttpClientResponseResult<>(), response, httpContext);
+
+            //set entity
+            if (response.getEntity() != null) {
+                responseResult.setContent(getContent(response));
+            }
+
+            return responseResult;
+        } finally {
+            //无论是否成功都归还连接
+            EntityUtils.consumeQuietly(response.getEntity());
+            if (response instanceof CloseableHttpResponse) {
+                ((CloseableHttpResponse) response).close();
+            }
         }
-
-        return responseResult;
     }
 
 
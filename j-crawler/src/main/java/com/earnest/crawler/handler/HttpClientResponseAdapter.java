@@ -0,0 +1,227 @@
+package com.earnest.crawler.handler;
+
+import com.earnest.crawler.CharsetDetector;
+import com.earnest.crawler.HttpClientResponseResult;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.cookie.CookieOrigin;
+import org.apache.http.cookie.CookieSpec;
+import org.apache.http.impl.cookie.DefaultCookieSpec;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+import java.net.URI;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 将{@link HttpResponse}中除响应体以外的部分转换到{@link HttpClientResponseResult}中：请求、状态、响应头、字符集和cookie。
+ * <p>
+ * 对应的请求从{@link HttpContext}中获取，不使用全局的映射；响应头只保存引用，cookie在收到响应时复制，
+ * 第一次遍历时才转换为<code>Map</code>。
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class HttpClientResponseAdapter {
+
+    /**
+     * 在{@link HttpContext}中保存原始请求的属性名。
+     */
+    public static final String HTTP_URI_REQUEST = "com.earnest.crawler.http-uri-request";
+
+    public static void setHttpUriRequest(HttpContext httpContext, HttpUriRequest httpUriRequest) {
+        httpContext.setAttribute(HTTP_URI_REQUEST, httpUriRequest);
+    }
+
+    /**
+     * 获取{@link #setHttpUriRequest(HttpContext, HttpUriRequest)}保存的请求，没有时使用<code>HttpClient</code>执行的请求，
+     * 发生跳转时为最后一次请求。
+     * <p>
+     * 上下文只能用于一个请求，多个线程共享同一个上下文时得到的可能是其他线程的请求。
+     */
+    public static HttpUriRequest getHttpUriRequest(HttpContext httpContext) {
+        if (httpContext == null) {
+            return null;
+        }
+        Object httpUriRequest = httpContext.getAttribute(HTTP_URI_REQUEST);
+        if (httpUriRequest instanceof HttpUriRequest) {
+            return (HttpUriRequest) httpUriRequest;
+        }
+        HttpRequest executedRequest = HttpCoreContext.adapt(httpContext).getRequest();
+        if (executedRequest instanceof HttpRequestWrapper) {
+            executedRequest = ((HttpRequestWrapper) executedRequest).getOriginal();
+        }
+        return executedRequest instanceof HttpUriRequest ? (HttpUriRequest) executedRequest : null;
+    }
+
+    public static <R extends HttpClientResponseResult<?>> R adapt(R responseResult, HttpResponse response, HttpContext httpContext) {
+        return adapt(responseResult, response, getHttpUriRequest(httpContext), httpContext);
+    }
+
+    public static <R extends HttpClientResponseResult<?>> R adapt(R responseResult, HttpResponse response,
+                                                                   HttpUriRequest httpUriRequest, HttpContext httpContext) {
+        //set httpUriRequest
+        responseResult.setHttpRequest(httpUriRequest);
+
+        responseResult.setHeaders(new HeaderMap(response.getAllHeaders()));
+
+        responseResult.setStatus(response.getStatusLine().getStatusCode());
+
+        String reasonPhrase = response.getStatusLine().getReasonPhrase();
+
+        responseResult.setSuccess("OK".equalsIgnoreCase(reasonPhrase));
+        responseResult.setReason(reasonPhrase);
+
+        // set charset
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            responseResult.setCharset(CharsetDetector.declaredCharset(entity));
+        }
+
+        //set cookies
+        if (httpContext != null) {
+            HttpClientContext httpClientContext = HttpClientContext.adapt(httpContext);
+            CookieStore cookieStore = httpClientContext.getCookieStore();
+            if (cookieStore != null) {
+                CookieOrigin cookieOrigin = httpClientContext.getCookieOrigin();
+                CookieSpec cookieSpec = httpClientContext.getCookieSpec();
+                if (cookieOrigin == null && httpUriRequest != null) {
+                    cookieOrigin = cookieOrigin(httpUriRequest.getURI());
+                }
+                responseResult.setCookies(new CookieMap(cookieStore.getCookies(), cookieOrigin,
+                        cookieSpec == null ? new DefaultCookieSpec() : cookieSpec, new Date()));
+            }
+        }
+
+        return responseResult;
+    }
+
+    /**
+     * 上下文中没有执行请求时的来源时，根据请求的地址生成。
+     */
+    private static CookieOrigin cookieOrigin(URI uri) {
+        if (uri == null || uri.getHost() == null) {
+            return null;
+        }
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() >= 0 ? uri.getPort() : secure ? 443 : 80;
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        return new CookieOrigin(uri.getHost(), port, path, secure);
+    }
+
+
+    /**
+     * 只读的视图，第一次遍历时才转换为<code>Map</code>。
+     */
+    private abstract static class LazyMap extends AbstractMap<String, String> {
+
+        private volatile Map<String, String> map;
+
+        abstract Map<String, String> load();
+
+        Map<String, String> map() {
+            Map<String, String> map = this.map;
+            if (map == null) {
+                map = Collections.unmodifiableMap(load());
+                this.map = map;
+            }
+            return map;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return map().entrySet();
+        }
+    }
+
+    /**
+     * 响应头的视图，名称不区分大小写，同名的响应头取最后一个。
+     */
+    private static final class HeaderMap extends LazyMap {
+
+        private final Header[] headers;
+
+        HeaderMap(Header[] headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        public String get(Object name) {
+            if (!(name instanceof String)) {
+                return null;
+            }
+            for (int i = headers.length - 1; i >= 0; i--) {
+                if (headers[i].getName().equalsIgnoreCase((String) name)) {
+                    return headers[i].getValue();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return get(name) != null;
+        }
+
+        @Override
+        Map<String, String> load() {
+            Map<String, String> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Header header : headers) {
+                map.put(header.getName(), header.getValue());
+            }
+            return map;
+        }
+    }
+
+    /**
+     * 收到响应时cookieStore中的cookie，只包含发送到请求地址的未过期的cookie，第一次使用时过滤，同名的cookie取最后一个。
+     */
+    private static final class CookieMap extends LazyMap {
+
+        private final List<Cookie> cookies;
+        //为空时不过滤
+        private final CookieOrigin cookieOrigin;
+
+        private final CookieSpec cookieSpec;
+
+        private final Date date;
+
+        CookieMap(List<Cookie> cookies, CookieOrigin cookieOrigin, CookieSpec cookieSpec, Date date) {
+            this.cookies = cookies;
+            this.cookieOrigin = cookieOrigin;
+            this.cookieSpec = cookieSpec;
+            this.date = date;
+        }
+
+        @Override
+        public String get(Object name) {
+            return map().get(name);
+        }
+
+        @Override
+        Map<String, String> load() {
+            Map<String, String> map = new LinkedHashMap<>();
+            for (Cookie cookie : cookies) {
+                if (cookie.isExpired(date) || (cookieOrigin != null && !cookieSpec.match(cookie, cookieOrigin))) {
+                    continue;
+                }
+                map.put(cookie.getName(), cookie.getValue());
+            }
+            return map;
+        }
+    }
+}
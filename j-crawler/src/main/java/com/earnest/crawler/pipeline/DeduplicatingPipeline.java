@@ -0,0 +1,50 @@
+package com.earnest.crawler.pipeline;
+
+import com.alibaba.fastjson.util.IOUtils;
+import com.earnest.crawler.StringResponseResult;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+
+/**
+ * 跳过内容与已经处理过的页面相同或相似的结果，例如超出最后一页的分页。
+ * 在{@link Pipeline}之前判断，重复的页面不会被管道解析。
+ * <p>
+ * 只用于单独组装管道，{@link com.earnest.crawler.builder.SpiderBuilder}在提取链接之前判断，完全相同的页面也不会被提取器解析。
+ *
+ * @see NearDuplicateDetector
+ */
+@Slf4j
+@Getter
+public class DeduplicatingPipeline implements Pipeline, Closeable {
+
+    private final Pipeline pipeline;
+
+    private final NearDuplicateDetector detector;
+
+    public DeduplicatingPipeline(Pipeline pipeline, NearDuplicateDetector detector) {
+        Assert.notNull(pipeline, "pipeline is null");
+        Assert.notNull(detector, "detector is null");
+        this.pipeline = pipeline;
+        this.detector = detector;
+    }
+
+    @Override
+    public void pipe(StringResponseResult result) {
+        if (detector.isDuplicate(result)) {
+            log.debug("Skip duplicate content of {}", result.getHttpRequest().getURI());
+            return;
+        }
+        pipeline.pipe(result);
+    }
+
+    @Override
+    public void close() {
+        log.info("Duplicate content {}", detector);
+        if (pipeline instanceof Closeable) {
+            IOUtils.close((Closeable) pipeline);
+        }
+    }
+}
@@ -4,12 +4,14 @@ import com.earnest.crawler.HttpClientResponseResult;
 import com.earnest.crawler.HttpResponseResult;
 import com.earnest.crawler.StringResponseResult;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.util.Assert;
 
 import java.util.function.Consumer;
 
+/**
+ * 将解析后的页面交给<code>pipe</code>，页面与提取器共享，只能读取，需要修改时使用{@link Document#clone()}。
+ */
 public class DocumentPipeline implements Pipeline {
 
     private final Consumer<HttpResponseResult<Document>> pipe;
@@ -26,13 +28,15 @@ public class DocumentPipeline implements Pipeline {
         HttpUriRequest httpRequest = result.getHttpRequest();
         String url = "";
         if (httpRequest != null) {
-            url = httpRequest.getRequestLine().getUri();
+            //与提取器使用相同的网址，共享解析后的页面
+            url = httpRequest.getURI().toString();
         }
 
         HttpClientResponseResult<Document> responseResult = new HttpClientResponseResult<>(result);
 
 
-        responseResult.setContent(Jsoup.parse(result.getContent(), url));
+        //提取器已经解析过时不再重复解析
+        responseResult.setContent(result.parse(url));
 
 
         pipe.accept(responseResult);
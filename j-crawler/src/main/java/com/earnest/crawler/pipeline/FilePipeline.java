@@ -45,7 +45,12 @@ public class FilePipeline implements Pipeline {
         FileOutputStream outputStream = null;
         try {
             outputStream = new FileOutputStream(fileName);
-            StreamUtils.copy(result.getContent(), Charset.forName(charset), outputStream);
+            if (result.getBody() != null && result.getBodyCharset().equals(Charset.forName(charset))) {
+                //字符集相同时直接写入字节，不需要解码
+                StreamUtils.copy(result.openStream(), outputStream);
+            } else {
+                StreamUtils.copy(result.getContent(), Charset.forName(charset), outputStream);
+            }
         } catch (IOException e) {
             log.error("An error occurred while copying file:[{}] to {}", result.getHttpRequest().getURI().toString(), fileName);
             e.printStackTrace();
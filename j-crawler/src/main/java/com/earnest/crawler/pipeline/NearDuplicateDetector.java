@@ -0,0 +1,317 @@
+package com.earnest.crawler.pipeline;
+
+import com.earnest.crawler.StringResponseResult;
+import com.earnest.crawler.scheduler.Fingerprints;
+import com.earnest.crawler.scheduler.HistoryStore;
+import com.earnest.crawler.scheduler.LongHashHistoryStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 根据内容的指纹判断页面是否与已经处理过的页面重复，直接扫描字节，不需要解析。
+ * <p>
+ * 完全相同的内容由整个响应体的64位哈希判断；相似的内容使用SimHash，
+ * 特征为去掉标签、<code>script</code>和<code>style</code>并合并空白后每8个连续的字节，
+ * 两个SimHash不同的位数不超过<code>maxDistance</code>时视为相似。
+ * 将64位分为<code>maxDistance + 1</code>段建立索引，相似的指纹至少有一段完全相同，只需要比较同一段相同的指纹。
+ * <p>
+ * 列表页中大部分是相同的模板时，<code>maxDistance</code>过大可能会误判，默认为3。
+ */
+@Slf4j
+public class NearDuplicateDetector {
+
+    public static final int DEFAULT_MAX_DISTANCE = 3;
+
+    private static final byte[] SCRIPT = "script".getBytes();
+
+    private static final byte[] STYLE = "style".getBytes();
+
+    private final int maxDistance;
+
+    private final HistoryStore contentHashes;
+
+    //段的序号和值 -> 该段相同的SimHash
+    private final Map<Long, List<Long>> simHashIndex = new HashMap<>();
+
+    private final AtomicLong checked = new AtomicLong();
+
+    private final AtomicLong exactDuplicates = new AtomicLong();
+
+    private final AtomicLong nearDuplicates = new AtomicLong();
+
+
+    public NearDuplicateDetector(int maxDistance, int expectedSize) {
+        Assert.isTrue(maxDistance >= 0 && maxDistance < 8, "maxDistance is out of [0, 8)");
+        this.maxDistance = maxDistance;
+        this.contentHashes = new LongHashHistoryStore(expectedSize);
+    }
+
+    public NearDuplicateDetector(int maxDistance) {
+        this(maxDistance, 10000);
+    }
+
+    public NearDuplicateDetector() {
+        this(DEFAULT_MAX_DISTANCE);
+    }
+
+    /**
+     * 判断结果。
+     */
+    public enum Duplicate {
+        /**
+         * 不重复。
+         */
+        UNIQUE,
+        /**
+         * 与之前的页面完全相同。
+         */
+        EXACT,
+        /**
+         * 与之前的页面相似。
+         */
+        NEAR
+    }
+
+    /**
+     * 判断内容是否与之前的页面重复，不重复时记录该页面。下载失败的结果不参与判断。
+     */
+    public boolean isDuplicate(StringResponseResult result) {
+        return check(result) != Duplicate.UNIQUE;
+    }
+
+    /**
+     * 判断内容与之前的页面完全相同、相似还是不重复，不重复时记录该页面。下载失败的结果不参与判断。
+     */
+    public Duplicate check(StringResponseResult result) {
+        if (!result.isSuccess()) {
+            return Duplicate.UNIQUE;
+        }
+        Fingerprint fingerprint = new Fingerprint();
+        try (InputStream inputStream = result.openStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                fingerprint.update(buffer, read);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read the content of {},error:{}", result.getHttpRequest().getURI(), e.getMessage());
+            return Duplicate.UNIQUE;
+        }
+        checked.incrementAndGet();
+
+        if (!contentHashes.add(fingerprint.contentHash())) {
+            exactDuplicates.incrementAndGet();
+            return Duplicate.EXACT;
+        }
+        //没有文本的页面只判断是否完全相同
+        if (fingerprint.features > 0 && !addSimHash(fingerprint.simHash())) {
+            nearDuplicates.incrementAndGet();
+            return Duplicate.NEAR;
+        }
+        return Duplicate.UNIQUE;
+    }
+
+    /**
+     * @return 已经有相似的指纹时返回<code>false</code>。
+     */
+    private synchronized boolean addSimHash(long simHash) {
+        int bands = maxDistance + 1;
+        long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            keys[band] = bandKey(simHash, band, bands);
+            List<Long> candidates = simHashIndex.get(keys[band]);
+            if (candidates == null) {
+                continue;
+            }
+            for (long candidate : candidates) {
+                if (Long.bitCount(candidate ^ simHash) <= maxDistance) {
+                    return false;
+                }
+            }
+        }
+        for (long key : keys) {
+            simHashIndex.computeIfAbsent(key, k -> new ArrayList<>(1)).add(simHash);
+        }
+        return true;
+    }
+
+    private static long bandKey(long simHash, int band, int bands) {
+        int from = band * 64 / bands;
+        int to = (band + 1) * 64 / bands;
+        long value = (simHash >>> from) & (to - from == 64 ? -1L : (1L << (to - from)) - 1);
+        return ((long) band << 58) ^ value;
+    }
+
+    public long getChecked() {
+        return checked.get();
+    }
+
+    public long getExactDuplicates() {
+        return exactDuplicates.get();
+    }
+
+    public long getNearDuplicates() {
+        return nearDuplicates.get();
+    }
+
+    /**
+     * @return 重复的页面占已判断页面的比例。
+     */
+    public double getDuplicateRate() {
+        long total = checked.get();
+        return total == 0 ? 0 : (double) (exactDuplicates.get() + nearDuplicates.get()) / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[checked: %d; exact: %d; near: %d; rate: %.2f]",
+                getChecked(), getExactDuplicates(), getNearDuplicates(), getDuplicateRate());
+    }
+
+
+    /**
+     * 一次扫描同时计算整个内容的哈希和文本的SimHash。
+     */
+    private static class Fingerprint {
+
+        private final int[] weights = new int[64];
+
+        private long contentHash = Fingerprints.FNV_OFFSET_BASIS;
+
+        //最近8个文本字节
+        private long shingle;
+
+        private int textBytes;
+
+        private int features;
+
+        private boolean inTag;
+
+        //标签名的前几个字节，用于识别script和style
+        private final byte[] tagName = new byte[6];
+
+        //超过tagName的长度时表示不是需要识别的标签
+        private int tagNameLength;
+
+        private boolean tagNameEnded;
+
+        //不为空时跳过内容，直到对应的结束标签
+        private byte[] rawTextTag;
+
+        //在结束标签"</name"中已经匹配的字节数
+        private int closeMatched;
+
+        void update(byte[] bytes, int length) {
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                contentHash = Fingerprints.update(contentHash, b & 0xFF);
+                if (rawTextTag != null) {
+                    skipRawText(b);
+                } else if (inTag) {
+                    tag(b);
+                } else if (b == '<') {
+                    inTag = true;
+                    tagNameLength = 0;
+                    tagNameEnded = false;
+                } else {
+                    text(b);
+                }
+            }
+        }
+
+        private void tag(byte b) {
+            if (b == '>') {
+                inTag = false;
+                if (matches(SCRIPT)) {
+                    rawTextTag = SCRIPT;
+                } else if (matches(STYLE)) {
+                    rawTextTag = STYLE;
+                }
+                closeMatched = 0;
+                //标签相当于空白
+                text((byte) ' ');
+            } else if (!tagNameEnded) {
+                if (!isLetter(b)) {
+                    //结束标签以'/'开头，标签名为空
+                    tagNameEnded = true;
+                } else if (tagNameLength < tagName.length) {
+                    tagName[tagNameLength++] = (byte) (b | 0x20);
+                } else {
+                    tagNameLength = tagName.length + 1;
+                }
+            }
+        }
+
+        private boolean matches(byte[] name) {
+            if (tagNameLength != name.length) {
+                return false;
+            }
+            for (int i = 0; i < tagNameLength; i++) {
+                if (tagName[i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipRawText(byte b) {
+            if (closeMatched == 0) {
+                closeMatched = b == '<' ? 1 : 0;
+            } else if (closeMatched == 1) {
+                closeMatched = b == '/' ? 2 : (b == '<' ? 1 : 0);
+            } else if ((b | 0x20) == rawTextTag[closeMatched - 2]) {
+                closeMatched++;
+                if (closeMatched - 2 == rawTextTag.length) {
+                    //结束标签剩余的部分按普通标签处理
+                    rawTextTag = null;
+                    inTag = true;
+                    tagNameLength = 0;
+                    tagNameEnded = true;
+                }
+            } else {
+                closeMatched = b == '<' ? 1 : 0;
+            }
+        }
+
+        private void text(byte b) {
+            boolean whitespace = (b & 0xFF) <= ' ';
+            if (whitespace && (textBytes == 0 || (shingle & 0xFF) == ' ')) {
+                return;
+            }
+            shingle = (shingle << 8) | (whitespace ? ' ' : b & 0xFF);
+            if (++textBytes >= 8) {
+                long feature = Fingerprints.mix(shingle);
+                for (int bit = 0; bit < 64; bit++) {
+                    weights[bit] += (int) ((feature >>> bit) & 1) * 2 - 1;
+                }
+                features++;
+            }
+        }
+
+        long contentHash() {
+            return Fingerprints.mix(contentHash);
+        }
+
+        long simHash() {
+            long simHash = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if (weights[bit] > 0) {
+                    simHash |= 1L << bit;
+                }
+            }
+            return simHash;
+        }
+
+        private static boolean isLetter(byte b) {
+            return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+        }
+    }
+}
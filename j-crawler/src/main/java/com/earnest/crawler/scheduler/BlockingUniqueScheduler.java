@@ -4,6 +4,7 @@ package com.earnest.crawler.scheduler;
 import com.earnest.crawler.exception.TakeTimeoutException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
 
@@ -11,33 +12,47 @@ import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
 /**
  * 阻塞的调度器，并且能够保证请求唯一。
+ * <p>
+ * 请求按{@link Fingerprints#fingerprint(HttpUriRequest) 指纹}去重，放入时即记录到历史中，
+ * 待处理的请求按先进先出的顺序取出。
  */
 @Slf4j
-public class BlockingUniqueScheduler implements Scheduler {
+public class BlockingUniqueScheduler implements Scheduler, Checkpointable {
     //任务值
-    private final Set<HttpUriRequest> taskSet;
-    //历史值
-    private final Set<String> historyTaskSet;
+    private final Queue<HttpUriRequest> taskQueue;
+    //历史值（包含待处理与已处理的请求）
+    private final HistoryStore historyStore;
     //取值条件
     private final ReentrantLock lock = new ReentrantLock();
     //取值条件
     private final Condition getCondition;
     //阻塞超时时间
     private final int timeout;
+    //已经取出但还没有处理完成的任务数
+    private int inFlight;
+    //已经取出但还没有处理完成的任务，快照时作为待处理的任务保存
+    private final Set<HttpUriRequest> inFlightRequests = Collections.newSetFromMap(new IdentityHashMap<>());
 
     private final static int DEFAULT_TIMEOUT=5000;
 
-    public BlockingUniqueScheduler(int initialCapacity, int timeout) {
-        taskSet = new HashSet<>(initialCapacity);
-        historyTaskSet = new HashSet<>(initialCapacity * 10);
+    public BlockingUniqueScheduler(int initialCapacity, int timeout, HistoryStore historyStore) {
+        taskQueue = new ArrayDeque<>(initialCapacity);
+        this.historyStore = historyStore == null ? new LongHashHistoryStore(initialCapacity * 10) : historyStore;
         this.timeout = timeout;
         getCondition = lock.newCondition();
     }
 
+    public BlockingUniqueScheduler(int initialCapacity, int timeout) {
+        this(initialCapacity, timeout, null);
+    }
+
+    public BlockingUniqueScheduler(int timeout, HistoryStore historyStore) {
+        this(10000, timeout == 0 ? DEFAULT_TIMEOUT : timeout, historyStore);
+    }
+
     public BlockingUniqueScheduler(int timeout) {
         this(10000, timeout == 0 ? DEFAULT_TIMEOUT : timeout);
     }
@@ -51,7 +66,7 @@ public class BlockingUniqueScheduler implements Scheduler {
     public boolean isEmpty() {
         try {
             lock.lock();
-            return taskSet.isEmpty();
+            return taskQueue.isEmpty();
         } finally {
             lock.unlock();
         }
@@ -61,80 +76,186 @@ public class BlockingUniqueScheduler implements Scheduler {
     public HttpUriRequest take() {
         try {
             lock.lockInterruptibly();
-            if (taskSet.isEmpty()) {
-                log.debug("The number of threads currently waiting is {}", lock.getWaitQueueLength(getCondition)+1);
-                //等待取值
-                boolean await = getCondition.await(timeout, TimeUnit.MILLISECONDS);
-                //等待到超时时间
-                if (!await) {
-                    throw new TakeTimeoutException("the time is out");
-                }
-                return obtainNewHttpUriRequest();
-            } else {
-                return obtainNewHttpUriRequest();
+            try {
+                return awaitTask(timeout) ? obtainNewHttpUriRequest() : null;
+            } finally {
+                lock.unlock();
             }
         } catch (InterruptedException e) {
             log.error("Interrupted when getting a httpUriRequest,error:{}", e.getMessage());
-        } finally {
-            lock.unlock();
+            Thread.currentThread().interrupt();
         }
         return null;
     }
 
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max) {
+        return takeBatch(max, timeout);
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max, long timeoutMillis) {
+        Assert.isTrue(max > 0, "max <1");
+        try {
+            lock.lockInterruptibly();
+            try {
+                if (!awaitTask(timeoutMillis)) {
+                    return Collections.emptyList();
+                }
+                //一次加锁取出多个任务
+                List<HttpUriRequest> httpUriRequests = new ArrayList<>(Math.min(max, taskQueue.size()));
+                HttpUriRequest httpUriRequest;
+                while (httpUriRequests.size() < max && (httpUriRequest = taskQueue.poll()) != null) {
+                    httpUriRequests.add(httpUriRequest);
+                }
+                inFlight += httpUriRequests.size();
+                inFlightRequests.addAll(httpUriRequests);
+                return httpUriRequests;
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted when getting httpUriRequests,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 等待任务，需要持有锁。队列为空并且没有正在处理的请求时，不会再有新的任务，立即返回。
+     *
+     * @return 有任务时返回<code>true</code>。
+     */
+    private boolean awaitTask(long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (taskQueue.isEmpty()) {
+            if (inFlight == 0) {
+                log.debug("There are no pending or in-flight tasks");
+                return false;
+            }
+            if (remaining <= 0) {
+                throw new TakeTimeoutException("the time is out");
+            }
+            log.debug("The number of threads currently waiting is {}", lock.getWaitQueueLength(getCondition) + 1);
+            remaining = getCondition.awaitNanos(remaining);
+        }
+        return true;
+    }
+
     private HttpUriRequest obtainNewHttpUriRequest() {
-        Iterator<HttpUriRequest> httpUriRequestIterator = taskSet.iterator();
-        if (httpUriRequestIterator.hasNext()) {
-            HttpUriRequest httpUriRequest = httpUriRequestIterator.next();
-            historyTaskSet.add(httpUriRequest.getURI().toString());
-            httpUriRequestIterator.remove();
-            return httpUriRequest;
+        HttpUriRequest httpUriRequest = taskQueue.poll();
+        if (httpUriRequest != null) {
+            inFlight++;
+            inFlightRequests.add(httpUriRequest);
+        }
+        return httpUriRequest;
+    }
+
+    @Override
+    public void complete(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return;
+        try {
+            lock.lock();
+            inFlightRequests.remove(httpUriRequest);
+            if (inFlight > 0 && --inFlight == 0 && taskQueue.isEmpty()) {
+                //不会再有新的任务，唤醒所有等待的线程
+                getCondition.signalAll();
+            }
+        } finally {
+            lock.unlock();
         }
-        return null;
     }
 
     @Override
     public boolean put(HttpUriRequest httpUriRequest) {
         if (httpUriRequest == null) return true;
-        String uri = httpUriRequest.getURI().toString();
+        long fingerprint = Fingerprints.fingerprint(httpUriRequest);
         try {
             lock.lock();
-            if (historyTaskSet.contains(uri)) {
-                log.trace("URI:{} is already in the history set", uri);
+            if (!historyStore.add(fingerprint)) {
+                log.trace("URI:{} is already in the history set", httpUriRequest.getURI());
                 return false;
             }
-            if (taskSet.add(httpUriRequest)) {
-                log.trace("The number of threads currently waiting is {}", lock.getWaitQueueLength(getCondition)-1);
-                getCondition.signal();
-            }
+            taskQueue.offer(httpUriRequest);
+            log.trace("The number of threads currently waiting is {}", lock.getWaitQueueLength(getCondition));
+            getCondition.signal();
             return true;
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * 已经取出但还没有处理完成的任务也作为待处理的任务保存，恢复后重新处理。
+     */
     @Override
-    public void putAll(Collection<HttpUriRequest> httpUriRequests) {
-        if (CollectionUtils.isEmpty(httpUriRequests)) return;
+    public SchedulerSnapshot snapshot() {
+        try {
+            lock.lock();
+            List<HttpUriRequest> pendingRequests = new ArrayList<>(inFlightRequests.size() + taskQueue.size());
+            pendingRequests.addAll(inFlightRequests);
+            pendingRequests.addAll(taskQueue);
+            return new SchedulerSnapshot(pendingRequests, historyStore.snapshot());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
 
+    @Override
+    public void restore(SchedulerSnapshot snapshot) {
         try {
             lock.lock();
-            //过滤历史请求
-            Set<HttpUriRequest> httpUriRequestSet = httpUriRequests.stream()
-                    .filter(httpRequest -> !historyTaskSet.contains(httpRequest.getURI().toString()))
-                    .collect(Collectors.toSet());
+            taskQueue.addAll(snapshot.getPendingRequests());
+            getCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            if (CollectionUtils.isEmpty(httpUriRequestSet)) return;
+    @Override
+    public void putAll(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return;
+        addAll(httpUriRequests);
+    }
 
-            int originalTaskSize = taskSet.size();
-            taskSet.addAll(httpUriRequestSet);
-            int newTaskSize = taskSet.size();
-            while (newTaskSize != originalTaskSize) {
+    @Override
+    public int drainFrom(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return 0;
+        int added = addAll(httpUriRequests);
+        httpUriRequests.clear();
+        return added;
+    }
+
+    private int addAll(Collection<HttpUriRequest> httpUriRequests) {
+        //在加锁之前计算指纹
+        long[] fingerprints = Fingerprints.fingerprints(httpUriRequests);
+        try {
+            lock.lock();
+            int added = 0;
+            int i = 0;
+            for (HttpUriRequest httpUriRequest : httpUriRequests) {
+                //过滤历史请求和同一批中重复的请求
+                if (httpUriRequest != null && historyStore.add(fingerprints[i])) {
+                    taskQueue.offer(httpUriRequest);
+                    added++;
+                }
+                i++;
+            }
+            //批量取值的线程可能一次取走多个任务，加入多个任务时唤醒全部线程
+            if (added == 1) {
                 getCondition.signal();
-                newTaskSize--;
+            } else if (added > 1) {
+                getCondition.signalAll();
             }
+            return added;
         } finally {
             lock.unlock();
         }
-
     }
 }
@@ -0,0 +1,354 @@
+package com.earnest.crawler.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 可扩展的布隆过滤器。当前过滤器写满后会追加一个容量翻倍、误判率减半的过滤器，
+ * 使总误判率始终不超过设置的值。
+ * <p>
+ * 存在误判：少量没有处理过的请求可能被当作已经处理过而被忽略，但不会重复处理请求。
+ * 位数组可以分配在堆外，不占用堆内存。
+ */
+@Slf4j
+public class BloomFilterHistoryStore implements HistoryStore {
+
+    //每个新的过滤器的误判率都是上一个的一半
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private static final int GROWTH_FACTOR = 2;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final CopyOnWriteArrayList<Filter> filters = new CopyOnWriteArrayList<>();
+
+    private final boolean offHeap;
+
+    private final AtomicLong size = new AtomicLong();
+
+    //同一指纹的检查和写入在同一把锁中进行，不同指纹可以并发写入
+    private final Object[] locks = newLocks();
+
+    /**
+     * @param expectedSize      第一个过滤器的容量。
+     * @param falsePositiveRate 总的误判率。
+     * @param offHeap           是否将位数组分配在堆外。
+     */
+    public BloomFilterHistoryStore(long expectedSize, double falsePositiveRate, boolean offHeap) {
+        Assert.isTrue(expectedSize > 0, "expectedSize <1");
+        Assert.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "falsePositiveRate must be between 0 and 1");
+        this.offHeap = offHeap;
+        //等比数列求和：p * (1 + r + r^2 + ...) = p / (1 - r)
+        filters.add(new Filter(expectedSize, falsePositiveRate * (1 - TIGHTENING_RATIO), offHeap));
+    }
+
+    public BloomFilterHistoryStore(long expectedSize, double falsePositiveRate) {
+        this(expectedSize, falsePositiveRate, true);
+    }
+
+    private BloomFilterHistoryStore(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * 同一指纹并发添加时只有一个线程返回<code>true</code>。
+     */
+    @Override
+    public boolean add(long fingerprint) {
+        Filter filter;
+        synchronized (locks[(int) (fingerprint ^ fingerprint >>> 32) & (LOCK_STRIPES - 1)]) {
+            if (contains(fingerprint)) {
+                return false;
+            }
+            filter = filters.get(filters.size() - 1);
+            if (!filter.add(fingerprint)) {
+                return false;
+            }
+        }
+        size.incrementAndGet();
+        if (filter.isFull()) {
+            grow(filter);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(long fingerprint) {
+        for (Filter filter : filters) {
+            if (filter.contains(fingerprint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public synchronized HistoryStore snapshot() {
+        BloomFilterHistoryStore copy = new BloomFilterHistoryStore(offHeap);
+        for (Filter filter : filters) {
+            copy.filters.add(filter.copy(offHeap));
+        }
+        copy.size.set(size.get());
+        return copy;
+    }
+
+    @Override
+    public synchronized void writeTo(DataOutput output) throws IOException {
+        output.writeLong(size.get());
+        output.writeInt(filters.size());
+        for (Filter filter : filters) {
+            filter.writeTo(output);
+        }
+    }
+
+    /**
+     * 布隆过滤器不能合并不同参数的过滤器，读取的内容会替换当前的记录。
+     */
+    @Override
+    public synchronized void readFrom(DataInput input) throws IOException {
+        long newSize = input.readLong();
+        int filterCount = input.readInt();
+        List<Filter> newFilters = new ArrayList<>(filterCount);
+        for (int i = 0; i < filterCount; i++) {
+            newFilters.add(Filter.readFrom(input, offHeap));
+        }
+        filters.clear();
+        filters.addAll(newFilters);
+        size.set(newSize);
+    }
+
+    private static Object[] newLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private synchronized void grow(Filter full) {
+        if (filters.get(filters.size() - 1) != full) {
+            return;
+        }
+        Filter next = new Filter(full.capacity * GROWTH_FACTOR, full.falsePositiveRate * TIGHTENING_RATIO, offHeap);
+        log.debug("Bloom filter is full, add a new filter with capacity {}", next.capacity);
+        filters.add(next);
+    }
+
+
+    private static class Filter {
+
+        private final long capacity;
+
+        private final double falsePositiveRate;
+
+        private final int hashCount;
+
+        private final long bitSize;
+
+        private final BitArray bits;
+
+        private final AtomicLong count = new AtomicLong();
+
+        Filter(long capacity, double falsePositiveRate, boolean offHeap) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            double ln2 = Math.log(2);
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            //按64位对齐
+            this.bitSize = Math.max(Long.SIZE, (optimalBits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitSize / capacity * ln2));
+            this.bits = offHeap ? new DirectBitArray(bitSize) : new HeapBitArray(bitSize);
+        }
+
+        Filter copy(boolean offHeap) {
+            Filter copy = new Filter(capacity, falsePositiveRate, offHeap);
+            for (int i = 0, words = bits.wordCount(); i < words; i++) {
+                copy.bits.setWord(i, bits.getWord(i));
+            }
+            copy.count.set(count.get());
+            return copy;
+        }
+
+        void writeTo(DataOutput output) throws IOException {
+            output.writeLong(capacity);
+            output.writeDouble(falsePositiveRate);
+            output.writeLong(count.get());
+            for (int i = 0, words = bits.wordCount(); i < words; i++) {
+                output.writeLong(bits.getWord(i));
+            }
+        }
+
+        static Filter readFrom(DataInput input, boolean offHeap) throws IOException {
+            Filter filter = new Filter(input.readLong(), input.readDouble(), offHeap);
+            filter.count.set(input.readLong());
+            for (int i = 0, words = filter.bits.wordCount(); i < words; i++) {
+                filter.bits.setWord(i, input.readLong());
+            }
+            return filter;
+        }
+
+        boolean add(long fingerprint) {
+            int hash1 = (int) fingerprint;
+            int hash2 = (int) (fingerprint >>> 32);
+            boolean changed = false;
+            for (int i = 1; i <= hashCount; i++) {
+                changed |= bits.set(index(hash1, hash2, i));
+            }
+            if (changed) {
+                count.incrementAndGet();
+            }
+            return changed;
+        }
+
+        boolean contains(long fingerprint) {
+            int hash1 = (int) fingerprint;
+            int hash2 = (int) (fingerprint >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                if (!bits.get(index(hash1, hash2, i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isFull() {
+            return count.get() >= capacity;
+        }
+
+        private long index(int hash1, int hash2, int i) {
+            //双重哈希：h1 + i * h2
+            long combined = hash1 + (long) i * hash2;
+            return (combined & Long.MAX_VALUE) % bitSize;
+        }
+    }
+
+
+    private interface BitArray {
+
+        /**
+         * @return 该位之前为0时返回<code>true</code>。
+         */
+        boolean set(long index);
+
+        boolean get(long index);
+
+        int wordCount();
+
+        long getWord(int word);
+
+        void setWord(int word, long value);
+    }
+
+
+    private static class HeapBitArray implements BitArray {
+
+        private final AtomicLongArray words;
+
+        HeapBitArray(long bitSize) {
+            long wordCount = bitSize / Long.SIZE;
+            Assert.isTrue(wordCount <= Integer.MAX_VALUE, "bloom filter is too large for the heap");
+            words = new AtomicLongArray((int) wordCount);
+        }
+
+        @Override
+        public boolean set(long index) {
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+            return true;
+        }
+
+        @Override
+        public boolean get(long index) {
+            return (words.get((int) (index >>> 6)) & (1L << index)) != 0;
+        }
+
+        @Override
+        public int wordCount() {
+            return words.length();
+        }
+
+        @Override
+        public long getWord(int word) {
+            return words.get(word);
+        }
+
+        @Override
+        public void setWord(int word, long value) {
+            words.set(word, value);
+        }
+    }
+
+
+    private static class DirectBitArray implements BitArray {
+
+        private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+        private final ByteBuffer buffer;
+
+        DirectBitArray(long bitSize) {
+            long byteSize = bitSize / Byte.SIZE;
+            Assert.isTrue(byteSize <= Integer.MAX_VALUE - Long.BYTES, "bloom filter is too large for a direct buffer");
+            buffer = ByteBuffer.allocateDirect((int) byteSize);
+        }
+
+        @Override
+        public boolean set(long index) {
+            int offset = (int) (index >>> 6) * Long.BYTES;
+            long mask = 1L << index;
+            long current;
+            do {
+                current = (long) LONGS.getVolatile(buffer, offset);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+            } while (!LONGS.compareAndSet(buffer, offset, current, current | mask));
+            return true;
+        }
+
+        @Override
+        public boolean get(long index) {
+            int offset = (int) (index >>> 6) * Long.BYTES;
+            return ((long) LONGS.getVolatile(buffer, offset) & (1L << index)) != 0;
+        }
+
+        @Override
+        public int wordCount() {
+            return buffer.capacity() / Long.BYTES;
+        }
+
+        @Override
+        public long getWord(int word) {
+            return (long) LONGS.getVolatile(buffer, word * Long.BYTES);
+        }
+
+        @Override
+        public void setWord(int word, long value) {
+            LONGS.setVolatile(buffer, word * Long.BYTES, value);
+        }
+    }
+}
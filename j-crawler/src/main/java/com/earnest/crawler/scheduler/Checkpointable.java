@@ -0,0 +1,30 @@
+package com.earnest.crawler.scheduler;
+
+/**
+ * 能够保存和恢复状态的调度器。
+ *
+ * @see CheckpointingScheduler
+ */
+public interface Checkpointable {
+
+    /**
+     * 获取当前状态的快照。只复制引用和历史记录，不进行序列化，不会长时间阻塞调度器。
+     * <p>
+     * 待处理的请求包括已经取出但还没有{@link Scheduler#complete(org.apache.http.client.methods.HttpUriRequest) 完成}的请求，
+     * 恢复后这些请求会被重新处理。
+     */
+    SchedulerSnapshot snapshot();
+
+    /**
+     * @return 调度器使用的历史记录，读取快照时历史记录会被合并到其中。
+     */
+    HistoryStore getHistoryStore();
+
+    /**
+     * 将快照中待处理的请求直接放入调度器，不再检查历史记录。需要在开始取值之前调用。
+     *
+     * @param snapshot 通过{@link SchedulerSnapshot#readFrom(java.nio.file.Path, HistoryStore)}读取的快照。
+     */
+    void restore(SchedulerSnapshot snapshot);
+
+}
@@ -0,0 +1,145 @@
+package com.earnest.crawler.scheduler;
+
+import com.alibaba.fastjson.util.IOUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定期将调度器的状态保存到文件中的调度器，关闭时会保存最后一次的状态。
+ * <p>
+ * 获取快照时只复制引用和历史记录，序列化和写文件在单独的线程中进行，不会阻塞取值和放入。
+ */
+@Slf4j
+public class CheckpointingScheduler implements Scheduler, Checkpointable, Closeable {
+
+    private final Scheduler scheduler;
+
+    private final Checkpointable checkpointable;
+
+    private final Path path;
+
+    private final ScheduledExecutorService executor;
+
+    public CheckpointingScheduler(Scheduler scheduler, Path path, long intervalMillis) {
+        Assert.isInstanceOf(Checkpointable.class, scheduler, "scheduler can't be checkpointed");
+        Assert.notNull(path, "path is null");
+        Assert.isTrue(intervalMillis > 0, "intervalMillis <1");
+        this.scheduler = scheduler;
+        this.checkpointable = (Checkpointable) scheduler;
+        this.path = path;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scheduler-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkpoint, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 从文件中恢复调度器的状态，文件不存在时不做处理。
+     *
+     * @return 是否恢复了状态。
+     */
+    public static boolean resume(Checkpointable checkpointable, Path path) throws IOException {
+        if (!Files.exists(path)) {
+            log.info("The checkpoint:{} does not exist, start from scratch", path);
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        SchedulerSnapshot snapshot = SchedulerSnapshot.readFrom(path, checkpointable.getHistoryStore());
+        checkpointable.restore(snapshot);
+        log.info("Resumed {} pending requests and {} history records from {} in {}ms",
+                snapshot.getPendingRequests().size(), snapshot.getHistoryStore().size(), path, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    /**
+     * 保存当前的状态。
+     */
+    public synchronized void checkpoint() {
+        try {
+            long start = System.currentTimeMillis();
+            SchedulerSnapshot snapshot = checkpointable.snapshot();
+            snapshot.writeTo(path);
+            log.debug("Checkpointed {} pending requests to {} in {}ms",
+                    snapshot.getPendingRequests().size(), path, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to checkpoint the scheduler to {},error:{}", path, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return scheduler.isEmpty();
+    }
+
+    @Override
+    public HttpUriRequest take() {
+        return scheduler.take();
+    }
+
+    @Override
+    public boolean put(HttpUriRequest httpUriRequest) {
+        return scheduler.put(httpUriRequest);
+    }
+
+    @Override
+    public void putAll(Collection<HttpUriRequest> httpUriRequests) {
+        scheduler.putAll(httpUriRequests);
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max) {
+        return scheduler.takeBatch(max);
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max, long timeoutMillis) {
+        return scheduler.takeBatch(max, timeoutMillis);
+    }
+
+    @Override
+    public int drainFrom(Collection<HttpUriRequest> httpUriRequests) {
+        return scheduler.drainFrom(httpUriRequests);
+    }
+
+    @Override
+    public void complete(HttpUriRequest httpUriRequest) {
+        scheduler.complete(httpUriRequest);
+    }
+
+    @Override
+    public SchedulerSnapshot snapshot() {
+        return checkpointable.snapshot();
+    }
+
+    @Override
+    public HistoryStore getHistoryStore() {
+        return checkpointable.getHistoryStore();
+    }
+
+    @Override
+    public void restore(SchedulerSnapshot snapshot) {
+        checkpointable.restore(snapshot);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        checkpoint();
+        if (scheduler instanceof Closeable) {
+            IOUtils.close((Closeable) scheduler);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.earnest.crawler.scheduler;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * 计算64位的指纹，不产生额外的对象。
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Fingerprints {
+
+    public static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+
+    //每个线程复用的缓冲区，用于保存统一后的网址
+    private static final ThreadLocal<StringBuilder> CANONICAL_URL = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /**
+     * 请求的指纹，由请求方法、{@link UrlCanonicalizer 统一后的网址}和请求体组成。
+     * 只有可以重复读取的请求体才参与计算。
+     */
+    public static long fingerprint(HttpUriRequest httpUriRequest) {
+        long hash = FNV_OFFSET_BASIS;
+        String method = httpUriRequest.getMethod();
+        for (int i = 0, length = method.length(); i < length; i++) {
+            hash = update(hash, Character.toUpperCase(method.charAt(i)));
+        }
+        hash = update(hash, ' ');
+
+        StringBuilder canonicalUrl = CANONICAL_URL.get();
+        canonicalUrl.setLength(0);
+        UrlCanonicalizer.canonicalize(httpUriRequest.getURI().toString(), canonicalUrl);
+        for (int i = 0, length = canonicalUrl.length(); i < length; i++) {
+            hash = update(hash, canonicalUrl.charAt(i));
+        }
+        if (canonicalUrl.capacity() > MAX_RETAINED_CAPACITY) {
+            CANONICAL_URL.remove();
+        }
+
+        if (httpUriRequest instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) httpUriRequest).getEntity();
+            if (entity != null && entity.isRepeatable()) {
+                hash = update(hash, ' ');
+                HashingOutputStream output = new HashingOutputStream(hash);
+                try {
+                    entity.writeTo(output);
+                    hash = output.hash;
+                } catch (IOException e) {
+                    log.warn("Failed to read the entity of {},error:{}", httpUriRequest.getURI(), e.getMessage());
+                }
+            }
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 按迭代的顺序计算每个请求的指纹，<code>null</code>对应0。
+     */
+    public static long[] fingerprints(Collection<HttpUriRequest> httpUriRequests) {
+        long[] fingerprints = new long[httpUriRequests.size()];
+        int i = 0;
+        for (HttpUriRequest httpUriRequest : httpUriRequests) {
+            fingerprints[i++] = httpUriRequest == null ? 0 : fingerprint(httpUriRequest);
+        }
+        return fingerprints;
+    }
+
+    public static long fingerprint(CharSequence value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            hash = update(hash, value.charAt(i));
+        }
+        return mix(hash);
+    }
+
+    public static long fingerprint(byte[] value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value) {
+            hash = update(hash, b);
+        }
+        return mix(hash);
+    }
+
+    /**
+     * FNV-1a，从{@link #FNV_OFFSET_BASIS}开始逐个加入，最后经过{@link #mix(long)}。
+     */
+    public static long update(long hash, int value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    /**
+     * MurmurHash3的fmix64，使所有的位都能充分扩散。
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+
+    private static class HashingOutputStream extends OutputStream {
+
+        private long hash;
+
+        HashingOutputStream(long hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public void write(int b) {
+            hash = update(hash, b & 0xFF);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            long h = hash;
+            for (int i = off, end = off + len; i < end; i++) {
+                h = update(h, b[i] & 0xFF);
+            }
+            hash = h;
+        }
+    }
+}
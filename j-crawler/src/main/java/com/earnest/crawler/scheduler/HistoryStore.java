@@ -0,0 +1,41 @@
+package com.earnest.crawler.scheduler;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 调度器的历史记录，保存已经处理过的请求的64位指纹。实现需要保证线程安全。
+ *
+ * @see Fingerprints
+ */
+public interface HistoryStore {
+
+    /**
+     * 加入指纹。
+     *
+     * @param fingerprint 请求的指纹。
+     * @return 指纹之前不存在时返回<code>true</code>。
+     */
+    boolean add(long fingerprint);
+
+    boolean contains(long fingerprint);
+
+    /**
+     * @return 已保存的指纹数量。
+     */
+    long size();
+
+    /**
+     * @return 当前时刻的副本，之后的修改不会影响副本。
+     */
+    HistoryStore snapshot();
+
+    void writeTo(DataOutput output) throws IOException;
+
+    /**
+     * 读取同类型的{@link #writeTo(DataOutput)}写出的内容，并合并到当前的记录中。
+     */
+    void readFrom(DataInput input) throws IOException;
+
+}
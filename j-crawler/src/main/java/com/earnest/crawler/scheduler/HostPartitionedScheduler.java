@@ -0,0 +1,387 @@
+package com.earnest.crawler.scheduler;
+
+
+import com.earnest.crawler.exception.TakeTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按主机划分队列的阻塞调度器，并且能够保证请求唯一。
+ * <p>
+ * 每个主机有独立的队列，并限制同一主机两次请求之间的最小间隔和同时进行的最大请求数，
+ * 间隔从请求取出和处理完成时分别计算，批量取出的请求依次下载时也能保证间隔。
+ * 可以访问的主机按可访问时间保存在堆中，轮流取出，一个主机被限流时不会阻塞其他主机的请求。
+ * 需要在请求处理完成后调用{@link #complete(HttpUriRequest)}。
+ */
+@Slf4j
+public class HostPartitionedScheduler implements Scheduler, Checkpointable {
+    //每个主机的队列
+    private final Map<String, HostQueue> hostQueues = new HashMap<>();
+    //按可访问时间排序的主机
+    private final PriorityQueue<HostQueue> readyHeap = new PriorityQueue<>(
+            Comparator.comparingLong((HostQueue h) -> h.readyTime).thenComparingLong(h -> h.sequence)
+    );
+    //单独设置的主机策略
+    private final Map<String, HostPolicy> hostPolicies = new HashMap<>();
+    //默认的主机策略
+    private final HostPolicy defaultPolicy;
+    //历史值
+    private final HistoryStore historyStore;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //取值条件
+    private final Condition getCondition;
+    //阻塞超时时间
+    private final int timeout;
+    //待处理的任务数
+    private int taskSize;
+    //已经取出但还没有处理完成的任务数
+    private int inFlightSize;
+    //已经取出但还没有处理完成的任务，快照时作为待处理的任务保存
+    private final Set<HttpUriRequest> inFlightRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+    //加入堆的次数，用于相同时间的主机轮流取值
+    private long sequence;
+
+    private final static int DEFAULT_TIMEOUT = 5000;
+
+    public HostPartitionedScheduler(long minDelayMillis, int maxConcurrencyPerHost, int timeout, HistoryStore historyStore) {
+        this.defaultPolicy = new HostPolicy(minDelayMillis, maxConcurrencyPerHost);
+        this.historyStore = historyStore == null ? new LongHashHistoryStore() : historyStore;
+        this.timeout = timeout == 0 ? DEFAULT_TIMEOUT : timeout;
+        getCondition = lock.newCondition();
+    }
+
+    public HostPartitionedScheduler(long minDelayMillis, int maxConcurrencyPerHost) {
+        this(minDelayMillis, maxConcurrencyPerHost, DEFAULT_TIMEOUT, null);
+    }
+
+    /**
+     * 为指定的主机单独设置访问策略。
+     *
+     * @param host           主机名。
+     * @param minDelayMillis 两次请求之间的最小间隔（毫秒）。
+     * @param maxConcurrency 同时进行的最大请求数。
+     */
+    public void setHostPolicy(String host, long minDelayMillis, int maxConcurrency) {
+        Assert.hasText(host, "host is empty");
+        try {
+            lock.lock();
+            hostPolicies.put(host.toLowerCase(Locale.ROOT), new HostPolicy(minDelayMillis, maxConcurrency));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        try {
+            lock.lock();
+            return taskSize == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public HttpUriRequest take() {
+        try {
+            lock.lockInterruptibly();
+            try {
+                HostQueue hostQueue = awaitReadyHost(timeout);
+                return hostQueue == null ? null : obtainNewHttpUriRequest(hostQueue);
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted when getting a httpUriRequest,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max) {
+        return takeBatch(max, timeout);
+    }
+
+    /**
+     * 等待第一个可以访问的主机，然后取出当前所有可以访问的主机的请求，每个主机一批最多取出一个请求。
+     */
+    @Override
+    public List<HttpUriRequest> takeBatch(int max, long timeoutMillis) {
+        Assert.isTrue(max > 0, "max <1");
+        try {
+            lock.lockInterruptibly();
+            try {
+                HostQueue hostQueue = awaitReadyHost(timeoutMillis);
+                if (hostQueue == null) {
+                    return Collections.emptyList();
+                }
+                List<HttpUriRequest> httpUriRequests = new ArrayList<>(Math.min(max, 16));
+                //本批取过的主机在取完后再放回堆中
+                List<HostQueue> takenHostQueues = new ArrayList<>(Math.min(max, 16));
+                httpUriRequests.add(pollTask(hostQueue));
+                takenHostQueues.add(hostQueue);
+                long now = System.nanoTime();
+                while (httpUriRequests.size() < max && (hostQueue = readyHeap.peek()) != null && hostQueue.readyTime <= now) {
+                    httpUriRequests.add(pollTask(readyHeap.poll()));
+                    takenHostQueues.add(hostQueue);
+                }
+                takenHostQueues.forEach(this::offerIfReady);
+                return httpUriRequests;
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted when getting httpUriRequests,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 等待并取出最早可以访问的主机，需要持有锁。
+     *
+     * @return 没有待处理和正在处理的任务时返回<code>null</code>。
+     */
+    private HostQueue awaitReadyHost(long timeoutMillis) throws InterruptedException {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            HostQueue hostQueue = readyHeap.peek();
+            if (hostQueue == null) {
+                //不会再有新的任务
+                if (taskSize == 0 && inFlightSize == 0) {
+                    log.debug("There are no pending or in-flight tasks");
+                    return null;
+                }
+                //没有任务时才计算超时，主机被限流时一直等待
+                if (taskSize == 0 && timeoutNanos <= 0) {
+                    throw new TakeTimeoutException("the time is out");
+                }
+                log.debug("The number of threads currently waiting is {}", lock.getWaitQueueLength(getCondition) + 1);
+                long remaining = getCondition.awaitNanos(taskSize == 0 ? timeoutNanos : TimeUnit.MILLISECONDS.toNanos(timeout));
+                if (taskSize == 0) {
+                    timeoutNanos = remaining;
+                }
+                continue;
+            }
+            long waitNanos = hostQueue.readyTime - System.nanoTime();
+            if (waitNanos > 0) {
+                //等待最早可以访问的主机
+                getCondition.awaitNanos(waitNanos);
+                continue;
+            }
+            return readyHeap.poll();
+        }
+    }
+
+    private HttpUriRequest obtainNewHttpUriRequest(HostQueue hostQueue) {
+        HttpUriRequest httpUriRequest = pollTask(hostQueue);
+        offerIfReady(hostQueue);
+        return httpUriRequest;
+    }
+
+    /**
+     * 取出主机的下一个请求，主机不会放回堆中。
+     */
+    private HttpUriRequest pollTask(HostQueue hostQueue) {
+        hostQueue.inHeap = false;
+        HttpUriRequest httpUriRequest = hostQueue.tasks.poll();
+        taskSize--;
+        inFlightSize++;
+        inFlightRequests.add(httpUriRequest);
+        hostQueue.inFlight++;
+        hostQueue.readyTime = System.nanoTime() + hostQueue.policy.minDelayNanos;
+        return httpUriRequest;
+    }
+
+    @Override
+    public void complete(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return;
+        String host = hostOf(httpUriRequest);
+        try {
+            lock.lock();
+            inFlightRequests.remove(httpUriRequest);
+            if (inFlightSize > 0 && --inFlightSize == 0 && taskSize == 0) {
+                //不会再有新的任务，唤醒所有等待的线程
+                getCondition.signalAll();
+            }
+            HostQueue hostQueue = hostQueues.get(host);
+            if (hostQueue == null) {
+                return;
+            }
+            hostQueue.inFlight--;
+            if (hostQueue.tasks.isEmpty() && hostQueue.inFlight <= 0) {
+                //主机已经没有请求，不再保留队列
+                hostQueues.remove(host);
+                return;
+            }
+            //下一次请求与本次处理完成的时间也要保持间隔，修改时间前先从堆中移除
+            long readyTime = System.nanoTime() + hostQueue.policy.minDelayNanos;
+            if (hostQueue.policy.minDelayNanos > 0 && readyTime > hostQueue.readyTime) {
+                if (hostQueue.inHeap) {
+                    readyHeap.remove(hostQueue);
+                    hostQueue.inHeap = false;
+                }
+                hostQueue.readyTime = readyTime;
+            }
+            if (offerIfReady(hostQueue)) {
+                getCondition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean put(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return true;
+        long fingerprint = Fingerprints.fingerprint(httpUriRequest);
+        try {
+            lock.lock();
+            if (!historyStore.add(fingerprint)) {
+                log.trace("URI:{} is already in the history set", httpUriRequest.getURI());
+                return false;
+            }
+            enqueue(httpUriRequest);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return;
+        addAll(httpUriRequests);
+    }
+
+    @Override
+    public int drainFrom(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return 0;
+        int added = addAll(httpUriRequests);
+        httpUriRequests.clear();
+        return added;
+    }
+
+    private int addAll(Collection<HttpUriRequest> httpUriRequests) {
+        //在加锁之前计算指纹
+        long[] fingerprints = Fingerprints.fingerprints(httpUriRequests);
+        try {
+            lock.lock();
+            int added = 0;
+            int i = 0;
+            for (HttpUriRequest httpUriRequest : httpUriRequests) {
+                if (httpUriRequest != null && historyStore.add(fingerprints[i])) {
+                    enqueue(httpUriRequest);
+                    added++;
+                }
+                i++;
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已经取出但还没有处理完成的任务也作为待处理的任务保存，恢复后重新处理。
+     */
+    @Override
+    public SchedulerSnapshot snapshot() {
+        try {
+            lock.lock();
+            List<HttpUriRequest> pendingRequests = new ArrayList<>(inFlightRequests);
+            hostQueues.values().forEach(hostQueue -> pendingRequests.addAll(hostQueue.tasks));
+            return new SchedulerSnapshot(pendingRequests, historyStore.snapshot());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    @Override
+    public void restore(SchedulerSnapshot snapshot) {
+        try {
+            lock.lock();
+            snapshot.getPendingRequests().forEach(this::enqueue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(HttpUriRequest httpUriRequest) {
+        String host = hostOf(httpUriRequest);
+        HostQueue hostQueue = hostQueues.computeIfAbsent(host, h -> new HostQueue(hostPolicies.getOrDefault(h, defaultPolicy)));
+        hostQueue.tasks.offer(httpUriRequest);
+        taskSize++;
+        if (offerIfReady(hostQueue)) {
+            getCondition.signal();
+        }
+    }
+
+    /**
+     * 主机有任务且没有达到最大请求数时加入堆中。
+     */
+    private boolean offerIfReady(HostQueue hostQueue) {
+        if (hostQueue.inHeap || hostQueue.tasks.isEmpty() || hostQueue.inFlight >= hostQueue.policy.maxConcurrency) {
+            return false;
+        }
+        hostQueue.inHeap = true;
+        hostQueue.sequence = sequence++;
+        readyHeap.offer(hostQueue);
+        return true;
+    }
+
+    private static String hostOf(HttpUriRequest httpUriRequest) {
+        String host = httpUriRequest.getURI().getHost();
+        return host == null ? "" : host.toLowerCase(Locale.ROOT);
+    }
+
+
+    private static class HostPolicy {
+
+        private final long minDelayNanos;
+
+        private final int maxConcurrency;
+
+        HostPolicy(long minDelayMillis, int maxConcurrency) {
+            Assert.isTrue(minDelayMillis >= 0, "minDelayMillis <0");
+            Assert.isTrue(maxConcurrency > 0, "maxConcurrency <1");
+            this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+            this.maxConcurrency = maxConcurrency;
+        }
+    }
+
+
+    private static class HostQueue {
+
+        private final HostPolicy policy;
+
+        private final Deque<HttpUriRequest> tasks = new ArrayDeque<>();
+        //下次可以访问的时间
+        private long readyTime = System.nanoTime();
+
+        private long sequence;
+
+        private int inFlight;
+
+        private boolean inHeap;
+
+        HostQueue(HostPolicy policy) {
+            this.policy = policy;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.earnest.crawler.scheduler;
+
+import com.earnest.crawler.RequestAttributes;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 将{@link HttpUriRequest}紧凑地序列化为字节。只保存请求方法、地址、请求头、请求体、抓取深度和标签，
+ * {@link org.apache.http.client.config.RequestConfig}不会被保存。
+ * <p>
+ * 字符串以<code>[长度][UTF-8]</code>的格式保存，长度不受{@link DataOutput#writeUTF(String)}的64KB限制。
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class HttpUriRequestCodec {
+
+    private static final int NO_ENTITY = -1;
+
+    public static void encode(HttpUriRequest httpUriRequest, DataOutput output) throws IOException {
+        writeString(output, httpUriRequest.getMethod());
+        writeString(output, httpUriRequest.getURI().toString());
+
+        Header[] headers = httpUriRequest.getAllHeaders();
+        output.writeShort(headers.length);
+        for (Header header : headers) {
+            writeString(output, header.getName());
+            writeString(output, header.getValue());
+        }
+
+        HttpEntity entity = httpUriRequest instanceof HttpEntityEnclosingRequest ?
+                ((HttpEntityEnclosingRequest) httpUriRequest).getEntity() : null;
+        if (entity == null) {
+            output.writeInt(NO_ENTITY);
+        } else {
+            byte[] body = EntityUtils.toByteArray(entity);
+            output.writeInt(body.length);
+            output.write(body);
+            writeString(output, entity.getContentType() == null ? "" : entity.getContentType().getValue());
+        }
+
+        output.writeShort(Math.min(RequestAttributes.getDepth(httpUriRequest), 0xFFFF));
+        String tag = RequestAttributes.getTag(httpUriRequest);
+        writeString(output, tag == null ? "" : tag);
+    }
+
+    public static byte[] encode(HttpUriRequest httpUriRequest) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
+        try {
+            encode(httpUriRequest, new DataOutputStream(outputStream));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    public static HttpUriRequest decode(DataInput input) throws IOException {
+        RequestBuilder requestBuilder = RequestBuilder.create(readString(input))
+                .setUri(readString(input));
+
+        int headerCount = input.readUnsignedShort();
+        for (int i = 0; i < headerCount; i++) {
+            requestBuilder.addHeader(readString(input), readString(input));
+        }
+
+        int bodyLength = input.readInt();
+        if (bodyLength != NO_ENTITY) {
+            byte[] body = new byte[checkLength(bodyLength)];
+            input.readFully(body);
+            String contentType = readString(input);
+            requestBuilder.setEntity(new ByteArrayEntity(body,
+                    contentType.isEmpty() ? null : ContentType.parse(contentType)));
+        }
+        HttpUriRequest httpUriRequest = requestBuilder.build();
+        RequestAttributes.setDepth(httpUriRequest, input.readUnsignedShort());
+        String tag = readString(input);
+        if (!tag.isEmpty()) {
+            RequestAttributes.setTag(httpUriRequest, tag);
+        }
+        return httpUriRequest;
+    }
+
+    public static HttpUriRequest decode(byte[] bytes) {
+        try {
+            return decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[checkLength(input.readInt())];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("invalid length " + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,15 @@
+package com.earnest.crawler.scheduler;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * 为请求打分，分数越高越先被处理。
+ *
+ * @see RuleBasedHttpUriRequestScorer
+ */
+@FunctionalInterface
+public interface HttpUriRequestScorer {
+
+    int score(HttpUriRequest httpUriRequest);
+
+}
@@ -0,0 +1,273 @@
+package com.earnest.crawler.scheduler;
+
+
+import com.earnest.crawler.exception.TakeTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 无锁的调度器，并且能够保证请求唯一。
+ * <p>
+ * 任务保存在无锁的多生产者/多消费者队列中，去重使用独立的并发集合，
+ * 取值与放入都不会争抢同一把锁。阻塞取值通过{@link Semaphore}实现，许可数即为队列中的任务数，
+ * 所有任务都处理完成时会额外释放一个许可，用于唤醒等待的线程。
+ */
+@Slf4j
+public class LockFreeUniqueScheduler implements Scheduler, Checkpointable {
+    //任务值
+    private final Queue<HttpUriRequest> taskQueue = new ConcurrentLinkedQueue<>();
+    //历史值（包含待处理与已处理的请求）
+    private final HistoryStore historyStore;
+    //可取的任务数
+    private final Semaphore available = new Semaphore(0);
+    //阻塞超时时间
+    private final int timeout;
+    //已经取出但还没有处理完成的任务数
+    private final AtomicInteger inFlight = new AtomicInteger();
+    //已经取出但还没有处理完成的任务，快照时作为待处理的任务保存
+    private final Set<HttpUriRequest> inFlightRequests = ConcurrentHashMap.newKeySet();
+    //取值和放入时共享，快照时独占，保证任务总是在队列或inFlightRequests中，并且与历史记录一致
+    private final StampedLock snapshotLock = new StampedLock();
+
+    private final static int DEFAULT_TIMEOUT = 5000;
+
+    public LockFreeUniqueScheduler(int initialCapacity, int timeout, HistoryStore historyStore) {
+        this.historyStore = historyStore == null ? new LongHashHistoryStore(initialCapacity * 10) : historyStore;
+        this.timeout = timeout;
+    }
+
+    public LockFreeUniqueScheduler(int initialCapacity, int timeout) {
+        this(initialCapacity, timeout, null);
+    }
+
+    public LockFreeUniqueScheduler(int timeout, HistoryStore historyStore) {
+        this(10000, timeout == 0 ? DEFAULT_TIMEOUT : timeout, historyStore);
+    }
+
+    public LockFreeUniqueScheduler(int timeout) {
+        this(10000, timeout == 0 ? DEFAULT_TIMEOUT : timeout);
+    }
+
+    public LockFreeUniqueScheduler() {
+        this(DEFAULT_TIMEOUT);
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return taskQueue.isEmpty();
+    }
+
+    @Override
+    public HttpUriRequest take() {
+        try {
+            return acquire(timeout);
+        } catch (InterruptedException e) {
+            log.error("Interrupted when getting a httpUriRequest,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max) {
+        return takeBatch(max, timeout);
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max, long timeoutMillis) {
+        Assert.isTrue(max > 0, "max <1");
+        try {
+            HttpUriRequest first = acquire(timeoutMillis);
+            if (first == null) {
+                return Collections.emptyList();
+            }
+            List<HttpUriRequest> httpUriRequests = new ArrayList<>(Math.min(max, 16));
+            httpUriRequests.add(first);
+            //取到一个任务后只获取当前已有的许可，不再等待
+            while (httpUriRequests.size() < max && available.tryAcquire()) {
+                HttpUriRequest httpUriRequest = pollAcquired();
+                if (httpUriRequest == null) {
+                    break;
+                }
+                httpUriRequests.add(httpUriRequest);
+            }
+            return httpUriRequests;
+        } catch (InterruptedException e) {
+            log.error("Interrupted when getting httpUriRequests,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 取出一个任务，没有任务时等待。队列为空并且没有正在处理的任务时，不会再有新的任务，返回<code>null</code>。
+     */
+    private HttpUriRequest acquire(long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            if (!available.tryAcquire()) {
+                if (isQuiescent()) {
+                    return null;
+                }
+                log.debug("The number of threads currently waiting is {}", available.getQueueLength() + 1);
+                long start = System.nanoTime();
+                //等待取值
+                if (!available.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+                    if (isQuiescent()) {
+                        return null;
+                    }
+                    throw new TakeTimeoutException("the time is out");
+                }
+                remaining -= System.nanoTime() - start;
+            }
+            HttpUriRequest httpUriRequest = pollAcquired();
+            if (httpUriRequest != null || isQuiescent()) {
+                return httpUriRequest;
+            }
+        }
+    }
+
+    /**
+     * 在获取许可后取值。许可也可能是任务全部完成时释放的，用于唤醒等待的线程，此时返回<code>null</code>。
+     */
+    private HttpUriRequest pollAcquired() {
+        //先计数再取值，避免其他线程误判为没有正在处理的任务
+        inFlight.incrementAndGet();
+        HttpUriRequest httpUriRequest;
+        long stamp = snapshotLock.readLock();
+        try {
+            httpUriRequest = taskQueue.poll();
+            if (httpUriRequest != null) {
+                inFlightRequests.add(httpUriRequest);
+            }
+        } finally {
+            snapshotLock.unlockRead(stamp);
+        }
+        if (httpUriRequest == null && inFlight.decrementAndGet() == 0 && isEmpty()) {
+            //继续传递许可，唤醒下一个等待的线程
+            available.release();
+        }
+        return httpUriRequest;
+    }
+
+    private boolean isQuiescent() {
+        return inFlight.get() == 0 && isEmpty();
+    }
+
+    @Override
+    public void complete(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return;
+        inFlightRequests.remove(httpUriRequest);
+        int current;
+        do {
+            current = inFlight.get();
+            if (current == 0) {
+                return;
+            }
+        } while (!inFlight.compareAndSet(current, current - 1));
+        if (current == 1 && isEmpty()) {
+            //不会再有新的任务，释放一个许可唤醒等待的线程
+            available.release();
+        }
+    }
+
+    @Override
+    public boolean put(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return true;
+        long fingerprint = Fingerprints.fingerprint(httpUriRequest);
+        long stamp = snapshotLock.readLock();
+        try {
+            if (!historyStore.add(fingerprint)) {
+                log.trace("URI:{} is already in the history set", httpUriRequest.getURI());
+                return false;
+            }
+            taskQueue.offer(httpUriRequest);
+        } finally {
+            snapshotLock.unlockRead(stamp);
+        }
+        available.release();
+        return true;
+    }
+
+    /**
+     * 已经取出但还没有处理完成的任务也作为待处理的任务保存，恢复后重新处理。
+     * 队列和历史记录在同一次加锁中复制，期间取值和放入都会等待，放入到一半的请求不会只出现在其中之一。
+     */
+    @Override
+    public SchedulerSnapshot snapshot() {
+        long stamp = snapshotLock.writeLock();
+        try {
+            List<HttpUriRequest> pendingRequests = new ArrayList<>(inFlightRequests);
+            pendingRequests.addAll(taskQueue);
+            return new SchedulerSnapshot(pendingRequests, historyStore.snapshot());
+        } finally {
+            snapshotLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    @Override
+    public void restore(SchedulerSnapshot snapshot) {
+        List<HttpUriRequest> pendingRequests = snapshot.getPendingRequests();
+        taskQueue.addAll(pendingRequests);
+        available.release(pendingRequests.size());
+    }
+
+    @Override
+    public void putAll(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return;
+        addAll(httpUriRequests);
+    }
+
+    @Override
+    public int drainFrom(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return 0;
+        int added = addAll(httpUriRequests);
+        httpUriRequests.clear();
+        return added;
+    }
+
+    private int addAll(Collection<HttpUriRequest> httpUriRequests) {
+        //在加锁之前计算指纹
+        long[] fingerprints = Fingerprints.fingerprints(httpUriRequests);
+        int added = 0;
+        long stamp = snapshotLock.readLock();
+        try {
+            int i = 0;
+            for (HttpUriRequest httpUriRequest : httpUriRequests) {
+                if (httpUriRequest != null && historyStore.add(fingerprints[i])) {
+                    taskQueue.offer(httpUriRequest);
+                    added++;
+                }
+                i++;
+            }
+        } finally {
+            snapshotLock.unlockRead(stamp);
+        }
+        //一次性释放许可，唤醒等待的线程
+        if (added > 0) {
+            available.release(added);
+        }
+        return added;
+    }
+}
@@ -0,0 +1,189 @@
+package com.earnest.crawler.scheduler;
+
+import org.springframework.util.Assert;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 使用开放寻址的<code>long</code>数组保存指纹，每个指纹只占用8到16个字节。
+ * <p>
+ * 数组被分为若干段，每段单独加锁，减少多线程下的竞争。
+ */
+public class LongHashHistoryStore implements HistoryStore {
+
+    private static final int DEFAULT_SEGMENTS = 64;
+
+    //空槽位的值，值为0的指纹会被替换
+    private static final long EMPTY = 0L;
+
+    private static final long ZERO_REPLACEMENT = 0x9e3779b97f4a7c15L;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment[] segments;
+
+    private final int segmentShift;
+
+    public LongHashHistoryStore(int expectedSize) {
+        Assert.isTrue(expectedSize >= 0, "expectedSize <0");
+        segments = new Segment[DEFAULT_SEGMENTS];
+        segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(DEFAULT_SEGMENTS);
+        int segmentCapacity = tableSizeFor((int) (expectedSize / DEFAULT_SEGMENTS / LOAD_FACTOR) + 1);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public LongHashHistoryStore() {
+        this(100000);
+    }
+
+    private LongHashHistoryStore(Segment[] segments) {
+        this.segments = segments;
+        this.segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(segments.length);
+    }
+
+    @Override
+    public boolean add(long fingerprint) {
+        fingerprint = fingerprint == EMPTY ? ZERO_REPLACEMENT : fingerprint;
+        return segmentFor(fingerprint).add(fingerprint);
+    }
+
+    @Override
+    public boolean contains(long fingerprint) {
+        fingerprint = fingerprint == EMPTY ? ZERO_REPLACEMENT : fingerprint;
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public HistoryStore snapshot() {
+        Segment[] copies = new Segment[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            copies[i] = segments[i].copy();
+        }
+        return new LongHashHistoryStore(copies);
+    }
+
+    @Override
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(segments.length);
+        for (Segment segment : segments) {
+            segment.writeTo(output);
+        }
+    }
+
+    @Override
+    public void readFrom(DataInput input) throws IOException {
+        int segmentCount = input.readInt();
+        for (int i = 0; i < segmentCount; i++) {
+            int size = input.readInt();
+            for (int j = 0; j < size; j++) {
+                add(input.readLong());
+            }
+        }
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        //高位选择段，低位用于段内寻址
+        return segments[(int) (fingerprint >>> segmentShift)];
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        return size < 0 ? 1 << 30 : size;
+    }
+
+
+    private static class Segment {
+
+        private long[] table;
+
+        private int size;
+
+        private int threshold;
+
+        Segment(int capacity) {
+            table = new long[capacity];
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        synchronized Segment copy() {
+            Segment copy = new Segment(0);
+            copy.table = table.clone();
+            copy.size = size;
+            copy.threshold = threshold;
+            return copy;
+        }
+
+        synchronized void writeTo(DataOutput output) throws IOException {
+            output.writeInt(size);
+            for (long fingerprint : table) {
+                if (fingerprint != EMPTY) {
+                    output.writeLong(fingerprint);
+                }
+            }
+        }
+
+        synchronized boolean add(long fingerprint) {
+            int mask = table.length - 1;
+            int index = (int) fingerprint & mask;
+            long current;
+            while ((current = table[index]) != EMPTY) {
+                if (current == fingerprint) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = fingerprint;
+            if (++size > threshold) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            int mask = table.length - 1;
+            int index = (int) fingerprint & mask;
+            long current;
+            while ((current = table[index]) != EMPTY) {
+                if (current == fingerprint) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] oldTable = table;
+            long[] newTable = new long[oldTable.length << 1];
+            int mask = newTable.length - 1;
+            for (long fingerprint : oldTable) {
+                if (fingerprint != EMPTY) {
+                    int index = (int) fingerprint & mask;
+                    while (newTable[index] != EMPTY) {
+                        index = (index + 1) & mask;
+                    }
+                    newTable[index] = fingerprint;
+                }
+            }
+            table = newTable;
+            threshold = (int) (newTable.length * LOAD_FACTOR);
+        }
+    }
+}
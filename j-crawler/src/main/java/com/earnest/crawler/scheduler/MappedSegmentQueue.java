@@ -0,0 +1,250 @@
+package com.earnest.crawler.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * 基于内存映射文件的先进先出队列。线程不安全。
+ * <p>
+ * 记录以<code>[长度][内容]</code>的格式追加写入固定大小的段文件中，
+ * 段文件被读完后会被回收重用，避免反复创建文件。关闭时解除映射并删除所有段文件。
+ */
+@Slf4j
+class MappedSegmentQueue implements Closeable {
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private static final Object UNSAFE;
+
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Mapped segments cannot be unmapped explicitly,error:{}", e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    //保留的空闲段数量
+    private final int maxFreeSegments;
+
+    //正在使用的段，头部读取，尾部写入
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    //读完后回收的段
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+
+    private long size;
+
+    private int segmentSequence;
+
+    MappedSegmentQueue(Path directory, int segmentSize, int maxFreeSegments) {
+        Assert.notNull(directory, "directory is null");
+        Assert.isTrue(segmentSize > LENGTH_BYTES, "segmentSize is too small");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxFreeSegments = maxFreeSegments;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long size() {
+        return size;
+    }
+
+    void offer(byte[] record) {
+        int required = record.length + LENGTH_BYTES;
+        Assert.state(required <= segmentSize, "record is larger than the segment size:" + segmentSize);
+
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.writeRemaining() < required) {
+            tail = obtainSegment();
+            segments.addLast(tail);
+        }
+        tail.write(record);
+        size++;
+    }
+
+    byte[] poll() {
+        Segment head = segments.peekFirst();
+        while (head != null && !head.readable()) {
+            //段已经读完且不再写入
+            if (head == segments.peekLast()) {
+                head.reset();
+                return null;
+            }
+            recycle(segments.pollFirst());
+            head = segments.peekFirst();
+        }
+        if (head == null) {
+            return null;
+        }
+        size--;
+        return head.read();
+    }
+
+    /**
+     * 按先进先出的顺序遍历还没有取出的记录，不改变读取位置。
+     */
+    void forEach(Consumer<byte[]> action) {
+        for (Segment segment : segments) {
+            segment.forEach(action);
+        }
+    }
+
+    private Segment obtainSegment() {
+        Segment segment = freeSegments.pollFirst();
+        if (segment != null) {
+            return segment;
+        }
+        Path file = directory.resolve("segment-" + (segmentSequence++) + ".dat");
+        log.debug("Create a new frontier segment:{}", file);
+        return new Segment(file, segmentSize);
+    }
+
+    private void recycle(Segment segment) {
+        if (freeSegments.size() < maxFreeSegments) {
+            segment.reset();
+            freeSegments.addLast(segment);
+        } else {
+            segment.delete();
+        }
+    }
+
+    @Override
+    public void close() {
+        segments.forEach(Segment::delete);
+        freeSegments.forEach(Segment::delete);
+        segments.clear();
+        freeSegments.clear();
+        size = 0;
+    }
+
+    /**
+     * 立即释放映射的内存，不支持时等待垃圾回收。
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (UNSAFE == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Failed to unmap the frontier segment,error:{}", e.getMessage());
+        }
+    }
+
+    private static class Segment {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int readPosition;
+
+        private int writePosition;
+
+        Segment(Path file, int segmentSize) {
+            this.file = file;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int writeRemaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        boolean readable() {
+            return readPosition < writePosition;
+        }
+
+        void write(byte[] record) {
+            buffer.putInt(writePosition, record.length);
+            buffer.position(writePosition + LENGTH_BYTES);
+            buffer.put(record);
+            writePosition += LENGTH_BYTES + record.length;
+        }
+
+        byte[] read() {
+            int length = buffer.getInt(readPosition);
+            byte[] record = new byte[length];
+            buffer.position(readPosition + LENGTH_BYTES);
+            buffer.get(record);
+            readPosition += LENGTH_BYTES + length;
+            return record;
+        }
+
+        void forEach(Consumer<byte[]> action) {
+            ByteBuffer view = buffer.duplicate();
+            int position = readPosition;
+            while (position < writePosition) {
+                byte[] record = new byte[view.getInt(position)];
+                view.position(position + LENGTH_BYTES);
+                view.get(record);
+                position += LENGTH_BYTES + record.length;
+                action.accept(record);
+            }
+        }
+
+        void reset() {
+            readPosition = 0;
+            writePosition = 0;
+        }
+
+        /**
+         * 删除后不能再访问该段。
+         */
+        void delete() {
+            try {
+                channel.close();
+                //映射会一直占用文件直到被回收，在某些系统上无法删除文件
+                unmap(buffer);
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete the frontier segment:{},error:{}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.earnest.crawler.scheduler;
+
+import com.earnest.crawler.exception.TakeTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 使用Redis保存任务的调度器，多个JVM中的爬虫可以共同完成同一个抓取任务，并且能够保证请求唯一。
+ * <p>
+ * 去重、放入和取出都通过Lua脚本原子执行，批量操作只需要一次网络往返。
+ * 取出的请求以租约的形式保存在有序集合中，处理完成后删除，运行中的租约会定期续期；
+ * 节点宕机后租约过期，请求会被放回队列由其他节点处理。每次取出时为租约生成新的令牌，
+ * 续期、完成和放回时先比较令牌，租约过期后恢复的节点不会删除其他节点重新取得的租约。
+ * 所有节点的队列和租约都为空时，取值立即返回，抓取结束。
+ * <p>
+ * 使用的键（以前缀<code>crawl</code>为例）：
+ * <ul>
+ * <li><code>{crawl}:seen</code> 历史请求的指纹（集合）</li>
+ * <li><code>{crawl}:queue</code> 待处理的请求（列表）</li>
+ * <li><code>{crawl}:leases</code> 处理中的请求，分数为租约的到期时间（有序集合）</li>
+ * <li><code>{crawl}:lease-tokens</code> 处理中的请求和租约的令牌（哈希）</li>
+ * </ul>
+ * 前缀两边的花括号是Redis Cluster的hash tag，保证脚本操作的键位于同一个slot。
+ * 租约的到期时间使用各节点的时钟，节点之间的时间误差需要远小于租约的时长。
+ * 需要引入<code>spring-data-redis</code>以及Redis的客户端。
+ */
+@Slf4j
+public class RedisScheduler implements Scheduler, Closeable {
+
+    //KEYS: seen, queue  ARGV: fingerprint1, request1, fingerprint2, request2...
+    private static final RedisScript<Long> PUSH_SCRIPT = new DefaultRedisScript<>(
+            "local added = 0\n" +
+                    "for i = 1, #ARGV, 2 do\n" +
+                    "  if redis.call('SADD', KEYS[1], ARGV[i]) == 1 then\n" +
+                    "    redis.call('RPUSH', KEYS[2], ARGV[i + 1])\n" +
+                    "    added = added + 1\n" +
+                    "  end\n" +
+                    "end\n" +
+                    "return added", Long.class);
+
+    //先将过期的租约放回队列头部，再取出请求并设置租约和令牌
+    //KEYS: queue, leases, tokens  ARGV: max, now, expireAt, token
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>(
+            "local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[2], 'LIMIT', 0, 100)\n" +
+                    "for _, item in ipairs(expired) do\n" +
+                    "  redis.call('ZREM', KEYS[2], item)\n" +
+                    "  redis.call('HDEL', KEYS[3], item)\n" +
+                    "  redis.call('LPUSH', KEYS[1], item)\n" +
+                    "end\n" +
+                    "local items = {}\n" +
+                    "for i = 1, tonumber(ARGV[1]) do\n" +
+                    "  local item = redis.call('LPOP', KEYS[1])\n" +
+                    "  if not item then break end\n" +
+                    "  redis.call('ZADD', KEYS[2], ARGV[3], item)\n" +
+                    "  redis.call('HSET', KEYS[3], item, ARGV[4])\n" +
+                    "  items[i] = item\n" +
+                    "end\n" +
+                    "return items", List.class);
+
+    //令牌相同时才续期
+    //KEYS: leases, tokens  ARGV: expireAt, request1, token1, request2, token2...
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local renewed = 0\n" +
+                    "for i = 2, #ARGV, 2 do\n" +
+                    "  if redis.call('HGET', KEYS[2], ARGV[i]) == ARGV[i + 1] then\n" +
+                    "    redis.call('ZADD', KEYS[1], ARGV[1], ARGV[i])\n" +
+                    "    renewed = renewed + 1\n" +
+                    "  end\n" +
+                    "end\n" +
+                    "return renewed", Long.class);
+
+    //令牌相同时才删除租约
+    //KEYS: leases, tokens  ARGV: request, token
+    private static final RedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[2], ARGV[1]) ~= ARGV[2] then\n" +
+                    "  return 0\n" +
+                    "end\n" +
+                    "redis.call('HDEL', KEYS[2], ARGV[1])\n" +
+                    "return redis.call('ZREM', KEYS[1], ARGV[1])", Long.class);
+
+    //令牌相同时才放回队列
+    //KEYS: queue, leases, tokens  ARGV: request1, token1, request2, token2...
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local released = 0\n" +
+                    "for i = 1, #ARGV, 2 do\n" +
+                    "  if redis.call('HGET', KEYS[3], ARGV[i]) == ARGV[i + 1] then\n" +
+                    "    redis.call('HDEL', KEYS[3], ARGV[i])\n" +
+                    "    redis.call('ZREM', KEYS[2], ARGV[i])\n" +
+                    "    redis.call('LPUSH', KEYS[1], ARGV[i])\n" +
+                    "    released = released + 1\n" +
+                    "  end\n" +
+                    "end\n" +
+                    "return released", Long.class);
+
+    //KEYS: queue, leases
+    private static final RedisScript<Long> PENDING_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('LLEN', KEYS[1]) + redis.call('ZCARD', KEYS[2])", Long.class);
+
+    //参数和返回的列表元素都是字节数组，不需要转换
+    private static final RedisSerializer<byte[]> BYTES = new RedisSerializer<byte[]>() {
+        @Override
+        public byte[] serialize(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    //每次脚本调用最多传入的请求数
+    private static final int MAX_ITEMS_PER_CALL = 1000;
+
+    private static final long MIN_POLL_INTERVAL = 10;
+
+    private static final long MAX_POLL_INTERVAL = 200;
+
+    private final static int DEFAULT_TIMEOUT = 5000;
+
+    private final static long DEFAULT_LEASE_MILLIS = 60000;
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+
+    private final String seenKey;
+
+    private final String queueKey;
+
+    private final String leaseKey;
+
+    private final String leaseTokenKey;
+    //本节点的标识，与取出的次数组成租约的令牌
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong takeCount = new AtomicLong();
+    //租约的时长
+    private final long leaseMillis;
+    //阻塞超时时间
+    private final int timeout;
+    //本节点取出但还没有处理完成的请求，值为请求在Redis中的内容和租约的令牌
+    private final Map<HttpUriRequest, Lease> leased = new ConcurrentHashMap<>();
+    //续期租约
+    private final ScheduledExecutorService leaseRenewer;
+
+    public RedisScheduler(RedisConnectionFactory connectionFactory, String keyPrefix, long leaseMillis, int timeout) {
+        Assert.notNull(connectionFactory, "connectionFactory is null");
+        Assert.hasText(keyPrefix, "keyPrefix is empty");
+        Assert.isTrue(keyPrefix.indexOf('{') < 0 && keyPrefix.indexOf('}') < 0, "keyPrefix contains braces");
+        Assert.isTrue(leaseMillis >= 3, "leaseMillis <3");
+        this.redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(RedisSerializer.string());
+        redisTemplate.setValueSerializer(BYTES);
+        redisTemplate.afterPropertiesSet();
+        //同一个任务的键必须在同一个slot，否则集群模式下执行脚本会报CROSSSLOT
+        String hashTag = "{" + keyPrefix + "}";
+        this.seenKey = hashTag + ":seen";
+        this.queueKey = hashTag + ":queue";
+        this.leaseKey = hashTag + ":leases";
+        this.leaseTokenKey = hashTag + ":lease-tokens";
+        this.leaseMillis = leaseMillis;
+        this.timeout = timeout == 0 ? DEFAULT_TIMEOUT : timeout;
+        this.leaseRenewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-scheduler-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leaseRenewer.scheduleWithFixedDelay(this::renewLeases, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param connectionFactory Redis的连接工厂。
+     * @param keyPrefix         键的前缀，同一个抓取任务的节点需要使用相同的前缀，不能包含花括号。
+     */
+    public RedisScheduler(RedisConnectionFactory connectionFactory, String keyPrefix) {
+        this(connectionFactory, keyPrefix, DEFAULT_LEASE_MILLIS, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * 删除抓取任务的所有数据，重新开始抓取。其他节点需要已经停止。
+     */
+    public void reset() {
+        redisTemplate.delete(Arrays.asList(seenKey, queueKey, leaseKey, leaseTokenKey));
+        leased.clear();
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        Long size = redisTemplate.opsForList().size(queueKey);
+        return size == null || size == 0;
+    }
+
+    @Override
+    public HttpUriRequest take() {
+        List<HttpUriRequest> httpUriRequests = takeBatch(1, timeout);
+        return httpUriRequests.isEmpty() ? null : httpUriRequests.get(0);
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max) {
+        return takeBatch(max, timeout);
+    }
+
+    /**
+     * 没有请求但其他节点还有正在处理的请求时，按逐渐增加的间隔轮询。
+     */
+    @Override
+    public List<HttpUriRequest> takeBatch(int max, long timeoutMillis) {
+        Assert.isTrue(max > 0, "max <1");
+        long start = System.currentTimeMillis();
+        long pollInterval = MIN_POLL_INTERVAL;
+        while (true) {
+            long now = System.currentTimeMillis();
+            byte[] token = (nodeId + ":" + takeCount.incrementAndGet()).getBytes(StandardCharsets.US_ASCII);
+            List<byte[]> items = execute(TAKE_SCRIPT, Arrays.asList(queueKey, leaseKey, leaseTokenKey),
+                    toBytes(max), toBytes(now), toBytes(now + leaseMillis), token);
+            if (!CollectionUtils.isEmpty(items)) {
+                List<HttpUriRequest> httpUriRequests = new ArrayList<>(items.size());
+                for (byte[] item : items) {
+                    HttpUriRequest httpUriRequest = HttpUriRequestCodec.decode(item);
+                    leased.put(httpUriRequest, new Lease(item, token));
+                    httpUriRequests.add(httpUriRequest);
+                }
+                return httpUriRequests;
+            }
+            Long pending = execute(PENDING_SCRIPT, Arrays.asList(queueKey, leaseKey));
+            if (pending == null || pending == 0) {
+                log.debug("There are no pending or in-flight tasks in {}", queueKey);
+                return Collections.emptyList();
+            }
+            long remaining = timeoutMillis - (now - start);
+            if (remaining <= 0) {
+                throw new TakeTimeoutException("the time is out");
+            }
+            try {
+                Thread.sleep(Math.min(pollInterval, remaining));
+            } catch (InterruptedException e) {
+                log.error("Interrupted when getting httpUriRequests,error:{}", e.getMessage());
+                Thread.currentThread().interrupt();
+                return Collections.emptyList();
+            }
+            pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+        }
+    }
+
+    @Override
+    public boolean put(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return true;
+        Long added = execute(PUSH_SCRIPT, Arrays.asList(seenKey, queueKey),
+                fingerprintOf(httpUriRequest), HttpUriRequestCodec.encode(httpUriRequest));
+        return added != null && added > 0;
+    }
+
+    @Override
+    public void putAll(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return;
+        addAll(httpUriRequests);
+    }
+
+    @Override
+    public int drainFrom(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return 0;
+        int added = addAll(httpUriRequests);
+        httpUriRequests.clear();
+        return added;
+    }
+
+    private int addAll(Collection<HttpUriRequest> httpUriRequests) {
+        int added = 0;
+        List<byte[]> args = new ArrayList<>(Math.min(httpUriRequests.size(), MAX_ITEMS_PER_CALL) * 2);
+        for (HttpUriRequest httpUriRequest : httpUriRequests) {
+            if (httpUriRequest == null) continue;
+            args.add(fingerprintOf(httpUriRequest));
+            args.add(HttpUriRequestCodec.encode(httpUriRequest));
+            if (args.size() >= MAX_ITEMS_PER_CALL * 2) {
+                added += push(args);
+                args.clear();
+            }
+        }
+        if (!args.isEmpty()) {
+            added += push(args);
+        }
+        return added;
+    }
+
+    private int push(List<byte[]> args) {
+        Long added = execute(PUSH_SCRIPT, Arrays.asList(seenKey, queueKey), args.toArray());
+        return added == null ? 0 : added.intValue();
+    }
+
+    @Override
+    public void complete(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return;
+        Lease lease = leased.remove(httpUriRequest);
+        if (lease != null) {
+            Long completed = execute(COMPLETE_SCRIPT, Arrays.asList(leaseKey, leaseTokenKey), lease.item, lease.token);
+            if (completed == null || completed == 0) {
+                log.warn("The lease of {} has expired and may be processed again", httpUriRequest.getURI());
+            }
+        }
+    }
+
+    private void renewLeases() {
+        if (leased.isEmpty()) {
+            return;
+        }
+        try {
+            List<Object> args = new ArrayList<>();
+            for (Lease lease : leased.values()) {
+                if (args.isEmpty()) {
+                    args.add(toBytes(System.currentTimeMillis() + leaseMillis));
+                }
+                args.add(lease.item);
+                args.add(lease.token);
+                if (args.size() > MAX_ITEMS_PER_CALL * 2) {
+                    execute(RENEW_SCRIPT, Arrays.asList(leaseKey, leaseTokenKey), args.toArray());
+                    args.clear();
+                }
+            }
+            if (!args.isEmpty()) {
+                execute(RENEW_SCRIPT, Arrays.asList(leaseKey, leaseTokenKey), args.toArray());
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to renew the leases of {},error:{}", leaseKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 将本节点还没有处理完成的请求放回队列。
+     */
+    @Override
+    public void close() {
+        leaseRenewer.shutdownNow();
+        if (leased.isEmpty()) {
+            return;
+        }
+        List<byte[]> args = new ArrayList<>(leased.size() * 2);
+        for (Lease lease : leased.values()) {
+            args.add(lease.item);
+            args.add(lease.token);
+        }
+        Long released = execute(RELEASE_SCRIPT, Arrays.asList(queueKey, leaseKey, leaseTokenKey), args.toArray());
+        log.info("Released {} unfinished requests back to {}", released, queueKey);
+        leased.clear();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> T execute(RedisScript<?> script, List<String> keys, Object... args) {
+        //返回的数字不经过序列化
+        return (T) redisTemplate.execute((RedisScript) script, BYTES, (RedisSerializer) BYTES, keys, args);
+    }
+
+    private static byte[] fingerprintOf(HttpUriRequest httpUriRequest) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(Fingerprints.fingerprint(httpUriRequest)).array();
+    }
+
+    private static byte[] toBytes(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    private static class Lease {
+        //请求在Redis中的内容
+        private final byte[] item;
+
+        private final byte[] token;
+
+        Lease(byte[] item, byte[] token) {
+            this.item = item;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.earnest.crawler.scheduler;
+
+import com.earnest.crawler.Browser;
+import com.earnest.crawler.RequestAttributes;
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * 根据规则为请求打分。分数为基础分与所有命中规则的分数之和。
+ * <blockquote>
+ * 例:
+ * <pre>
+ *     new RuleBasedHttpUriRequestScorer(5)
+ *             .match("/a_\\w+\\.html", 5)
+ *             .host("list.iqiyi.com", -1)
+ *             .tag("album", 3)
+ *             .depth(-1);
+ * </pre>
+ * </blockquote>
+ */
+public class RuleBasedHttpUriRequestScorer implements HttpUriRequestScorer {
+
+    private final int baseScore;
+
+    private final List<ToIntFunction<HttpUriRequest>> rules = new ArrayList<>();
+
+    public RuleBasedHttpUriRequestScorer(int baseScore) {
+        this.baseScore = baseScore;
+    }
+
+    public RuleBasedHttpUriRequestScorer() {
+        this(0);
+    }
+
+    /**
+     * 请求地址匹配正则表达式时加分。
+     */
+    public RuleBasedHttpUriRequestScorer match(String regex, int score) {
+        Assert.hasText(regex, "regex is empty");
+        Pattern pattern = Pattern.compile(regex);
+        rules.add(r -> pattern.matcher(r.getURI().toString()).find() ? score : 0);
+        return this;
+    }
+
+    /**
+     * 请求的主机相同时加分。
+     */
+    public RuleBasedHttpUriRequestScorer host(String host, int score) {
+        Assert.hasText(host, "host is empty");
+        rules.add(r -> host.equalsIgnoreCase(r.getURI().getHost()) ? score : 0);
+        return this;
+    }
+
+    /**
+     * 请求的来源地址匹配正则表达式时加分。
+     */
+    public RuleBasedHttpUriRequestScorer referer(String regex, int score) {
+        Assert.hasText(regex, "regex is empty");
+        Pattern pattern = Pattern.compile(regex);
+        rules.add(r -> {
+            Header referer = r.getFirstHeader(Browser.REFERER);
+            return referer != null && pattern.matcher(referer.getValue()).find() ? score : 0;
+        });
+        return this;
+    }
+
+    /**
+     * 请求的标签相同时加分。
+     *
+     * @see RequestAttributes#getTag(HttpUriRequest)
+     */
+    public RuleBasedHttpUriRequestScorer tag(String tag, int score) {
+        Assert.hasText(tag, "tag is empty");
+        rules.add(r -> tag.equals(RequestAttributes.getTag(r)) ? score : 0);
+        return this;
+    }
+
+    /**
+     * 按抓取深度加分，一般设置为负数使深层的页面靠后。
+     *
+     * @param scorePerLevel 每一层的分数。
+     */
+    public RuleBasedHttpUriRequestScorer depth(int scorePerLevel) {
+        rules.add(r -> RequestAttributes.getDepth(r) * scorePerLevel);
+        return this;
+    }
+
+    /**
+     * 自定义规则。
+     */
+    public RuleBasedHttpUriRequestScorer rule(ToIntFunction<HttpUriRequest> rule) {
+        Assert.notNull(rule, "rule is null");
+        rules.add(rule);
+        return this;
+    }
+
+    @Override
+    public int score(HttpUriRequest httpUriRequest) {
+        int score = baseScore;
+        for (ToIntFunction<HttpUriRequest> rule : rules) {
+            score += rule.applyAsInt(httpUriRequest);
+        }
+        return score;
+    }
+}
@@ -1,8 +1,13 @@
 package com.earnest.crawler.scheduler;
 
+import com.earnest.crawler.exception.TakeTimeoutException;
 import org.apache.http.client.methods.HttpUriRequest;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public interface Scheduler {
 
@@ -14,4 +19,93 @@ public interface Scheduler {
 
     void putAll(Collection<HttpUriRequest> httpUriRequests);
 
+    /**
+     * 批量取出请求，使用调度器自身的超时时间。
+     *
+     * @param max 最多取出的请求数。
+     * @return 取出的请求，没有请求时返回空的列表。
+     * @see #takeBatch(int, long)
+     */
+    default List<HttpUriRequest> takeBatch(int max) {
+        HttpUriRequest first = take();
+        if (first == null) {
+            return Collections.emptyList();
+        }
+        List<HttpUriRequest> httpUriRequests = new ArrayList<>(Math.min(max, 16));
+        httpUriRequests.add(first);
+        try {
+            while (httpUriRequests.size() < max && !isEmpty()) {
+                HttpUriRequest httpUriRequest = take();
+                if (httpUriRequest == null) {
+                    break;
+                }
+                httpUriRequests.add(httpUriRequest);
+            }
+        } catch (TakeTimeoutException e) {
+            //已经取到的请求不能丢弃
+        }
+        return httpUriRequests;
+    }
+
+    /**
+     * 批量取出请求。没有请求时最多等待<code>timeoutMillis</code>毫秒，
+     * 取到第一个请求后不再等待，只取出当前已有的请求，最多取出<code>max</code>个。
+     * <p>
+     * 阻塞的调度器会记录已经取出但还没有{@link #complete(HttpUriRequest) 完成}的请求，
+     * 没有待处理的请求并且所有取出的请求都已经完成时，不会再有新的请求，立即返回空的列表。
+     * <p>
+     * 默认的实现不知道正在处理的请求，没有请求时每隔一段时间重新调用{@link #takeBatch(int)}，直到超时后返回空的列表，
+     * 由调用者判断是否还有正在处理的请求。
+     *
+     * @param max           最多取出的请求数。
+     * @param timeoutMillis 没有请求时的等待时间（毫秒）。
+     * @return 取出的请求，没有请求时返回空的列表。
+     * @throws TakeTimeoutException 阻塞的调度器等待超时。
+     */
+    default List<HttpUriRequest> takeBatch(int max, long timeoutMillis) {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long start = System.nanoTime();
+        while (true) {
+            List<HttpUriRequest> httpUriRequests = takeBatch(max);
+            long remaining = timeoutNanos - (System.nanoTime() - start);
+            if (!httpUriRequests.isEmpty() || remaining <= 0) {
+                return httpUriRequests;
+            }
+            try {
+                //其他线程可能正在放入新的请求
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(10)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return httpUriRequests;
+            }
+        }
+    }
+
+    /**
+     * 将集合中的请求全部放入调度器，然后清空集合，集合可以作为缓冲区重复使用。
+     *
+     * @param httpUriRequests 需要放入的请求。
+     * @return 实际加入的请求数，不包括重复的请求。
+     */
+    default int drainFrom(Collection<HttpUriRequest> httpUriRequests) {
+        int added = 0;
+        for (HttpUriRequest httpUriRequest : httpUriRequests) {
+            if (httpUriRequest != null && put(httpUriRequest)) {
+                added++;
+            }
+        }
+        httpUriRequests.clear();
+        return added;
+    }
+
+    /**
+     * 通知调度器通过{@link #take()}取出的请求已经处理完成，无论成功与否。
+     * 处理过程中提取出的新请求需要在调用此方法之前放入调度器。
+     *
+     * @param httpUriRequest 已处理完成的请求。
+     */
+    default void complete(HttpUriRequest httpUriRequest) {
+
+    }
+
 }
@@ -0,0 +1,85 @@
+package com.earnest.crawler.scheduler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 调度器的状态，包含待处理的请求和历史记录。
+ * <p>
+ * 文件格式：<code>[魔数][版本][历史记录的类型][历史记录][请求数][请求...]</code>。
+ */
+@Getter
+@AllArgsConstructor
+public class SchedulerSnapshot {
+
+    private static final int MAGIC = 0x4A435350;
+
+    //2: 指纹由请求方法、统一后的网址和请求体计算
+    //3: 请求保存提取规则的标签
+    //4: 请求中的字符串使用int长度，不再受writeUTF的64KB限制
+    private static final int VERSION = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<HttpUriRequest> pendingRequests;
+
+    private final HistoryStore historyStore;
+
+
+    /**
+     * 写入临时文件后再替换原文件，写入过程中失败不会破坏上一次的快照。
+     */
+    public void writeTo(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(historyStore.getClass().getName());
+            historyStore.writeTo(output);
+            output.writeInt(pendingRequests.size());
+            for (HttpUriRequest httpUriRequest : pendingRequests) {
+                HttpUriRequestCodec.encode(httpUriRequest, output);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照文件，历史记录被合并到<code>historyStore</code>中。
+     *
+     * @param path         快照文件。
+     * @param historyStore 调度器使用的历史记录，需要与快照中的类型一致。
+     */
+    public static SchedulerSnapshot readFrom(Path path, HistoryStore historyStore) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            Assert.state(input.readInt() == MAGIC, "not a scheduler snapshot:" + path);
+            int version = input.readInt();
+            Assert.state(version == VERSION, "unsupported scheduler snapshot version:" + version);
+            String historyStoreType = input.readUTF();
+            Assert.state(historyStore.getClass().getName().equals(historyStoreType),
+                    "the history store of snapshot is " + historyStoreType + ",but the scheduler uses " + historyStore.getClass().getName());
+            historyStore.readFrom(input);
+
+            int size = input.readInt();
+            List<HttpUriRequest> pendingRequests = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                pendingRequests.add(HttpUriRequestCodec.decode(input));
+            }
+            return new SchedulerSnapshot(pendingRequests, historyStore);
+        }
+    }
+
+}
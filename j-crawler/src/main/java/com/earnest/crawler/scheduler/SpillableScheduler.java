@@ -0,0 +1,323 @@
+package com.earnest.crawler.scheduler;
+
+
+import com.earnest.crawler.exception.TakeTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 可溢出到磁盘的阻塞调度器，并且能够保证请求唯一。
+ * <p>
+ * 内存中只保留少量的请求，超出的部分被序列化后追加到内存映射的段文件中，
+ * 按先进先出的顺序取出。段文件在读完后会被回收，堆内存的占用不随待处理请求的数量增长。
+ * 关闭时删除所有段文件，没有指定目录时还会删除创建的临时目录。
+ */
+@Slf4j
+public class SpillableScheduler implements Scheduler, Checkpointable, Closeable {
+    //内存中的任务
+    private final Deque<HttpUriRequest> headQueue;
+    //溢出到磁盘的任务
+    private final MappedSegmentQueue tailQueue;
+    //内存中最多保存的任务数
+    private final int headCapacity;
+    //历史值
+    private final HistoryStore historyStore;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //取值条件
+    private final Condition getCondition;
+    //阻塞超时时间
+    private final int timeout;
+    //已经取出但还没有处理完成的任务数
+    private int inFlight;
+    //已经取出但还没有处理完成的任务，快照时作为待处理的任务保存
+    private final Set<HttpUriRequest> inFlightRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+    //自动创建的临时目录，关闭时删除
+    private final Path temporaryDirectory;
+
+    private final static int DEFAULT_TIMEOUT = 5000;
+
+    private final static int DEFAULT_HEAD_CAPACITY = 1000;
+
+    private final static int DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    private final static int DEFAULT_MAX_FREE_SEGMENTS = 2;
+
+    public SpillableScheduler(Path directory, int headCapacity, int segmentSize, int timeout, HistoryStore historyStore) {
+        this(directory, false, headCapacity, segmentSize, timeout, historyStore);
+    }
+
+    private SpillableScheduler(Path directory, boolean temporary, int headCapacity, int segmentSize, int timeout, HistoryStore historyStore) {
+        Assert.isTrue(headCapacity > 0, "headCapacity <1");
+        this.temporaryDirectory = temporary ? directory : null;
+        this.headCapacity = headCapacity;
+        this.headQueue = new ArrayDeque<>(headCapacity);
+        this.tailQueue = new MappedSegmentQueue(directory, segmentSize, DEFAULT_MAX_FREE_SEGMENTS);
+        this.historyStore = historyStore == null ? new LongHashHistoryStore(headCapacity * 10) : historyStore;
+        this.timeout = timeout == 0 ? DEFAULT_TIMEOUT : timeout;
+        getCondition = lock.newCondition();
+    }
+
+    public SpillableScheduler(Path directory, int headCapacity, HistoryStore historyStore) {
+        this(directory, headCapacity, DEFAULT_SEGMENT_SIZE, DEFAULT_TIMEOUT, historyStore);
+    }
+
+    public SpillableScheduler(Path directory, int headCapacity) {
+        this(directory, headCapacity, null);
+    }
+
+    public SpillableScheduler(HistoryStore historyStore) {
+        this(createTempDirectory(), true, DEFAULT_HEAD_CAPACITY, DEFAULT_SEGMENT_SIZE, DEFAULT_TIMEOUT, historyStore);
+    }
+
+    public SpillableScheduler() {
+        this((HistoryStore) null);
+    }
+
+    private static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("crawler-frontier");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        try {
+            lock.lock();
+            return headQueue.isEmpty() && tailQueue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public HttpUriRequest take() {
+        try {
+            lock.lockInterruptibly();
+            try {
+                return awaitTask(timeout) ? obtainNewHttpUriRequest() : null;
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted when getting a httpUriRequest,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max) {
+        return takeBatch(max, timeout);
+    }
+
+    @Override
+    public List<HttpUriRequest> takeBatch(int max, long timeoutMillis) {
+        Assert.isTrue(max > 0, "max <1");
+        try {
+            lock.lockInterruptibly();
+            try {
+                if (!awaitTask(timeoutMillis)) {
+                    return Collections.emptyList();
+                }
+                List<HttpUriRequest> httpUriRequests = new ArrayList<>(Math.min(max, headCapacity));
+                HttpUriRequest httpUriRequest;
+                while (httpUriRequests.size() < max && (httpUriRequest = obtainNewHttpUriRequest()) != null) {
+                    httpUriRequests.add(httpUriRequest);
+                }
+                return httpUriRequests;
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted when getting httpUriRequests,error:{}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 等待任务，需要持有锁。队列为空并且没有正在处理的请求时，不会再有新的任务，立即返回。
+     *
+     * @return 有任务时返回<code>true</code>。
+     */
+    private boolean awaitTask(long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (headQueue.isEmpty() && tailQueue.isEmpty()) {
+            if (inFlight == 0) {
+                log.debug("There are no pending or in-flight tasks");
+                return false;
+            }
+            if (remaining <= 0) {
+                throw new TakeTimeoutException("the time is out");
+            }
+            log.debug("The number of threads currently waiting is {}", lock.getWaitQueueLength(getCondition) + 1);
+            remaining = getCondition.awaitNanos(remaining);
+        }
+        return true;
+    }
+
+    private HttpUriRequest obtainNewHttpUriRequest() {
+        if (headQueue.isEmpty()) {
+            //从磁盘中加载一批任务
+            byte[] record;
+            while (headQueue.size() < headCapacity && (record = tailQueue.poll()) != null) {
+                headQueue.offer(HttpUriRequestCodec.decode(record));
+            }
+        }
+        HttpUriRequest httpUriRequest = headQueue.poll();
+        if (httpUriRequest != null) {
+            inFlight++;
+            inFlightRequests.add(httpUriRequest);
+        }
+        return httpUriRequest;
+    }
+
+    @Override
+    public void complete(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return;
+        try {
+            lock.lock();
+            inFlightRequests.remove(httpUriRequest);
+            if (inFlight > 0 && --inFlight == 0 && headQueue.isEmpty() && tailQueue.isEmpty()) {
+                //不会再有新的任务，唤醒所有等待的线程
+                getCondition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean put(HttpUriRequest httpUriRequest) {
+        if (httpUriRequest == null) return true;
+        long fingerprint = Fingerprints.fingerprint(httpUriRequest);
+        try {
+            lock.lock();
+            if (!historyStore.add(fingerprint)) {
+                log.trace("URI:{} is already in the history set", httpUriRequest.getURI());
+                return false;
+            }
+            enqueue(httpUriRequest);
+            getCondition.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已经取出但还没有处理完成的任务也作为待处理的任务保存，恢复后重新处理。
+     * 磁盘中的任务需要在持有锁时解码，待处理的任务很多时会阻塞调度器较长的时间。
+     */
+    @Override
+    public SchedulerSnapshot snapshot() {
+        try {
+            lock.lock();
+            List<HttpUriRequest> pendingRequests = new ArrayList<>(inFlightRequests.size() + headQueue.size());
+            pendingRequests.addAll(inFlightRequests);
+            pendingRequests.addAll(headQueue);
+            tailQueue.forEach(record -> pendingRequests.add(HttpUriRequestCodec.decode(record)));
+            return new SchedulerSnapshot(pendingRequests, historyStore.snapshot());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public HistoryStore getHistoryStore() {
+        return historyStore;
+    }
+
+    @Override
+    public void restore(SchedulerSnapshot snapshot) {
+        try {
+            lock.lock();
+            snapshot.getPendingRequests().forEach(this::enqueue);
+            getCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return;
+        addAll(httpUriRequests);
+    }
+
+    @Override
+    public int drainFrom(Collection<HttpUriRequest> httpUriRequests) {
+        if (CollectionUtils.isEmpty(httpUriRequests)) return 0;
+        int added = addAll(httpUriRequests);
+        httpUriRequests.clear();
+        return added;
+    }
+
+    private int addAll(Collection<HttpUriRequest> httpUriRequests) {
+        //在加锁之前计算指纹
+        long[] fingerprints = Fingerprints.fingerprints(httpUriRequests);
+        try {
+            lock.lock();
+            int added = 0;
+            int i = 0;
+            for (HttpUriRequest httpUriRequest : httpUriRequests) {
+                if (httpUriRequest != null && historyStore.add(fingerprints[i])) {
+                    enqueue(httpUriRequest);
+                    added++;
+                }
+                i++;
+            }
+            //批量取值的线程可能一次取走多个任务，加入多个任务时唤醒全部线程
+            if (added == 1) {
+                getCondition.signal();
+            } else if (added > 1) {
+                getCondition.signalAll();
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(HttpUriRequest httpUriRequest) {
+        //磁盘中还有任务时也写入磁盘，保证先进先出
+        if (tailQueue.isEmpty() && headQueue.size() < headCapacity) {
+            headQueue.offer(httpUriRequest);
+        } else {
+            tailQueue.offer(HttpUriRequestCodec.encode(httpUriRequest));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            lock.lock();
+            headQueue.clear();
+            inFlightRequests.clear();
+            tailQueue.close();
+            if (temporaryDirectory != null) {
+                Files.deleteIfExists(temporaryDirectory);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete the frontier directory:{},error:{}", temporaryDirectory, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.earnest.crawler.scheduler;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * 将网址转换为统一的形式，使指向同一页面的不同写法得到相同的结果。
+ * <ul>
+ * <li>协议和主机名转为小写，去掉主机名末尾的点和默认端口</li>
+ * <li>去掉片段（<code>#</code>之后的内容）</li>
+ * <li>空路径转为<code>/</code>，去掉路径中的<code>.</code>和<code>..</code></li>
+ * <li>百分号编码的十六进制转为大写，不需要编码的字符解码</li>
+ * <li>查询参数按参数名排序，同名参数保持原来的顺序，去掉空的参数</li>
+ * </ul>
+ * 直接扫描字符串，不使用{@link java.net.URI}。没有<code>://</code>的网址只去掉片段。
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class UrlCanonicalizer {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    public static String canonicalize(String url) {
+        Assert.notNull(url, "url is null");
+        return canonicalize(url, new StringBuilder(url.length())).toString();
+    }
+
+    /**
+     * 将统一后的网址追加到<code>out</code>中。
+     */
+    static StringBuilder canonicalize(CharSequence url, StringBuilder out) {
+        int start = 0;
+        int end = url.length();
+        while (start < end && url.charAt(start) <= ' ') start++;
+        while (end > start && url.charAt(end - 1) <= ' ') end--;
+
+        int fragment = indexOf(url, '#', start, end);
+        if (fragment >= 0) {
+            end = fragment;
+        }
+        int schemeEnd = schemeEnd(url, start, end);
+        if (schemeEnd < 0) {
+            return out.append(url, start, end);
+        }
+        appendLowerCase(out, url, start, schemeEnd);
+        out.append("://");
+
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < end && url.charAt(authorityEnd) != '/' && url.charAt(authorityEnd) != '?') {
+            authorityEnd++;
+        }
+        appendAuthority(out, url, authorityStart, authorityEnd, defaultPort(url, start, schemeEnd));
+
+        int queryStart = indexOf(url, '?', authorityEnd, end);
+        int pathEnd = queryStart < 0 ? end : queryStart;
+        int pathStart = out.length();
+        if (authorityEnd == pathEnd) {
+            out.append('/');
+        } else {
+            appendEncoded(out, url, authorityEnd, pathEnd);
+            removeDotSegments(out, pathStart);
+        }
+        if (queryStart >= 0) {
+            appendQuery(out, url, queryStart + 1, end);
+        }
+        return out;
+    }
+
+    private static void appendAuthority(StringBuilder out, CharSequence url, int from, int to, int defaultPort) {
+        int at = lastIndexOf(url, '@', from, to);
+        if (at >= 0) {
+            //用户信息区分大小写
+            out.append(url, from, at + 1);
+            from = at + 1;
+        }
+        int hostEnd = to;
+        int portColon = -1;
+        if (from < to && url.charAt(from) == '[') {
+            //IPv6
+            int close = indexOf(url, ']', from, to);
+            hostEnd = close < 0 ? to : close + 1;
+            if (hostEnd < to && url.charAt(hostEnd) == ':') {
+                portColon = hostEnd;
+            }
+        } else {
+            portColon = indexOf(url, ':', from, to);
+            if (portColon >= 0) {
+                hostEnd = portColon;
+            }
+            if (hostEnd - from > 1 && url.charAt(hostEnd - 1) == '.') {
+                hostEnd--;
+            }
+        }
+        appendLowerCase(out, url, from, hostEnd);
+
+        if (portColon >= 0 && portColon + 1 < to) {
+            int port = parsePort(url, portColon + 1, to);
+            if (port < 0) {
+                out.append(url, portColon, to);
+            } else if (port != defaultPort) {
+                out.append(':').append(port);
+            }
+        }
+    }
+
+    private static void appendQuery(StringBuilder out, CharSequence url, int from, int to) {
+        int queryStart = out.length();
+        out.append('?');
+        int count = 0;
+        boolean sorted = true;
+        int previousStart = 0;
+        int previousEnd = 0;
+        for (int i = from; i <= to; ) {
+            int ampersand = indexOf(url, '&', i, to);
+            if (ampersand < 0) {
+                ampersand = to;
+            }
+            if (ampersand > i) {
+                if (count > 0) {
+                    out.append('&');
+                }
+                int pairStart = out.length();
+                appendEncoded(out, url, i, ampersand);
+                if (count > 0 && compareNames(out, previousStart, previousEnd, out, pairStart, out.length()) > 0) {
+                    sorted = false;
+                }
+                previousStart = pairStart;
+                previousEnd = out.length();
+                count++;
+            }
+            i = ampersand + 1;
+        }
+        if (count == 0) {
+            out.setLength(queryStart);
+        } else if (!sorted) {
+            //参数已经排好序时不需要额外的对象
+            String[] pairs = out.substring(queryStart + 1).split("&");
+            Arrays.sort(pairs, (a, b) -> compareNames(a, 0, a.length(), b, 0, b.length()));
+            out.setLength(queryStart + 1);
+            for (int i = 0; i < pairs.length; i++) {
+                if (i > 0) {
+                    out.append('&');
+                }
+                out.append(pairs[i]);
+            }
+        }
+    }
+
+    /**
+     * 只比较参数名，同名参数由稳定的排序保持原来的顺序。
+     */
+    private static int compareNames(CharSequence a, int aFrom, int aTo, CharSequence b, int bFrom, int bTo) {
+        int aEnd = indexOf(a, '=', aFrom, aTo);
+        int bEnd = indexOf(b, '=', bFrom, bTo);
+        aEnd = aEnd < 0 ? aTo : aEnd;
+        bEnd = bEnd < 0 ? bTo : bEnd;
+        int aLength = aEnd - aFrom;
+        int bLength = bEnd - bFrom;
+        for (int i = 0, length = Math.min(aLength, bLength); i < length; i++) {
+            int diff = a.charAt(aFrom + i) - b.charAt(bFrom + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    private static void appendEncoded(StringBuilder out, CharSequence url, int from, int to) {
+        int percent = indexOf(url, '%', from, to);
+        if (percent < 0) {
+            //大多数网址没有百分号编码，整段追加
+            out.append(url, from, to);
+            return;
+        }
+        out.append(url, from, percent);
+        for (int i = percent; i < to; i++) {
+            char c = url.charAt(i);
+            if (c == '%' && i + 2 < to) {
+                int high = Character.digit(url.charAt(i + 1), 16);
+                int low = Character.digit(url.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    int decoded = high << 4 | low;
+                    if (isUnreserved(decoded)) {
+                        out.append((char) decoded);
+                    } else {
+                        out.append('%').append(HEX_DIGITS[high]).append(HEX_DIGITS[low]);
+                    }
+                    i += 2;
+                    continue;
+                }
+            }
+            out.append(c);
+        }
+    }
+
+    private static void removeDotSegments(StringBuilder out, int pathStart) {
+        if (!hasDotSegment(out, pathStart)) {
+            return;
+        }
+        String[] segments = out.substring(pathStart).split("/", -1);
+        Deque<String> output = new ArrayDeque<>(segments.length);
+        boolean trailingSlash = false;
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            boolean last = i == segments.length - 1;
+            if (".".equals(segment)) {
+                trailingSlash = last;
+            } else if ("..".equals(segment)) {
+                output.pollLast();
+                trailingSlash = last;
+            } else {
+                output.addLast(segment);
+                trailingSlash = false;
+            }
+        }
+        out.setLength(pathStart);
+        out.append('/');
+        out.append(String.join("/", output));
+        if (trailingSlash && !output.isEmpty()) {
+            out.append('/');
+        }
+    }
+
+    private static boolean hasDotSegment(CharSequence path, int from) {
+        int length = path.length();
+        for (int i = from; i < length - 1; i++) {
+            if (path.charAt(i) != '/' || path.charAt(i + 1) != '.') {
+                continue;
+            }
+            int next = i + 2;
+            if (next < length && path.charAt(next) == '.') {
+                next++;
+            }
+            if (next == length || path.charAt(next) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>:</code>的位置，不是<code>scheme://</code>的形式时返回-1。
+     */
+    private static int schemeEnd(CharSequence url, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return i > from && i + 2 < to && url.charAt(i + 1) == '/' && url.charAt(i + 2) == '/' ? i : -1;
+            }
+            boolean valid = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
+                    || i > from && (c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.');
+            if (!valid) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int defaultPort(CharSequence url, int from, int to) {
+        if (regionEqualsIgnoreCase(url, from, to, "http") || regionEqualsIgnoreCase(url, from, to, "ws")) {
+            return 80;
+        }
+        if (regionEqualsIgnoreCase(url, from, to, "https") || regionEqualsIgnoreCase(url, from, to, "wss")) {
+            return 443;
+        }
+        if (regionEqualsIgnoreCase(url, from, to, "ftp")) {
+            return 21;
+        }
+        return -1;
+    }
+
+    private static int parsePort(CharSequence url, int from, int to) {
+        if (to - from > 5) {
+            return -1;
+        }
+        int port = 0;
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            port = port * 10 + c - '0';
+        }
+        return port;
+    }
+
+    private static boolean isUnreserved(int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence value, int from, int to, String expected) {
+        if (to - from != expected.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (Character.toLowerCase(value.charAt(i)) != expected.charAt(i - from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendLowerCase(StringBuilder out, CharSequence value, int from, int to) {
+        int upper = from;
+        while (upper < to && (value.charAt(upper) < 'A' || value.charAt(upper) > 'Z')) {
+            upper++;
+        }
+        out.append(value, from, upper);
+        for (int i = upper; i < to; i++) {
+            char c = value.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+    private static int indexOf(CharSequence value, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(CharSequence value, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
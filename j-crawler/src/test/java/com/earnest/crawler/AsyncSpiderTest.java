@@ -0,0 +1,71 @@
+package com.earnest.crawler;
+
+import com.earnest.crawler.downloader.Downloader;
+import com.earnest.crawler.scheduler.LockFreeUniqueScheduler;
+import com.earnest.crawler.scheduler.Scheduler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class AsyncSpiderTest {
+
+    @Test(timeout = 10_000)
+    public void stopWakesThreadsWaitingForRequests() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch responded = new CountDownLatch(1);
+        List<String> downloaded = new CopyOnWriteArrayList<>();
+        Downloader downloader = new Downloader() {
+            @Override
+            public StringResponseResult download(HttpUriRequest request) {
+                downloaded.add(request.getURI().toString());
+                started.countDown();
+                try {
+                    responded.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                StringResponseResult result = new StringResponseResult();
+                result.setHttpRequest(request);
+                result.setStatus(200);
+                result.setSuccess(true);
+                return result;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Scheduler scheduler = new LockFreeUniqueScheduler(1000);
+        scheduler.put(get("http://www.example.com/0"));
+        //每个页面都有下一页，不停止时不会结束
+        AsyncSpider spider = new AsyncSpider(downloader, scheduler, responseResult -> {
+            int page = Integer.parseInt(responseResult.getHttpRequest().getURI().getPath().substring(1));
+            return Collections.singleton(get("http://www.example.com/" + (page + 1)));
+        }, result -> {
+        }, Executors.newFixedThreadPool(2), 2);
+        spider.setBatchSize(1);
+
+        Thread crawler = new Thread(spider::start);
+        crawler.start();
+        started.await();
+        //另一个线程正在等待请求
+        spider.stop();
+        responded.countDown();
+        crawler.join();
+
+        assertEquals(Collections.singletonList("http://www.example.com/0"), downloaded);
+    }
+
+    private static HttpUriRequest get(String uri) {
+        return RequestBuilder.get(uri).build();
+    }
+}
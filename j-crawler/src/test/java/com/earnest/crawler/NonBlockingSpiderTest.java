@@ -0,0 +1,161 @@
+package com.earnest.crawler;
+
+import com.earnest.crawler.downloader.AsyncDownloader;
+import com.earnest.crawler.scheduler.LockFreeUniqueScheduler;
+import com.earnest.crawler.scheduler.Scheduler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class NonBlockingSpiderTest {
+
+    @Test(timeout = 10_000)
+    public void synchronousDownloaderFailureDoesNotStallTheCrawl() throws Exception {
+        List<String> piped = new CopyOnWriteArrayList<>();
+        Scheduler scheduler = new LockFreeUniqueScheduler(1000);
+        scheduler.putAll(Arrays.asList(get("http://www.example.com/1"), get("http://www.example.com/bad"), get("http://www.example.com/2")));
+        NonBlockingSpider spider = spider(scheduler, 4, request -> {
+            if (request.getURI().getPath().equals("/bad")) {
+                throw new IllegalStateException("failed before the download started");
+            }
+            return CompletableFuture.completedFuture(ok(request));
+        }, piped);
+
+        spider.start();
+
+        piped.sort(null);
+        assertEquals(Arrays.asList("http://www.example.com/1", "http://www.example.com/2"), piped);
+        assertFalse(scheduler.take() != null);
+    }
+
+    @Test(timeout = 10_000)
+    public void stopWakesTheDispatcherWaitingForPermits() throws Exception {
+        List<String> piped = new CopyOnWriteArrayList<>();
+        Map<String, CompletableFuture<StringResponseResult>> downloads = new ConcurrentHashMap<>();
+        Scheduler scheduler = new LockFreeUniqueScheduler(1000);
+        scheduler.putAll(Arrays.asList(get("http://www.example.com/1"), get("http://www.example.com/2")));
+        //只有一个空位，第一个下载完成前调度线程一直在等待
+        NonBlockingSpider spider = spider(scheduler, 1,
+                request -> downloads.computeIfAbsent(request.getURI().toString(), uri -> new CompletableFuture<>()), piped);
+
+        Thread crawler = new Thread(spider::start);
+        crawler.start();
+        while (downloads.isEmpty()) {
+            Thread.sleep(10);
+        }
+        spider.stop();
+        Thread.sleep(500);
+        //停止后不再发起新的下载，已经开始的下载完成后退出
+        HttpUriRequest first = get(downloads.keySet().iterator().next());
+        downloads.values().iterator().next().complete(ok(first));
+        crawler.join();
+
+        assertEquals(1, downloads.size());
+        assertEquals(1, piped.size());
+    }
+
+    @Test(timeout = 10_000)
+    public void keepsPollingNonBlockingSchedulersWhileDownloadsAreInFlight() {
+        List<String> piped = new CopyOnWriteArrayList<>();
+        Scheduler scheduler = new QueueScheduler();
+        scheduler.put(get("http://www.example.com/0"));
+        //下载完成时队列已经空了，新的请求在下载完成后才放入
+        NonBlockingSpider spider = new NonBlockingSpider(new AsyncDownloader() {
+            @Override
+            public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+                return CompletableFuture.supplyAsync(() -> ok(request), CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public void close() {
+            }
+        }, scheduler, responseResult -> {
+            int page = Integer.parseInt(responseResult.getHttpRequest().getURI().getPath().substring(1));
+            return page < 3 ? Collections.singleton(get("http://www.example.com/" + (page + 1))) : Collections.emptySet();
+        }, result -> piped.add(result.getHttpRequest().getURI().toString()), Executors.newFixedThreadPool(2), 4);
+
+        spider.start();
+
+        assertEquals(Arrays.asList("http://www.example.com/0", "http://www.example.com/1",
+                "http://www.example.com/2", "http://www.example.com/3"), piped);
+    }
+
+    /**
+     * 只有队列的调度器，没有请求时立即返回<code>null</code>，不记录正在处理的请求。
+     */
+    static class QueueScheduler implements Scheduler {
+
+        private final Queue<HttpUriRequest> queue = new ConcurrentLinkedQueue<>();
+
+        private final Set<String> history = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        @Override
+        public HttpUriRequest take() {
+            return queue.poll();
+        }
+
+        @Override
+        public boolean put(HttpUriRequest httpUriRequest) {
+            return history.add(httpUriRequest.getURI().toString()) && queue.add(httpUriRequest);
+        }
+
+        @Override
+        public void putAll(Collection<HttpUriRequest> httpUriRequests) {
+            httpUriRequests.forEach(this::put);
+        }
+    }
+
+    private static NonBlockingSpider spider(Scheduler scheduler, int maxInFlight,
+                                            Function<HttpUriRequest, CompletableFuture<StringResponseResult>> download,
+                                            List<String> piped) {
+        AsyncDownloader downloader = new AsyncDownloader() {
+            @Override
+            public CompletableFuture<StringResponseResult> downloadAsync(HttpUriRequest request) {
+                return download.apply(request);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new NonBlockingSpider(downloader, scheduler, responseResult -> Collections.emptySet(),
+                result -> piped.add(result.getHttpRequest().getURI().toString()),
+                Executors.newFixedThreadPool(2), maxInFlight);
+    }
+
+    private static StringResponseResult ok(HttpUriRequest request) {
+        StringResponseResult result = new StringResponseResult();
+        result.setHttpRequest(request);
+        result.setStatus(200);
+        result.setSuccess(true);
+        result.setContent("<html>" + request.getURI() + "</html>");
+        return result;
+    }
+
+    private static HttpUriRequest get(String uri) {
+        return RequestBuilder.get(uri).build();
+    }
+}
@@ -0,0 +1,54 @@
+package com.earnest.crawler;
+
+import com.earnest.crawler.downloader.ByteBufferPool;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ResponseBodyTest {
+
+    @Test
+    public void releasesBorrowedChunksWhenReadingFails() throws IOException {
+        AtomicInteger borrowed = new AtomicInteger();
+        ByteBufferPool pool = new ByteBufferPool(4, 16) {
+            @Override
+            public ByteBuffer acquire() {
+                borrowed.incrementAndGet();
+                return super.acquire();
+            }
+
+            @Override
+            public void release(ByteBuffer buffer) {
+                borrowed.decrementAndGet();
+                super.release(buffer);
+            }
+        };
+        InputStream failing = new SequenceInputStream(new ByteArrayInputStream(new byte[10]), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+
+        try {
+            ResponseBody.read(failing, pool);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(0, borrowed.get());
+
+        ResponseBody body = ResponseBody.read(new ByteArrayInputStream("0123456789".getBytes(StandardCharsets.UTF_8)), pool);
+        assertEquals("0123456789", body.decode(StandardCharsets.UTF_8));
+        body.release();
+        assertEquals(0, borrowed.get());
+    }
+}
@@ -0,0 +1,37 @@
+package com.earnest.crawler;
+
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class StringResponseResultTest {
+
+    @Test
+    public void sharedDocumentKeepsItsBaseUri() {
+        StringResponseResult result = new StringResponseResult();
+        result.setContent("<a href=\"next\">next</a>");
+
+        Document shared = result.parse("http://www.example.com/a/");
+        Document other = result.parse("http://www.example.com/b/");
+
+        assertSame(shared, result.parse("http://www.example.com/a/"));
+        assertEquals("http://www.example.com/a/next", shared.select("a").first().absUrl("href"));
+        assertEquals("http://www.example.com/b/next", other.select("a").first().absUrl("href"));
+    }
+
+    @Test
+    public void parseCopyDoesNotChangeTheSharedDocument() {
+        StringResponseResult result = new StringResponseResult();
+        result.setContent("<p>text</p>");
+        Document shared = result.parse("http://www.example.com/");
+
+        Document copy = result.parseCopy("http://www.example.com/");
+        copy.select("p").remove();
+
+        assertNotSame(shared, copy);
+        assertEquals("text", result.parse("http://www.example.com/").select("p").text());
+    }
+}
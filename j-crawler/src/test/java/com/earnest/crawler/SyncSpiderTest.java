@@ -0,0 +1,63 @@
+package com.earnest.crawler;
+
+import com.earnest.crawler.downloader.Downloader;
+import com.earnest.crawler.pipeline.NearDuplicateDetector;
+import com.earnest.crawler.scheduler.LockFreeUniqueScheduler;
+import com.earnest.crawler.scheduler.Scheduler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyncSpiderTest {
+
+    @Test
+    public void extractsLinksFromDuplicateContentAtAnotherUrl() {
+        List<String> downloaded = new ArrayList<>();
+        List<String> piped = new ArrayList<>();
+        Downloader downloader = new Downloader() {
+            @Override
+            public StringResponseResult download(HttpUriRequest request) {
+                downloaded.add(request.getURI().toString());
+                StringResponseResult result = new StringResponseResult();
+                result.setHttpRequest(request);
+                result.setStatus(200);
+                result.setSuccess(true);
+                //两个目录下是相同的页面，相对链接指向不同的地址
+                result.setContent(request.getURI().getPath().endsWith("/") ? "<a href=\"next\">next</a>" : "");
+                return result;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Scheduler scheduler = new LockFreeUniqueScheduler(1000);
+        scheduler.putAll(Arrays.asList(get("http://www.example.com/a/"), get("http://www.example.com/b/")));
+        SyncSpider spider = new SyncSpider(downloader, scheduler,
+                result -> Jsoup.parse(result.getContent(), result.getHttpRequest().getURI().toString())
+                        .select("a[href]").stream()
+                        .map(a -> get(a.absUrl("href")))
+                        .collect(Collectors.toSet()),
+                result -> piped.add(result.getHttpRequest().getURI().toString()));
+        spider.setDuplicateDetector(new NearDuplicateDetector());
+
+        spider.start();
+
+        assertEquals(Arrays.asList("http://www.example.com/a/", "http://www.example.com/b/",
+                "http://www.example.com/a/next", "http://www.example.com/b/next"), downloaded);
+        //重复的页面不进入管道
+        assertEquals(Arrays.asList("http://www.example.com/a/", "http://www.example.com/a/next"), piped);
+    }
+
+    private static HttpUriRequest get(String uri) {
+        return RequestBuilder.get(uri).build();
+    }
+}
@@ -0,0 +1,51 @@
+package com.earnest.crawler.builder;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 单独设置的连接数需要对请求实际使用的路由生效。
+ */
+public class ConnectionPoolConfigurerTest {
+
+    @Test
+    public void maxPerHostAppliesToPlannedRoutes() throws Exception {
+        ConnectionPoolConfigurer configurer = new ConnectionPoolConfigurer()
+                .maxPerHost(2)
+                .maxPerHost("www.example.com", 7)
+                .maxPerHost(new HttpHost("static.example.com", -1, "https"), 5);
+        configurer.apply(HttpClients.custom(), 10);
+
+        assertEquals(7, maxOf(configurer, "http://www.example.com/a"));
+        assertEquals(7, maxOf(configurer, "https://www.example.com/a"));
+        assertEquals(5, maxOf(configurer, "https://static.example.com/a.js"));
+        assertEquals(2, maxOf(configurer, "https://other.example.com/"));
+    }
+
+    @Test
+    public void maxPerHostAppliesToPlannedRoutesOfAsyncClient() throws Exception {
+        ConnectionPoolConfigurer configurer = new ConnectionPoolConfigurer()
+                .maxPerHost("www.example.com", 7);
+        configurer.apply(HttpAsyncClients.custom(), 10);
+
+        assertEquals(7, maxOf(configurer, "https://www.example.com/a"));
+        assertEquals(10, maxOf(configurer, "https://other.example.com/"));
+    }
+
+    private static int maxOf(ConnectionPoolConfigurer configurer, String uri) throws Exception {
+        HttpGet request = new HttpGet(uri);
+        HttpRoute route = new DefaultRoutePlanner(DefaultSchemePortResolver.INSTANCE)
+                .determineRoute(URIUtils.extractHost(request.getURI()), request, HttpClientContext.create());
+        return configurer.stats().getStats(route).getMax();
+    }
+}
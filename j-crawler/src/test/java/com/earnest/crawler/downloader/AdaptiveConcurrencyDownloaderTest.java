@@ -0,0 +1,62 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class AdaptiveConcurrencyDownloaderTest {
+
+    @Test(timeout = 10_000)
+    public void downloadAsyncDoesNotBlockOnSynchronousDownloaders() throws Exception {
+        CountDownLatch responded = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Downloader downloader = new Downloader() {
+            @Override
+            public StringResponseResult download(HttpUriRequest request) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    responded.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+                StringResponseResult result = new StringResponseResult();
+                result.setHttpRequest(request);
+                result.setStatus(200);
+                result.setSuccess(true);
+                return result;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AdaptiveConcurrencyDownloader adaptiveConcurrencyDownloader = new AdaptiveConcurrencyDownloader(downloader,
+                new AdaptiveConcurrencyLimiter(1, 1, 1), Executors.newFixedThreadPool(2));
+
+        //下载和等待许可都不阻塞调用的线程
+        CompletableFuture<StringResponseResult> first = adaptiveConcurrencyDownloader.downloadAsync(new HttpGet("http://www.example.com/1"));
+        CompletableFuture<StringResponseResult> second = adaptiveConcurrencyDownloader.downloadAsync(new HttpGet("http://www.example.com/2"));
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        responded.countDown();
+        assertEquals(200, first.get().getStatus());
+        assertEquals(200, second.get().getStatus());
+        //同一主机同时只有一个下载
+        assertEquals(1, maxRunning.get());
+        adaptiveConcurrencyDownloader.close();
+    }
+}
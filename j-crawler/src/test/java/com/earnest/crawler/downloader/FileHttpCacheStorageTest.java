@@ -0,0 +1,86 @@
+package com.earnest.crawler.downloader;
+
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.impl.client.cache.HeapResource;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.StreamUtils;
+
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class FileHttpCacheStorageTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        FileHttpCacheStorage storage = new FileHttpCacheStorage(temporaryFolder.getRoot().toPath().resolve("cache"));
+        byte[] body = "<html>页面</html>".getBytes(StandardCharsets.UTF_8);
+        HttpCacheEntry entry = new HttpCacheEntry(new Date(1000), new Date(2000),
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                new Header[]{new BasicHeader("ETag", "\"v1\""), new BasicHeader("Content-Type", "text/html; charset=UTF-8")},
+                new HeapResource(body), Collections.singletonMap("{Accept-Encoding=gzip}", "variant-key"), "GET");
+        storage.putEntry("http://www.example.com/", entry);
+
+        HttpCacheEntry read = storage.getEntry("http://www.example.com/");
+        assertEquals(new Date(1000), read.getRequestDate());
+        assertEquals(new Date(2000), read.getResponseDate());
+        assertEquals(200, read.getStatusCode());
+        assertEquals("OK", read.getReasonPhrase());
+        assertEquals(HttpVersion.HTTP_1_1, read.getProtocolVersion());
+        assertEquals("\"v1\"", read.getFirstHeader("ETag").getValue());
+        assertEquals(2, read.getAllHeaders().length);
+        assertArrayEquals(body, StreamUtils.copyToByteArray(read.getResource().getInputStream()));
+        assertEquals("variant-key", read.getVariantMap().get("{Accept-Encoding=gzip}"));
+        assertEquals("GET", read.getRequestMethod());
+    }
+
+    @Test
+    public void javaSerializedEntryIsDiscarded() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("cache");
+        FileHttpCacheStorage storage = new FileHttpCacheStorage(directory);
+        storage.putEntry("key", new HttpCacheEntry(new Date(), new Date(),
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"), new Header[0], new HeapResource(new byte[0])));
+        Path file;
+        try (Stream<Path> files = Files.list(directory)) {
+            file = files.findFirst().get();
+        }
+        //替换为Java序列化的对象，读取时不能反序列化
+        try (OutputStream outputStream = Files.newOutputStream(file);
+             ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+            objectOutputStream.writeObject(new ArrayList<>(Collections.singletonList("planted")));
+        }
+        assertNull(storage.getEntry("key"));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void directoryIsOwnerOnly() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("a").resolve("cache");
+        new FileHttpCacheStorage(directory);
+        if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory)));
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.getParent())));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryingDownloaderTest {
+
+    @Test(timeout = 10_000)
+    public void hedgesSynchronousDownloadsFromTheCallingThread() throws Exception {
+        int warmUp = 20;
+        AtomicInteger calls = new AtomicInteger();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Downloader downloader = new Downloader() {
+            @Override
+            public StringResponseResult download(HttpUriRequest request) {
+                threads.add(Thread.currentThread().getName());
+                if (calls.incrementAndGet() == warmUp + 1) {
+                    //一直等待，直到被对冲请求中止
+                    CountDownLatch aborted = new CountDownLatch(1);
+                    ((HttpRequestBase) request).setCancellable(() -> {
+                        aborted.countDown();
+                        return true;
+                    });
+                    try {
+                        aborted.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return result(request, 0);
+                }
+                return result(request, 200);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RetryingDownloader retryingDownloader = new RetryingDownloader(downloader, 0, 2);
+        retryingDownloader.setHedging(true);
+        for (int i = 0; i < warmUp; i++) {
+            retryingDownloader.download(new HttpGet("http://www.example.com/" + i));
+        }
+        threads.clear();
+
+        HttpGet request = new HttpGet("http://www.example.com/slow");
+        long start = System.nanoTime();
+        StringResponseResult result = retryingDownloader.download(request);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(200, result.getStatus());
+        assertTrue(result.getHttpRequest() == request);
+        //第一次请求在调用线程中进行，对冲请求在线程池中进行
+        assertEquals(2, threads.size());
+        assertEquals(Thread.currentThread().getName(), threads.get(0));
+        assertTrue(threads.get(1).startsWith("hedged-download-"));
+        //被中止的请求已经重置，可以再次使用
+        assertFalse(request.isAborted());
+        retryingDownloader.close();
+    }
+
+    private static StringResponseResult result(HttpUriRequest request, int status) {
+        StringResponseResult result = new StringResponseResult();
+        result.setHttpRequest(request);
+        result.setStatus(status);
+        result.setSuccess(status == 200);
+        result.setContent(status == 200 ? "ok" : null);
+        return result;
+    }
+}
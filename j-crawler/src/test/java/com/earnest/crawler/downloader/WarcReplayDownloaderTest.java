@@ -0,0 +1,90 @@
+package com.earnest.crawler.downloader;
+
+import com.earnest.crawler.StringResponseResult;
+import com.earnest.crawler.scheduler.Fingerprints;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarcReplayDownloaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void replaysRecordedResponse() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        HttpUriRequest request = RequestBuilder.get("http://www.example.com/").build();
+        Downloader downloader = new Downloader() {
+            @Override
+            public StringResponseResult download(HttpUriRequest httpUriRequest) {
+                StringResponseResult responseResult = new StringResponseResult();
+                responseResult.setHttpRequest(httpUriRequest);
+                responseResult.setStatus(200);
+                responseResult.setReason("OK");
+                responseResult.setSuccess(true);
+                responseResult.setHeaders(Collections.singletonMap("Content-Type", "text/html"));
+                responseResult.setContent("<html>页面</html>");
+                return responseResult;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        WarcRecordingDownloader recorder = new WarcRecordingDownloader(downloader, directory);
+        recorder.download(request);
+        recorder.close();
+
+        WarcReplayDownloader replayer = new WarcReplayDownloader(directory);
+        StringResponseResult responseResult = replayer.download(RequestBuilder.get("http://www.example.com/").build());
+        assertEquals(200, responseResult.getStatus());
+        assertEquals("<html>页面</html>", responseResult.getContent());
+        assertEquals(1, replayer.getHits());
+        assertEquals(0, replayer.getMisses());
+        replayer.close();
+    }
+
+    @Test
+    public void invalidContentLengthIsMiss() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        HttpUriRequest request = RequestBuilder.get("http://www.example.com/").build();
+        //其他工具写入的记录，Content-Length无法解析
+        byte[] record = gzip("WARC/1.0\r\nWARC-Type: response\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\nContent-Length: abc\r\n\r\n<html></html>\r\n\r\n");
+        Files.write(directory.resolve(WarcIndex.warcFileName(0)), record);
+        try (WarcIndex.Writer writer = new WarcIndex.Writer(directory)) {
+            writer.add(Fingerprints.fingerprint(request), 0, record.length, 0);
+        }
+
+        WarcReplayDownloader replayer = new WarcReplayDownloader(directory);
+        StringResponseResult responseResult = replayer.download(request);
+        assertFalse(responseResult.isSuccess());
+        assertTrue(responseResult.getReason().contains("content length"));
+        assertEquals(0, replayer.getHits());
+        assertEquals(1, replayer.getMisses());
+        replayer.close();
+    }
+
+    private static byte[] gzip(String record) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(record.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+}
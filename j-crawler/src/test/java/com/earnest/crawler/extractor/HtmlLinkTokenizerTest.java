@@ -0,0 +1,62 @@
+package com.earnest.crawler.extractor;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HtmlLinkTokenizerTest {
+
+    private static final String BASE_URL = "http://www.iqiyi.com/lib/list.html?page=1";
+
+    @Test
+    public void resolvesLikeJsoup() {
+        String html = "<a href=\"?page=2\">2</a><a href=\"list.html?page=3\">3</a><a href=\"../a/b.html\">b</a>"
+                + "<a href=\"/c.html\">c</a><a href=\"//www.iqiyi.com/d.html\">d</a><a href=\"\">e</a><a href=\"#top\">f</a>";
+        List<String> expected = new ArrayList<>();
+        Document document = Jsoup.parse(html, BASE_URL);
+        for (Element a : document.select("a[href]")) {
+            String absUrl = a.absUrl("href");
+            if (!absUrl.isEmpty() && !a.attr("href").isEmpty() && !a.attr("href").startsWith("#")) {
+                expected.add(absUrl);
+            }
+        }
+
+        assertEquals("http://www.iqiyi.com/lib/list.html?page=2", expected.get(0));
+        assertEquals(expected, tokenize(html, false));
+        assertEquals(expected, tokenize(html, true));
+    }
+
+    @Test
+    public void scriptEndTagNeedsDelimiter() {
+        String html = "<script>var s = '</scripts><a href=\"/inside.html\">';</script >"
+                + "<a href=\"/after.html\">a</a>"
+                + "<style>p{}</STYLEX><a href=\"/style.html\"></style/><a href=\"/last.html\">l</a>";
+        List<String> expected = new ArrayList<>();
+        expected.add("http://www.iqiyi.com/after.html");
+        expected.add("http://www.iqiyi.com/last.html");
+        assertEquals(expected, tokenize(html, false));
+        assertEquals(expected, tokenize(html, true));
+    }
+
+    private static List<String> tokenize(String html, boolean bytes) {
+        List<String> links = new ArrayList<>();
+        HtmlLinkTokenizer tokenizer = new HtmlLinkTokenizer(BASE_URL, links::add);
+        if (bytes) {
+            byte[] content = html.getBytes(StandardCharsets.UTF_8);
+            //分块传入，结束标签可能被截断
+            for (int i = 0; i < content.length; i += 7) {
+                tokenizer.feed(content, i, Math.min(7, content.length - i));
+            }
+        } else {
+            tokenizer.feed(html);
+        }
+        return links;
+    }
+}
@@ -0,0 +1,58 @@
+package com.earnest.crawler.handler;
+
+import com.earnest.crawler.StringResponseResult;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpClientResponseAdapterTest {
+
+    @Test
+    public void headerNamesAreCaseInsensitive() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("Content-Type", "text/html");
+        response.addHeader("content-type", "text/plain");
+
+        Map<String, String> headers = HttpClientResponseAdapter.adapt(new StringResponseResult(), response,
+                new HttpGet("http://www.example.com/"), null).getHeaders();
+
+        assertEquals("text/plain", headers.get("CONTENT-TYPE"));
+        assertTrue(headers.containsKey("content-TYPE"));
+        assertEquals(1, headers.size());
+        assertTrue(headers.keySet().contains("Content-type"));
+    }
+
+    @Test
+    public void cookiesAreTakenWhenTheResponseArrivesAndMatchTheRequest() {
+        BasicCookieStore cookieStore = new BasicCookieStore();
+        cookieStore.addCookie(cookie("session", "1", "www.example.com"));
+        cookieStore.addCookie(cookie("other", "2", "www.example.org"));
+        HttpClientContext httpContext = HttpClientContext.create();
+        httpContext.setCookieStore(cookieStore);
+
+        StringResponseResult result = HttpClientResponseAdapter.adapt(new StringResponseResult(),
+                new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"), new HttpGet("http://www.example.com/page"), httpContext);
+        //之后的请求修改的cookie不影响已经返回的结果
+        cookieStore.addCookie(cookie("later", "3", "www.example.com"));
+
+        assertEquals(Collections.singletonMap("session", "1"), result.getCookies());
+    }
+
+    private static BasicClientCookie cookie(String name, String value, String domain) {
+        BasicClientCookie cookie = new BasicClientCookie(name, value);
+        cookie.setDomain(domain);
+        cookie.setPath("/");
+        return cookie;
+    }
+}
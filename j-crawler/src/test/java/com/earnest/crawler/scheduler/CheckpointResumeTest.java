@@ -0,0 +1,133 @@
+package com.earnest.crawler.scheduler;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 抓取中途保存快照，模拟崩溃后恢复：已经取出但没有完成的请求需要重新处理，已经完成的请求不再处理。
+ */
+@RunWith(Parameterized.class)
+public class CheckpointResumeTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> schedulers() {
+        return Arrays.asList(new Object[][]{
+                {"BlockingUniqueScheduler", (Supplier<Scheduler>) () -> new BlockingUniqueScheduler(100)},
+                {"LockFreeUniqueScheduler", (Supplier<Scheduler>) () -> new LockFreeUniqueScheduler(100)},
+                {"PriorityScheduler", (Supplier<Scheduler>) () -> new PriorityScheduler(r -> 0, 4, 100, null)},
+                {"HostPartitionedScheduler", (Supplier<Scheduler>) () -> new HostPartitionedScheduler(0, 10, 100, null)},
+        });
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Supplier<Scheduler> schedulerFactory;
+
+    public CheckpointResumeTest(String name, Supplier<Scheduler> schedulerFactory) {
+        this.schedulerFactory = schedulerFactory;
+    }
+
+    @Test
+    public void resumeMidCrawl() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("scheduler.checkpoint");
+
+        Scheduler scheduler = schedulerFactory.get();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(scheduler.put(get("http://www.example.com/page/" + i)));
+        }
+        HttpUriRequest completed = scheduler.take();
+        HttpUriRequest inFlight = scheduler.take();
+        scheduler.complete(completed);
+
+        new CheckpointingScheduler(scheduler, path, Long.MAX_VALUE).close();
+
+        //崩溃后使用新的调度器恢复
+        Scheduler resumed = schedulerFactory.get();
+        assertTrue(CheckpointingScheduler.resume((Checkpointable) resumed, path));
+
+        Set<String> uris = new HashSet<>();
+        List<HttpUriRequest> taken = new ArrayList<>();
+        HttpUriRequest httpUriRequest;
+        while ((httpUriRequest = resumed.take()) != null) {
+            taken.add(httpUriRequest);
+            uris.add(httpUriRequest.getURI().toString());
+            resumed.complete(httpUriRequest);
+        }
+
+        assertEquals(4, taken.size());
+        assertEquals(4, uris.size());
+        assertTrue(uris.contains(inFlight.getURI().toString()));
+        assertFalse(uris.contains(completed.getURI().toString()));
+        //恢复的请求依然在历史记录中
+        assertFalse(resumed.put(get(completed.getURI().toString())));
+        assertFalse(resumed.put(get(inFlight.getURI().toString())));
+    }
+
+    @Test
+    public void completedRequestsAreNotPending() {
+        Scheduler scheduler = schedulerFactory.get();
+        scheduler.put(get("http://www.example.com/a"));
+        scheduler.put(get("http://www.example.com/b"));
+        HttpUriRequest first = scheduler.take();
+        assertEquals(2, ((Checkpointable) scheduler).snapshot().getPendingRequests().size());
+        scheduler.complete(first);
+        assertEquals(1, ((Checkpointable) scheduler).snapshot().getPendingRequests().size());
+    }
+
+    @Test
+    public void snapshotIsConsistentWithConcurrentPuts() throws Exception {
+        Scheduler scheduler = schedulerFactory.get();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    if (i % 2 == 0) {
+                        scheduler.put(get("http://www.example.com/" + producer + "/" + i));
+                    } else {
+                        scheduler.putAll(Arrays.asList(get("http://www.example.com/" + producer + "/" + i + "/a"),
+                                get("http://www.example.com/" + producer + "/" + i + "/b")));
+                    }
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        boolean producing;
+        do {
+            producing = producers.stream().anyMatch(Thread::isAlive);
+            SchedulerSnapshot snapshot = ((Checkpointable) scheduler).snapshot();
+            //没有取值，待处理的请求与历史记录一一对应
+            assertEquals(snapshot.getHistoryStore().size(), snapshot.getPendingRequests().size());
+            for (HttpUriRequest httpUriRequest : snapshot.getPendingRequests()) {
+                assertTrue(snapshot.getHistoryStore().contains(Fingerprints.fingerprint(httpUriRequest)));
+            }
+        } while (producing);
+        for (Thread thread : producers) {
+            thread.join();
+        }
+    }
+
+    private static HttpUriRequest get(String uri) {
+        return RequestBuilder.get(uri).build();
+    }
+}
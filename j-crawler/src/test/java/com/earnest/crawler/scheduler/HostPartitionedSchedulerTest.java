@@ -0,0 +1,57 @@
+package com.earnest.crawler.scheduler;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HostPartitionedSchedulerTest {
+
+    private static final long MIN_DELAY_MILLIS = 300;
+
+    @Test(timeout = 5000)
+    public void delaysTheNextRequestFromCompletion() throws InterruptedException {
+        HostPartitionedScheduler scheduler = new HostPartitionedScheduler(MIN_DELAY_MILLIS, 1, 100, null);
+        scheduler.putAll(Arrays.asList(get("http://a.example.com/1"), get("http://a.example.com/2")));
+
+        HttpUriRequest first = scheduler.take();
+        //下载时间超过了访问间隔
+        Thread.sleep(MIN_DELAY_MILLIS * 2);
+        scheduler.complete(first);
+        long start = System.nanoTime();
+        HttpUriRequest second = scheduler.take();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals("http://a.example.com/2", second.getURI().toString());
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis >= MIN_DELAY_MILLIS - 50);
+        scheduler.complete(second);
+        assertNull(scheduler.take());
+    }
+
+    @Test(timeout = 5000)
+    public void takesAtMostOneRequestPerHostInABatch() {
+        HostPartitionedScheduler scheduler = new HostPartitionedScheduler(0, 2, 100, null);
+        scheduler.putAll(Arrays.asList(get("http://a.example.com/1"), get("http://a.example.com/2"), get("http://b.example.com/1")));
+
+        List<HttpUriRequest> batch = scheduler.takeBatch(3);
+        assertEquals(2, batch.size());
+        assertTrue(batch.get(0).getURI().getHost().equals("a.example.com") ^ batch.get(1).getURI().getHost().equals("a.example.com"));
+
+        //其他线程可以继续取出同一主机的请求
+        HttpUriRequest next = scheduler.take();
+        assertEquals("http://a.example.com/2", next.getURI().toString());
+        batch.forEach(scheduler::complete);
+        scheduler.complete(next);
+        assertNull(scheduler.take());
+    }
+
+    private static HttpUriRequest get(String uri) {
+        return RequestBuilder.get(uri).build();
+    }
+}
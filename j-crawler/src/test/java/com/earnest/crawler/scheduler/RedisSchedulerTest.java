@@ -0,0 +1,250 @@
+package com.earnest.crawler.scheduler;
+
+import com.earnest.crawler.exception.TakeTimeoutException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 通过<code>redis.host</code>和<code>redis.port</code>指定使用的Redis，没有指定时在随机的端口启动本地的Redis，
+ * 可以通过<code>redis.executable</code>指定<code>redis-server</code>的路径。无法连接时跳过。
+ */
+public class RedisSchedulerTest {
+
+    private static final long LEASE_MILLIS = 600;
+
+    private static RedisServer redisServer;
+
+    private static int redisPort = Integer.getInteger("redis.port", 6379);
+
+    @BeforeClass
+    public static void startRedis() throws IOException {
+        if (System.getProperty("redis.host") != null) {
+            return;
+        }
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            redisPort = serverSocket.getLocalPort();
+        }
+        String executable = System.getProperty("redis.executable");
+        RedisServer server = executable == null ?
+                RedisServer.builder().port(redisPort).setting("bind 127.0.0.1").build() :
+                new RedisServer(new File(executable), redisPort);
+        try {
+            server.start();
+            redisServer = server;
+        } catch (RuntimeException e) {
+            //没有可以运行的redis-server时跳过
+        }
+    }
+
+    @AfterClass
+    public static void stopRedis() {
+        if (redisServer != null) {
+            redisServer.stop();
+            redisServer = null;
+        }
+    }
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    private String keyPrefix;
+
+    @Before
+    public void setUp() {
+        try {
+            RedisConnection connection = newConnectionFactory().getConnection();
+            connection.ping();
+            connection.close();
+        } catch (RuntimeException e) {
+            Assume.assumeNoException("Redis is not reachable", e);
+        }
+        keyPrefix = "crawler-test-" + UUID.randomUUID();
+    }
+
+    @After
+    public void tearDown() {
+        if (keyPrefix != null) {
+            RedisScheduler scheduler = new RedisScheduler(newConnectionFactory(), keyPrefix);
+            scheduler.reset();
+            scheduler.close();
+        }
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    @Test
+    public void deduplicatesAcrossNodes() {
+        RedisScheduler first = new RedisScheduler(newConnectionFactory(), keyPrefix, LEASE_MILLIS, 1000);
+        RedisScheduler second = new RedisScheduler(newConnectionFactory(), keyPrefix, LEASE_MILLIS, 1000);
+
+        assertTrue(first.put(get("http://www.example.com/1")));
+        assertFalse(first.put(get("http://www.example.com/1")));
+        assertFalse(second.put(get("http://www.example.com/1")));
+        second.putAll(Arrays.asList(get("http://www.example.com/1"), get("http://www.example.com/2"), get("http://www.example.com/2")));
+
+        HttpUriRequest httpUriRequest = first.take();
+        assertEquals("http://www.example.com/1", httpUriRequest.getURI().toString());
+        first.complete(httpUriRequest);
+        //处理完成后依然在历史记录中
+        assertFalse(second.put(get("http://www.example.com/1")));
+
+        assertEquals(Arrays.asList("http://www.example.com/2"), takeAll(second));
+        assertNull(first.take());
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void requeuesExpiredLeases() {
+        LettuceConnectionFactory crashedConnectionFactory = newConnectionFactory();
+        RedisScheduler crashed = new RedisScheduler(crashedConnectionFactory, keyPrefix, LEASE_MILLIS, 1000);
+        RedisScheduler survivor = new RedisScheduler(newConnectionFactory(), keyPrefix, LEASE_MILLIS, 5000);
+        crashed.put(get("http://www.example.com/1"));
+        HttpUriRequest lost = crashed.take();
+        //租约有效时其他节点取不到请求
+        try {
+            survivor.takeBatch(1, LEASE_MILLIS / 3);
+            fail();
+        } catch (TakeTimeoutException expected) {
+        }
+
+        //模拟宕机的节点：连接断开，租约无法续期
+        crashedConnectionFactory.destroy();
+        connectionFactories.remove(crashedConnectionFactory);
+
+        HttpUriRequest httpUriRequest = survivor.take();
+        assertEquals(lost.getURI(), httpUriRequest.getURI());
+        survivor.complete(httpUriRequest);
+        assertNull(survivor.take());
+        survivor.close();
+        //连接已经断开，只需要停止续期
+        try {
+            crashed.close();
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void renewsActiveLeases() throws InterruptedException {
+        RedisScheduler first = new RedisScheduler(newConnectionFactory(), keyPrefix, LEASE_MILLIS, 1000);
+        RedisScheduler second = new RedisScheduler(newConnectionFactory(), keyPrefix, LEASE_MILLIS, 1000);
+        first.putAll(Arrays.asList(get("http://www.example.com/1"), get("http://www.example.com/2")));
+
+        HttpUriRequest httpUriRequest = first.take();
+        Thread.sleep(LEASE_MILLIS * 2);
+        //正在处理的请求不会被其他节点取出
+        assertEquals(Arrays.asList("http://www.example.com/2"), drain(second));
+        first.complete(httpUriRequest);
+        assertNull(second.take());
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void releasesUnfinishedRequestsOnClose() {
+        RedisScheduler first = new RedisScheduler(newConnectionFactory(), keyPrefix, LEASE_MILLIS, 1000);
+        first.putAll(Arrays.asList(get("http://www.example.com/1"), get("http://www.example.com/2"), get("http://www.example.com/3")));
+        List<HttpUriRequest> taken = first.takeBatch(2);
+        assertEquals(2, taken.size());
+        first.complete(taken.get(0));
+        first.close();
+
+        //放回的请求排在队列头部，不需要等待租约过期
+        RedisScheduler second = new RedisScheduler(newConnectionFactory(), keyPrefix, LEASE_MILLIS, 1000);
+        long start = System.currentTimeMillis();
+        List<String> uris = drain(second);
+        assertTrue(System.currentTimeMillis() - start < LEASE_MILLIS);
+        assertEquals(Arrays.asList(taken.get(1).getURI().toString(), "http://www.example.com/3"), uris);
+        second.close();
+    }
+
+    @Test
+    public void completeDoesNotRemoveAnotherNodesLease() {
+        //租约很长，测试期间不会续期
+        RedisScheduler stale = new RedisScheduler(newConnectionFactory(), keyPrefix, 60_000, 1000);
+        RedisScheduler current = new RedisScheduler(newConnectionFactory(), keyPrefix, 60_000, 1000);
+        stale.put(get("http://www.example.com/1"));
+        HttpUriRequest staleRequest = stale.take();
+
+        //模拟暂停的节点：租约过期后由其他节点重新取出
+        byte[] leaseKey = ("{" + keyPrefix + "}:leases").getBytes(StandardCharsets.UTF_8);
+        RedisConnection connection = newConnectionFactory().getConnection();
+        byte[] item = connection.zRange(leaseKey, 0, -1).iterator().next();
+        connection.zAdd(leaseKey, 0, item);
+        HttpUriRequest currentRequest = current.take();
+        assertEquals(staleRequest.getURI(), currentRequest.getURI());
+
+        stale.complete(staleRequest);
+        assertEquals(Long.valueOf(1), connection.zCard(leaseKey));
+        //已经失去租约的节点关闭时也不会放回其他节点的请求
+        stale.close();
+        assertTrue(current.isEmpty());
+
+        current.complete(currentRequest);
+        assertEquals(Long.valueOf(0), connection.zCard(leaseKey));
+        assertNull(current.take());
+        connection.close();
+        current.close();
+    }
+
+    private List<String> takeAll(RedisScheduler scheduler) {
+        List<String> uris = new ArrayList<>();
+        for (HttpUriRequest httpUriRequest : scheduler.takeBatch(10)) {
+            uris.add(httpUriRequest.getURI().toString());
+            scheduler.complete(httpUriRequest);
+        }
+        return uris;
+    }
+
+    //取出并完成所有请求，不等待其他节点正在处理的请求
+    private List<String> drain(RedisScheduler scheduler) {
+        List<String> uris = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        while (!scheduler.isEmpty()) {
+            for (String uri : takeAll(scheduler)) {
+                assertTrue(seen.add(uri));
+                uris.add(uri);
+            }
+        }
+        return uris;
+    }
+
+    private LettuceConnectionFactory newConnectionFactory() {
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), redisPort));
+        connectionFactory.afterPropertiesSet();
+        connectionFactories.add(connectionFactory);
+        return connectionFactory;
+    }
+
+    private static HttpUriRequest get(String uri) {
+        return RequestBuilder.get(uri).build();
+    }
+}
@@ -0,0 +1,133 @@
+package com.earnest.crawler.scheduler;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpillableSchedulerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void snapshotIncludesSpilledRequests() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        //内存中只保留两个请求，其余写入磁盘
+        SpillableScheduler scheduler = new SpillableScheduler(directory, 2, 4096, 100, null);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(scheduler.put(get("http://www.example.com/page/" + i)));
+        }
+        HttpUriRequest inFlight = scheduler.take();
+
+        Path path = temporaryFolder.getRoot().toPath().resolve("scheduler.checkpoint");
+        scheduler.snapshot().writeTo(path);
+        assertEquals(Arrays.asList("http://www.example.com/page/0", "http://www.example.com/page/1", "http://www.example.com/page/2",
+                "http://www.example.com/page/3", "http://www.example.com/page/4"), uris(scheduler.snapshot().getPendingRequests()));
+        //快照不改变队列
+        assertEquals("http://www.example.com/page/1", scheduler.take().getURI().toString());
+        scheduler.complete(inFlight);
+        scheduler.close();
+
+        SpillableScheduler resumed = new SpillableScheduler(directory, 2, 4096, 100, null);
+        assertTrue(CheckpointingScheduler.resume(resumed, path));
+        assertFalse(resumed.put(get("http://www.example.com/page/4")));
+        List<HttpUriRequest> taken = new ArrayList<>();
+        HttpUriRequest httpUriRequest;
+        while ((httpUriRequest = resumed.take()) != null) {
+            taken.add(httpUriRequest);
+            resumed.complete(httpUriRequest);
+        }
+        assertEquals(Arrays.asList("http://www.example.com/page/0", "http://www.example.com/page/1", "http://www.example.com/page/2",
+                "http://www.example.com/page/3", "http://www.example.com/page/4"), uris(taken));
+        resumed.close();
+    }
+
+    @Test
+    public void spillsRequestsLongerThan64KB() throws IOException {
+        char[] chars = new char[70 * 1024];
+        Arrays.fill(chars, 'a');
+        String longUri = "http://www.example.com/?q=" + new String(chars);
+        String longHeader = new String(chars);
+
+        SpillableScheduler scheduler = new SpillableScheduler(temporaryFolder.newFolder().toPath(), 1, 1024 * 1024, 100, null);
+        scheduler.put(get("http://www.example.com/"));
+        scheduler.put(RequestBuilder.get(longUri).addHeader("X-Long", longHeader).build());
+
+        HttpUriRequest first = scheduler.take();
+        scheduler.complete(first);
+        HttpUriRequest spilled = scheduler.take();
+        assertEquals(longUri, spilled.getURI().toString());
+        assertEquals(longHeader, spilled.getFirstHeader("X-Long").getValue());
+        scheduler.complete(spilled);
+        scheduler.close();
+    }
+
+    @Test
+    public void closeDeletesSegments() throws IOException {
+        Path directory = temporaryFolder.newFolder().toPath();
+        SpillableScheduler scheduler = new SpillableScheduler(directory, 1, 4096, 100, null);
+        for (int i = 0; i < 200; i++) {
+            scheduler.put(get("http://www.example.com/page/" + i));
+        }
+        //读完的段被回收或删除
+        for (int i = 0; i < 150; i++) {
+            scheduler.complete(scheduler.take());
+        }
+        assertTrue(list(directory).size() > 0);
+        scheduler.close();
+        assertTrue(list(directory).isEmpty());
+        assertNull(scheduler.take());
+    }
+
+    @Test
+    public void closeDeletesTemporaryDirectory() throws IOException {
+        Path temp = Paths.get(System.getProperty("java.io.tmpdir"));
+        Set<Path> before = frontierDirectories(temp);
+        SpillableScheduler scheduler = new SpillableScheduler();
+        Set<Path> created = frontierDirectories(temp);
+        created.removeAll(before);
+        assertEquals(1, created.size());
+
+        scheduler.put(get("http://www.example.com/"));
+        scheduler.close();
+        assertFalse(Files.exists(created.iterator().next()));
+    }
+
+    private static Set<Path> frontierDirectories(Path temp) throws IOException {
+        try (Stream<Path> stream = Files.list(temp)) {
+            return stream.filter(path -> path.getFileName().toString().startsWith("crawler-frontier")).collect(Collectors.toSet());
+        }
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> uris(List<HttpUriRequest> httpUriRequests) {
+        return httpUriRequests.stream().map(httpUriRequest -> httpUriRequest.getURI().toString()).collect(Collectors.toList());
+    }
+
+    private static HttpUriRequest get(String uri) {
+        return RequestBuilder.get(uri).build();
+    }
+}
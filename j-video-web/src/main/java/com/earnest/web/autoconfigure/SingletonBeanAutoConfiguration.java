@@ -1,6 +1,9 @@
 package com.earnest.web.autoconfigure;
 
 import com.earnest.crawler.Browser;
+import com.earnest.crawler.CharsetDetector;
+import com.earnest.crawler.downloader.ContentEncodings;
+import com.earnest.crawler.downloader.FileHttpCacheStorage;
 import com.earnest.crawler.proxy.DefaultApiHttpProxySupplier;
 import com.earnest.crawler.proxy.HttpProxySupplier;
 import com.earnest.video.episode.EpisodeFetcher;
@@ -16,17 +19,19 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.impl.client.AbstractResponseHandler;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -38,20 +43,22 @@ import java.util.Optional;
 public class SingletonBeanAutoConfiguration {
 
     /**
-     * 全局共用一个{@link HttpClient}。
+     * 全局共用一个{@link HttpClient}。设置了<code>app.http-cache.directory</code>时将响应缓存在该目录中。
      *
      * @return
      */
     @Bean
-    public CloseableHttpClient httpClient() {
-        return HttpClients.custom()
+    public CloseableHttpClient httpClient(@Value("${app.http-cache.directory:}") String cacheDirectory) {
+        HttpClientBuilder httpClientBuilder = StringUtils.hasText(cacheDirectory) ?
+                FileHttpCacheStorage.custom(Paths.get(cacheDirectory)) : HttpClients.custom();
+        return ContentEncodings.configure(httpClientBuilder)
                 .setUserAgent(Browser.GOOGLE.userAgent())
                 .setMaxConnTotal(100)
                 .build();
     }
 
     /**
-     * 全局共有一个{@link ResponseHandler}。
+     * 全局共有一个{@link ResponseHandler}。根据响应头、BOM和<code>meta</code>确定字符集，避免网站乱码。
      *
      * @return
      */
@@ -60,7 +67,7 @@ public class SingletonBeanAutoConfiguration {
         return new AbstractResponseHandler<>() {
             @Override
             public String handleEntity(HttpEntity entity) throws IOException {
-                return EntityUtils.toString(entity, Charset.defaultCharset());//避免网站乱码
+                return CharsetDetector.decode(entity);
             }
         };
     }
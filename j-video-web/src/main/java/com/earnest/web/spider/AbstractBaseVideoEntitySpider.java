@@ -3,6 +3,7 @@ package com.earnest.web.spider;
 import com.earnest.crawler.Browser;
 import com.earnest.crawler.HttpResponseResult;
 import com.earnest.crawler.Spider;
+import com.earnest.crawler.builder.DownloaderConfigurer;
 import com.earnest.crawler.builder.SpiderBuilder;
 import com.earnest.video.entity.Video;
 import org.jsoup.Connection;
@@ -11,6 +12,8 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.util.CollectionUtils;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -19,14 +22,33 @@ public abstract class AbstractBaseVideoEntitySpider implements Spider, CommandLi
 
     protected final Spider spider;
 
+    //列表页没有变化时只需要一次条件请求，缓存放在当前用户的目录中，不使用共享的临时目录
+    private final static Path CACHE_DIRECTORY = Paths.get(System.getProperty("user.home"), ".j-video", "http-cache");
+
+    //-Dj-video.warc.record=目录 记录抓取到的页面，-Dj-video.warc.replay=目录 离线重放记录的页面
+    private final static String WARC_RECORD_PROPERTY = "j-video.warc.record";
+
+    private final static String WARC_REPLAY_PROPERTY = "j-video.warc.replay";
+
 
     public AbstractBaseVideoEntitySpider() {
         spider = createSpider();
     }
 
     private Spider createSpider() {
-        return new SpiderBuilder()
-                .global().userAgent(Browser.GOOGLE.userAgent()).setThreadNumber(3)
+        SpiderBuilder spiderBuilder = new SpiderBuilder();
+        DownloaderConfigurer downloaderConfigurer = spiderBuilder.global();
+        String replayDirectory = System.getProperty(WARC_REPLAY_PROPERTY);
+        if (replayDirectory != null) {
+            downloaderConfigurer.replay(Paths.get(replayDirectory));
+        } else {
+            downloaderConfigurer.userAgent(Browser.GOOGLE.userAgent()).cache(CACHE_DIRECTORY);
+            String recordDirectory = System.getProperty(WARC_RECORD_PROPERTY);
+            if (recordDirectory != null) {
+                downloaderConfigurer.record(Paths.get(recordDirectory));
+            }
+        }
+        return downloaderConfigurer.setThreadNumber(3)
                 .and()
                 .request().method(Connection.Method.GET).from(getFromUrl())
                 .and()